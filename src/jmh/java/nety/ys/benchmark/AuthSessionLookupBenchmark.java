@@ -0,0 +1,62 @@
+package nety.ys.benchmark;
+
+import nety.ys.config.ModConfig;
+import nety.ys.server.AuthSessionManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 认证会话索引查找基准测试
+ * 查找耗时应与待认证会话数量无关
+ * 
+ * @author nety.ys
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthSessionLookupBenchmark {
+    
+    @Param({"100", "10000"})
+    public int sessionCount;
+    
+    private UUID[] playerIds;
+    private InetAddress[] addresses;
+    
+    @Setup(Level.Trial)
+    public void setup() throws UnknownHostException {
+        ModConfig.ServerConfig config = BenchmarkSupport.installModInstance();
+        config.responseTimeout = TimeUnit.HOURS.toMillis(1);
+        AuthSessionManager.initialize();
+        
+        playerIds = new UUID[sessionCount];
+        addresses = new InetAddress[sessionCount];
+        for (int i = 0; i < sessionCount; i++) {
+            playerIds[i] = UUID.randomUUID();
+            addresses[i] = InetAddress.getByAddress(new byte[] {10, (byte) (i >>> 16), (byte) (i >>> 8), (byte) i});
+            AuthSessionManager.createSession(playerIds[i].toString(), addresses[i], playerIds[i]);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        AuthSessionManager.onServerStopped();
+    }
+    
+    @Benchmark
+    public AuthSessionManager.AuthSession findSessionByPlayer() {
+        return AuthSessionManager.findSessionByPlayer(playerIds[ThreadLocalRandom.current().nextInt(sessionCount)]);
+    }
+    
+    @Benchmark
+    public AuthSessionManager.AuthSession findSessionByAddress() {
+        return AuthSessionManager.findSessionByAddress(addresses[ThreadLocalRandom.current().nextInt(sessionCount)]);
+    }
+}
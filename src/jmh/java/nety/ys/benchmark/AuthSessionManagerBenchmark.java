@@ -0,0 +1,101 @@
+package nety.ys.benchmark;
+
+import nety.ys.config.ModConfig;
+import nety.ys.crypto.DynamicTokenGenerator;
+import nety.ys.server.AuthSessionManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 认证会话创建与验证基准测试
+ * 
+ * @author nety.ys
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthSessionManagerBenchmark {
+    
+    @Param({"16", "32"})
+    public int challengeSize;
+    
+    @Param({"5000", "30000"})
+    public long timeWindow;
+    
+    private final AtomicLong addressCounter = new AtomicLong();
+    private DynamicTokenGenerator clientGenerator;
+    private String failingConnectionId;
+    private InetAddress failingAddress;
+    private long failingTimestamp;
+    private byte[] invalidToken;
+    
+    @Setup(Level.Trial)
+    public void setup() throws UnknownHostException {
+        ModConfig.ServerConfig config = BenchmarkSupport.installModInstance();
+        config.challengeSize = challengeSize;
+        config.timeWindow = timeWindow;
+        AuthSessionManager.initialize();
+        
+        clientGenerator = new DynamicTokenGenerator(config.getSharedSecretBytes());
+        
+        // 准备一个始终验证失败的会话，模拟暴力破解；超时时间放宽到覆盖整个测试
+        long responseTimeout = config.responseTimeout;
+        config.responseTimeout = TimeUnit.HOURS.toMillis(1);
+        failingConnectionId = UUID.randomUUID().toString();
+        failingAddress = InetAddress.getByName("203.0.113.7");
+        AuthSessionManager.AuthSession session = AuthSessionManager.createSession(failingConnectionId, failingAddress);
+        failingTimestamp = session.getTimestamp();
+        config.responseTimeout = responseTimeout;
+        invalidToken = new byte[clientGenerator.getTokenLength()];
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        AuthSessionManager.onServerStopped();
+    }
+    
+    /**
+     * 生成互不相同的客户端地址，避免命中同一IP的状态
+     */
+    private InetAddress nextAddress() throws UnknownHostException {
+        long n = addressCounter.incrementAndGet();
+        return InetAddress.getByAddress(new byte[] {10, (byte) (n >>> 16), (byte) (n >>> 8), (byte) n});
+    }
+    
+    @Benchmark
+    public AuthSessionManager.AuthSession createSession() throws UnknownHostException {
+        String connectionId = UUID.randomUUID().toString();
+        AuthSessionManager.AuthSession session = AuthSessionManager.createSession(connectionId, nextAddress());
+        
+        // 立即以正确的令牌完成验证，保持活跃会话数稳定
+        byte[] token = clientGenerator.generateToken(session.getChallenge(), session.getTimestamp());
+        AuthSessionManager.verifyTokenResponse(connectionId, token, session.getTimestamp(),
+                                               session.getTimestamp(), session.getAddress());
+        return session;
+    }
+    
+    @Benchmark
+    public boolean verifyTokenResponseInvalidWindowed() {
+        return AuthSessionManager.verifyTokenResponse(failingConnectionId, invalidToken,
+                                                      failingTimestamp, failingTimestamp, failingAddress);
+    }
+    
+    @Benchmark
+    public boolean verifyTokenResponseInvalidLegacy() {
+        return AuthSessionManager.verifyTokenResponse(failingConnectionId, invalidToken,
+                                                      failingTimestamp, failingAddress);
+    }
+    
+    @Benchmark
+    public boolean isIPBlocked() {
+        return AuthSessionManager.isIPBlocked(failingAddress);
+    }
+}
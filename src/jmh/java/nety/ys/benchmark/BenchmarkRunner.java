@@ -0,0 +1,42 @@
+package nety.ys.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 基准测试入口
+ * 按线程数列表依次运行所有基准，每个线程数输出一份JSON报告
+ * 
+ * @author nety.ys
+ */
+public class BenchmarkRunner {
+    
+    public static void main(String[] args) throws RunnerException, java.io.IOException {
+        Path reportDir = Path.of(System.getProperty("tokenauth.jmh.reportDir", "build/reports/jmh"));
+        String include = System.getProperty("tokenauth.jmh.include", "nety\\.ys\\.benchmark\\..*");
+        String threadList = System.getProperty("tokenauth.jmh.threads", "1");
+        
+        Files.createDirectories(reportDir);
+        
+        for (String value : threadList.split(",")) {
+            int threads = Integer.parseInt(value.trim());
+            Path report = reportDir.resolve("results-t" + threads + ".json");
+            
+            Options options = new OptionsBuilder()
+                .include(include)
+                .threads(threads)
+                .resultFormat(ResultFormatType.JSON)
+                .result(report.toString())
+                .build();
+            
+            System.out.println("=== 运行基准测试，线程数: " + threads + "，报告: " + report + " ===");
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package nety.ys.benchmark;
+
+import nety.ys.TokenAuthMod;
+import nety.ys.config.KeyGenerator;
+import nety.ys.config.ModConfig;
+import nety.ys.config.SimpleConfigManager;
+
+import java.lang.reflect.Field;
+
+/**
+ * 基准测试辅助类
+ * 在没有Fabric加载器和Minecraft服务器的情况下准备模组实例和服务器配置
+ * 
+ * @author nety.ys
+ */
+final class BenchmarkSupport {
+    
+    private BenchmarkSupport() {
+    }
+    
+    /**
+     * 安装一个只带默认配置的模组实例，并配置随机共享密钥
+     * 
+     * @return 服务器配置，可在基准测试中按参数调整
+     */
+    static ModConfig.ServerConfig installModInstance() {
+        try {
+            TokenAuthMod mod = new TokenAuthMod();
+            
+            Field configField = TokenAuthMod.class.getDeclaredField("configManager");
+            configField.setAccessible(true);
+            configField.set(mod, new SimpleConfigManager());
+            
+            Field instanceField = TokenAuthMod.class.getDeclaredField("INSTANCE");
+            instanceField.setAccessible(true);
+            instanceField.set(null, mod);
+            
+            ModConfig.ServerConfig config = mod.getConfigManager().getServerConfig();
+            config.sharedSecret = KeyGenerator.generateSharedSecret();
+            config.debugMode = false;
+            return config;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法准备基准测试用的模组实例", e);
+        }
+    }
+}
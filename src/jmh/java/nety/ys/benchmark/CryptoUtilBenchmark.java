@@ -0,0 +1,35 @@
+package nety.ys.benchmark;
+
+import nety.ys.util.CryptoUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 加密工具类基准测试
+ * 
+ * @author nety.ys
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoUtilBenchmark {
+    
+    @Param({"16", "32", "256"})
+    public int size;
+    
+    private byte[] bytes;
+    
+    @Setup
+    public void setup() {
+        bytes = CryptoUtil.generateRandomBytes(size);
+    }
+    
+    @Benchmark
+    public String bytesToHex() {
+        return CryptoUtil.bytesToHex(bytes);
+    }
+}
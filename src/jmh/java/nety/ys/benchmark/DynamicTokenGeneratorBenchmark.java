@@ -0,0 +1,83 @@
+package nety.ys.benchmark;
+
+import nety.ys.config.KeyGenerator;
+import nety.ys.crypto.DynamicTokenGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 动态令牌生成与验证基准测试
+ * 
+ * @author nety.ys
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DynamicTokenGeneratorBenchmark {
+    
+    @Param({"16", "32", "64"})
+    public int challengeSize;
+    
+    @Param({"5000", "30000"})
+    public long toleranceMillis;
+    
+    private DynamicTokenGenerator generator;
+    private byte[] challenge;
+    private long timestamp;
+    private byte[] validToken;
+    private byte[] invalidToken;
+    
+    @Setup
+    public void setup() {
+        generator = new DynamicTokenGenerator(KeyGenerator.generateChallenge(KeyGenerator.DEFAULT_KEY_LENGTH_BYTES));
+        challenge = KeyGenerator.generateChallenge(challengeSize);
+        timestamp = System.currentTimeMillis();
+        validToken = generator.generateToken(challenge, timestamp);
+        invalidToken = KeyGenerator.generateChallenge(validToken.length);
+    }
+    
+    /**
+     * 每线程的输出缓冲区
+     */
+    @State(Scope.Thread)
+    public static class OutputBuffer {
+        byte[] out = new byte[32];
+    }
+    
+    @Benchmark
+    public byte[] generateToken() {
+        return generator.generateToken(challenge, timestamp);
+    }
+    
+    @Benchmark
+    public int generateTokenInto(OutputBuffer buffer) {
+        return generator.generateTokenInto(challenge, timestamp, buffer.out);
+    }
+    
+    @Benchmark
+    public boolean verifyWindowedValid() {
+        return generator.verifyTokenInWindow(challenge, timestamp, timestamp, validToken, toleranceMillis);
+    }
+    
+    @Benchmark
+    public boolean verifyWindowedInvalid() {
+        return generator.verifyTokenInWindow(challenge, timestamp, timestamp, invalidToken, toleranceMillis);
+    }
+    
+    @Benchmark
+    public boolean verifyWithToleranceValid() {
+        return generator.verifyTokenWithTolerance(challenge, timestamp, validToken, toleranceMillis);
+    }
+    
+    /**
+     * 失败的登录会扫描完整个容差范围，这是暴力破解时的最坏情况
+     */
+    @Benchmark
+    public boolean verifyWithToleranceInvalid() {
+        return generator.verifyTokenWithTolerance(challenge, timestamp, invalidToken, toleranceMillis);
+    }
+}
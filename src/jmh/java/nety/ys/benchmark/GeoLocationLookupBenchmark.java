@@ -0,0 +1,81 @@
+package nety.ys.benchmark;
+
+import nety.ys.util.IPGeolocationUtil;
+import nety.ys.util.LocalGeoLocationProvider;
+import nety.ys.util.MappedGeoLocationProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地地理位置数据库查找基准测试
+ * 
+ * @author nety.ys
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoLocationLookupBenchmark {
+    
+    @Param({"1000", "500000"})
+    public int rangeCount;
+    
+    private LocalGeoLocationProvider provider;
+    private MappedGeoLocationProvider mappedProvider;
+    private InetAddress[] addresses;
+    
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkSupport.installModInstance();
+        
+        // 生成互不重叠、每段256个地址的IPv4数据库
+        Path file = Files.createTempFile("tokenauth-geo", ".csv");
+        Path binaryFile = Files.createTempFile("tokenauth-geo", ".bin");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (int i = 0; i < rangeCount; i++) {
+                    long start = 0x01000000L + ((long) i << 8);
+                    writer.write(toIPv4(start) + "," + toIPv4(start + 255) + ",国家" + (i % 200) + ",地区" + (i % 50) + ",城市");
+                    writer.newLine();
+                }
+            }
+            provider = LocalGeoLocationProvider.load(file);
+            provider.writeBinary(binaryFile);
+            mappedProvider = MappedGeoLocationProvider.open(binaryFile);
+        } finally {
+            // 二进制文件在映射期间保留，JVM退出时删除
+            Files.deleteIfExists(file);
+            binaryFile.toFile().deleteOnExit();
+        }
+        
+        addresses = new InetAddress[1024];
+        for (int i = 0; i < addresses.length; i++) {
+            long address = 0x01000000L + ThreadLocalRandom.current().nextLong((long) rangeCount << 8);
+            addresses[i] = InetAddress.getByName(toIPv4(address));
+        }
+    }
+    
+    private static String toIPv4(long address) {
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+    
+    @Benchmark
+    public IPGeolocationUtil.GeoLocationInfo lookup() {
+        return provider.lookup(addresses[ThreadLocalRandom.current().nextInt(addresses.length)]);
+    }
+    
+    @Benchmark
+    public IPGeolocationUtil.GeoLocationInfo mappedLookup() {
+        return mappedProvider.lookup(addresses[ThreadLocalRandom.current().nextInt(addresses.length)]);
+    }
+}
@@ -3,6 +3,7 @@ package nety.ys;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.networking.v1.ServerLoginConnectionEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 import net.fabricmc.loader.api.FabricLoader;
 import nety.ys.client.ClientInitializer;
@@ -11,6 +12,7 @@ import nety.ys.config.ConfigManager;
 import nety.ys.config.SimpleConfigManager;
 import nety.ys.network.PacketRegistry;
 import nety.ys.server.AuthSessionManager;
+import nety.ys.server.LoginAuthHandler;
 import nety.ys.server.commands.TokenCommandUnified;
 import nety.ys.server.events.AuthEventHandler;
 import nety.ys.server.constraint.ConstraintManager;
@@ -246,13 +248,17 @@ public class TokenAuthMod implements ModInitializer {
             // 注销数据包处理器
             PacketRegistry.unregisterServerPackets();
             
+            // 关闭认证警报服务，先于邮件服务关闭，使未发出的汇总邮件仍能进入邮件队列
+            nety.ys.server.AuthAlertService.shutdown();
+            
             // 关闭邮件通知服务
             nety.ys.util.EmailNotifier.shutdown();
-            
-            // 关闭认证警报服务
-            nety.ys.server.AuthAlertService.shutdown();
         });
         
+        // 登录阶段认证事件
+        ServerLoginConnectionEvents.QUERY_START.register(LoginAuthHandler::onQueryStart);
+        ServerLoginConnectionEvents.DISCONNECT.register(LoginAuthHandler::onLoginDisconnect);
+        
         // 玩家连接事件
         ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
             AuthEventHandler.onPlayerJoin(handler, sender, server);
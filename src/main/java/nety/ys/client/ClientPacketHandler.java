@@ -22,57 +22,15 @@ public class ClientPacketHandler {
         try {
             TokenAuthMod.LOGGER.info("开始处理服务器挑战");
             
-            // 获取客户端配置
-            ModConfig.ClientConfig config = TokenAuthMod.getInstance().getConfigManager().getClientConfig();
-            
-            // 检查共享密钥是否已配置
-            if (!config.isSharedSecretConfigured()) {
-                TokenAuthMod.LOGGER.error("客户端共享密钥未配置，无法处理服务器挑战");
-                return;
-            }
-            
-            // 检查挑战是否过期
-            if (packet.isExpired(config.timeout)) {
-                TokenAuthMod.LOGGER.warn("收到过期的服务器挑战，时间戳: {}, 当前时间: {}",
-                    packet.getTimestamp(), System.currentTimeMillis());
-                return;
-            }
-            
-            TokenAuthMod.LOGGER.info("挑战数据有效，开始生成令牌响应");
-            TokenAuthMod.LOGGER.info("服务器挑战: {}", java.util.Base64.getEncoder().encodeToString(packet.getChallenge()));
-            TokenAuthMod.LOGGER.info("挑战时间戳: {}", packet.getTimestamp());
-            
-            // 检查客户端令牌管理器状态
-            if (!ClientTokenManager.isInitialized()) {
-                TokenAuthMod.LOGGER.error("客户端令牌管理器未初始化");
-                return;
-            }
-            
             // 更新认证状态为处理中
             AuthStateManager.setState(AuthStateManager.AuthState.PROCESSING);
             AuthStateManager.setStatusMessage("生成令牌响应...");
             
-            // 生成令牌响应
-            byte[] response = ClientTokenManager.generateTokenResponse(
-                packet.getChallenge(),
-                packet.getTimestamp()
-            );
-            
-            if (response == null || response.length == 0) {
-                TokenAuthMod.LOGGER.error("生成令牌响应失败");
+            TokenResponsePacket responsePacket = createTokenResponse(packet);
+            if (responsePacket == null) {
                 return;
             }
             
-            TokenAuthMod.LOGGER.info("令牌响应生成成功，长度: {} 字节", response.length);
-            TokenAuthMod.LOGGER.info("客户端生成的令牌: {}", java.util.Base64.getEncoder().encodeToString(response));
-            TokenAuthMod.LOGGER.info("令牌生成器状态: {}", ClientTokenManager.getTokenGenerator() != null ? "已初始化" : "未初始化");
-            
-            // 创建令牌响应数据包
-            TokenResponsePacket responsePacket = new TokenResponsePacket(
-                response,
-                packet.getTimestamp()
-            );
-            
             // 发送响应给服务器
             responsePacket.send();
             
@@ -86,6 +44,79 @@ public class ClientPacketHandler {
         }
     }
     
+    /**
+     * 处理登录阶段的服务器挑战
+     * 在网络线程调用，响应作为登录查询的应答返回给服务器
+     * 
+     * @param packet 挑战数据包
+     * @return 令牌响应数据包，无法生成响应时返回null
+     */
+    public static TokenResponsePacket handleLoginChallenge(ChallengePacket packet) {
+        try {
+            TokenAuthMod.LOGGER.info("收到登录阶段的服务器挑战");
+            return createTokenResponse(packet);
+        } catch (Exception e) {
+            TokenAuthMod.LOGGER.error("处理登录阶段的服务器挑战时出错", e);
+            return null;
+        }
+    }
+    
+    /**
+     * 根据服务器挑战生成令牌响应
+     * 
+     * @param packet 挑战数据包
+     * @return 令牌响应数据包，无法生成响应时返回null
+     */
+    private static TokenResponsePacket createTokenResponse(ChallengePacket packet) {
+        // 获取客户端配置
+        ModConfig.ClientConfig config = TokenAuthMod.getInstance().getConfigManager().getClientConfig();
+        
+        // 检查共享密钥是否已配置
+        if (!config.isSharedSecretConfigured()) {
+            TokenAuthMod.LOGGER.error("客户端共享密钥未配置，无法处理服务器挑战");
+            return null;
+        }
+        
+        // 检查挑战是否过期
+        if (packet.isExpired(config.timeout)) {
+            TokenAuthMod.LOGGER.warn("收到过期的服务器挑战，时间戳: {}, 当前时间: {}",
+                packet.getTimestamp(), System.currentTimeMillis());
+            return null;
+        }
+        
+        TokenAuthMod.LOGGER.info("挑战数据有效，开始生成令牌响应");
+        TokenAuthMod.LOGGER.info("服务器挑战: {}", java.util.Base64.getEncoder().encodeToString(packet.getChallenge()));
+        TokenAuthMod.LOGGER.info("挑战时间戳: {}", packet.getTimestamp());
+        
+        // 检查客户端令牌管理器状态
+        if (!ClientTokenManager.isInitialized()) {
+            TokenAuthMod.LOGGER.error("客户端令牌管理器未初始化");
+            return null;
+        }
+        
+        // 生成令牌响应
+        byte[] response = ClientTokenManager.generateTokenResponse(
+            packet.getChallenge(),
+            packet.getTimestamp()
+        );
+        
+        if (response == null || response.length == 0) {
+            TokenAuthMod.LOGGER.error("生成令牌响应失败");
+            return null;
+        }
+        
+        TokenAuthMod.LOGGER.info("令牌响应生成成功，长度: {} 字节", response.length);
+        TokenAuthMod.LOGGER.info("客户端生成的令牌: {}", java.util.Base64.getEncoder().encodeToString(response));
+        TokenAuthMod.LOGGER.info("令牌生成器状态: {}", ClientTokenManager.getTokenGenerator() != null ? "已初始化" : "未初始化");
+        
+        // 创建令牌响应数据包，携带签名时间戳以便服务器只需计算一次HMAC
+        return new TokenResponsePacket(
+            response,
+            packet.getTimestamp(),
+            packet.getTimestamp()
+        );
+    }
+    
     /**
      * 处理认证结果
      * 
@@ -28,23 +28,44 @@ public class ModConfig {
         public long timeWindow = 30000; // 30秒
         public int challengeSize = 16;
         public long responseTimeout = 5000; // 5秒
+        public boolean allowLegacyTokenSweep = true; // 是否允许不携带签名时间戳的旧版客户端（按挑战时间戳验证）
+        public int verifyThreads = 2; // 令牌验证工作线程数
+        public int verifyQueueCapacity = 256; // 等待验证的令牌响应队列容量
+        public boolean loginPhaseAuth = false; // 是否在登录阶段完成认证，失败的客户端不会进入游戏
+        public boolean statelessChallenges = false; // 是否使用无状态挑战，等待响应的握手不在服务器上保存会话
         
         // 安全设置
         public int maxAttemptsPerIP = 5;
         public int blockDurationMinutes = 30;
         public boolean enableIPWhitelist = false;
-        public List<String> ipWhitelist = List.of("127.0.0.1", "::1");
+        public List<String> ipWhitelist = List.of("127.0.0.1", "::1"); // 支持CIDR网段，如"192.168.0.0/16"
+        public int subnetEscalationThreshold = 5; // 同一网段内被阻止的IP数达到该值时阻止整个网段，0为关闭
+        public int subnetEscalationIPv4Prefix = 24; // IPv4网段阻止的前缀长度
+        public int subnetEscalationIPv6Prefix = 64; // IPv6网段阻止的前缀长度
+        public int failedAttemptWindowMinutes = 10; // 失败尝试的统计窗口（分钟），从第一次失败开始计时，窗口结束时计数清零
+        public boolean enableHandshakeRateLimit = true; // 是否限制登录握手速率
+        public int handshakesPerIPPerMinute = 20; // 每个IP每分钟允许的登录握手次数，0为不限制
+        public int handshakeBurstPerIP = 5; // 每个IP允许的突发握手次数
+        public int handshakesPerSubnetPerMinute = 120; // 每个网段每分钟允许的登录握手次数，0为不限制
+        public int handshakeBurstPerSubnet = 30; // 每个网段允许的突发握手次数
+        public int handshakeSubnetIPv4Prefix = 24; // 握手限流的IPv4网段前缀长度
+        public int handshakeSubnetIPv6Prefix = 48; // 握手限流的IPv6网段前缀长度，按IP限流固定为/64
+        public boolean enableEarlyConnectionFilter = true; // 是否在接受TCP连接时直接关闭被阻止IP的连接
         
         // 日志设置
         public boolean enableAuthLogging = true;
         public boolean logSuccessfulAuth = true;
         public boolean logFailedAttempts = true;
         public boolean debugMode = false; // 调试模式开关
+        public String debugCategories = "all"; // 调试模式下输出的日志类别: all或debug,verbose,auth,csv,email的组合
         
         // CSV记录设置
         public boolean enableCSVLogging = false; // 默认关闭，需要用户手动启用
         public String csvFileName = "failed_auth_attempts.csv";
         public boolean logTimeoutAttempts = true; // 是否记录认证超时
+        public int csvQueueCapacity = 4096; // 等待写入的最大记录数，超出后丢弃
+        public int csvBatchSize = 64; // 累计多少条记录后立即刷新到磁盘
+        public long csvFlushIntervalMillis = 1000; // 最长刷新间隔（毫秒）
         
         // 邮件警报设置
         public boolean enableEmailAlerts = false; // 是否启用邮件警报
@@ -56,7 +77,29 @@ public class ModConfig {
         public String smtpPassword = ""; // SMTP密码
         public String emailFromAddress = ""; // 发件人邮箱
         public String emailToAddress = ""; // 收件人邮箱
+        public int alertDigestIntervalSeconds = 300; // 汇总窗口长度（秒），0表示每次失败都单独发送
+        public int alertImmediateCount = 1; // 每个汇总窗口内立即单独发送的失败次数
+        public int alertDigestTopSources = 10; // 汇总邮件中列出的来源IP数
+        public int alertQueueCapacity = 256; // 警报和邮件队列中最多排队的任务数
+        public String alertQueueRejectionPolicy = "DROP_LOWEST"; // 队列已满时的拒绝策略: DROP_LOWEST, DROP_OLDEST, DROP_NEW
+        public boolean alertFileEnabled = false; // 是否把每次认证失败和汇总写入JSON Lines文件
+        public String alertFileName = "auth_alerts.jsonl"; // JSON Lines文件名，位于配置目录
+        public int alertFileBatchSize = 100; // 每次写入文件的最大事件数
+        public long alertFileFlushIntervalMillis = 1000; // 写入文件的间隔（毫秒）
+        public int alertFileMaxRetries = 3; // 写入文件失败后的最大重试次数
+        public boolean alertWebhookEnabled = false; // 是否把每次认证失败和汇总发送到Webhook
+        public String alertWebhookUrl = ""; // Webhook地址，事件以JSON数组POST
+        public int alertWebhookTimeoutMillis = 5000; // Webhook连接和读取超时（毫秒）
+        public int alertWebhookBatchSize = 50; // 每次请求的最大事件数
+        public long alertWebhookFlushIntervalMillis = 5000; // 发送到Webhook的间隔（毫秒）
+        public int alertWebhookMaxRetries = 5; // Webhook请求失败后的最大重试次数
+        public long alertWebhookRetryBackoffMillis = 1000; // 第一次重试前的等待时间（毫秒），之后每次翻倍
         public boolean includeGeoLocation = true; // 是否包含地理位置信息
+        public int geoCacheMaxEntries = 1024; // 地理位置缓存的最大条目数，0表示不缓存
+        public long geoCacheTTLMinutes = 60; // 查询成功结果的缓存时间（分钟）
+        public long geoCacheFailureTTLMinutes = 5; // 查询失败结果的缓存时间（分钟）
+        public String geoDatabaseFile = ""; // 配置目录下的本地地理位置数据库文件，为空则不使用
+        public boolean enableOnlineGeoLookup = true; // 本地数据库中没有记录时是否使用在线API查询
         
         /**
          * 获取共享密钥的字节数组形式
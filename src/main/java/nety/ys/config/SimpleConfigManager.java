@@ -110,6 +110,8 @@ public class SimpleConfigManager {
             TokenAuthMod.LOGGER.error("加载服务器配置失败，使用默认配置", e);
             serverConfig = new ModConfig.ServerConfig();
         }
+        
+        DebugLogger.configure(serverConfig);
     }
     
     /**
@@ -165,6 +167,8 @@ public class SimpleConfigManager {
      * 保存服务器配置
      */
     public void saveServerConfig() {
+        // 配置可能在内存中被修改过，保存时同步调试日志设置
+        DebugLogger.configure(serverConfig);
         try {
             // 获取配置文件路径
             Path configPath = ModConfig.getConfigDir().resolve("token-auth-server.properties");
@@ -242,24 +246,56 @@ public class SimpleConfigManager {
         serverConfig.timeWindow = Long.parseLong(props.getProperty("authentication.timeWindow", "30000"));
         serverConfig.challengeSize = Integer.parseInt(props.getProperty("authentication.challengeSize", "16"));
         serverConfig.responseTimeout = Long.parseLong(props.getProperty("authentication.responseTimeout", "5000"));
+        serverConfig.allowLegacyTokenSweep = Boolean.parseBoolean(props.getProperty("authentication.allowLegacyTokenSweep", "true"));
+        serverConfig.verifyThreads = Integer.parseInt(props.getProperty("authentication.verifyThreads", "2"));
+        serverConfig.verifyQueueCapacity = Integer.parseInt(props.getProperty("authentication.verifyQueueCapacity", "256"));
+        serverConfig.loginPhaseAuth = Boolean.parseBoolean(props.getProperty("authentication.loginPhaseAuth", "false"));
+        serverConfig.statelessChallenges = Boolean.parseBoolean(props.getProperty("authentication.statelessChallenges", "false"));
         
         // 安全设置
         serverConfig.maxAttemptsPerIP = Integer.parseInt(props.getProperty("security.maxAttemptsPerIP", "5"));
         serverConfig.blockDurationMinutes = Integer.parseInt(props.getProperty("security.blockDurationMinutes", "30"));
         serverConfig.enableIPWhitelist = Boolean.parseBoolean(props.getProperty("security.enableIPWhitelist", "false"));
-        // IP白名单暂时保持默认值
+        String ipWhitelist = props.getProperty("security.ipWhitelist");
+        if (ipWhitelist != null) {
+            serverConfig.ipWhitelist = java.util.Arrays.stream(ipWhitelist.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .collect(java.util.stream.Collectors.toUnmodifiableList());
+        }
+        serverConfig.subnetEscalationThreshold = Integer.parseInt(props.getProperty("security.subnetEscalationThreshold", "5"));
+        serverConfig.subnetEscalationIPv4Prefix = Integer.parseInt(props.getProperty("security.subnetEscalationIPv4Prefix", "24"));
+        serverConfig.subnetEscalationIPv6Prefix = Integer.parseInt(props.getProperty("security.subnetEscalationIPv6Prefix", "64"));
+        serverConfig.failedAttemptWindowMinutes = Integer.parseInt(props.getProperty("security.failedAttemptWindowMinutes", "10"));
+        serverConfig.enableHandshakeRateLimit = Boolean.parseBoolean(props.getProperty("security.enableHandshakeRateLimit", "true"));
+        serverConfig.handshakesPerIPPerMinute = Integer.parseInt(props.getProperty("security.handshakesPerIPPerMinute", "20"));
+        serverConfig.handshakeBurstPerIP = Integer.parseInt(props.getProperty("security.handshakeBurstPerIP", "5"));
+        serverConfig.handshakesPerSubnetPerMinute = Integer.parseInt(props.getProperty("security.handshakesPerSubnetPerMinute", "120"));
+        serverConfig.handshakeBurstPerSubnet = Integer.parseInt(props.getProperty("security.handshakeBurstPerSubnet", "30"));
+        serverConfig.handshakeSubnetIPv4Prefix = Integer.parseInt(props.getProperty("security.handshakeSubnetIPv4Prefix", "24"));
+        serverConfig.handshakeSubnetIPv6Prefix = Integer.parseInt(props.getProperty("security.handshakeSubnetIPv6Prefix", "48"));
+        serverConfig.enableEarlyConnectionFilter = Boolean.parseBoolean(props.getProperty("security.enableEarlyConnectionFilter", "true"));
         
         // 日志设置
         serverConfig.enableAuthLogging = Boolean.parseBoolean(props.getProperty("logging.enableAuthLogging", "true"));
         serverConfig.logSuccessfulAuth = Boolean.parseBoolean(props.getProperty("logging.logSuccessfulAuth", "true"));
         serverConfig.logFailedAttempts = Boolean.parseBoolean(props.getProperty("logging.logFailedAttempts", "true"));
         serverConfig.debugMode = Boolean.parseBoolean(props.getProperty("logging.debugMode", "false"));
+        serverConfig.debugCategories = props.getProperty("logging.debugCategories", "all");
         
         // CSV记录设置
         serverConfig.enableCSVLogging = Boolean.parseBoolean(props.getProperty("enableCSVLogging", "false"));
         serverConfig.csvFileName = props.getProperty("csvFileName", "failed_auth_attempts.csv");
         serverConfig.logTimeoutAttempts = Boolean.parseBoolean(props.getProperty("logTimeoutAttempts", "true"));
+        serverConfig.csvQueueCapacity = Integer.parseInt(props.getProperty("csvQueueCapacity", "4096"));
+        serverConfig.csvBatchSize = Integer.parseInt(props.getProperty("csvBatchSize", "64"));
+        serverConfig.csvFlushIntervalMillis = Long.parseLong(props.getProperty("csvFlushIntervalMillis", "1000"));
         serverConfig.includeGeoLocation = Boolean.parseBoolean(props.getProperty("includeGeoLocation", "true"));
+        serverConfig.geoCacheMaxEntries = Integer.parseInt(props.getProperty("geoCacheMaxEntries", "1024"));
+        serverConfig.geoCacheTTLMinutes = Long.parseLong(props.getProperty("geoCacheTTLMinutes", "60"));
+        serverConfig.geoCacheFailureTTLMinutes = Long.parseLong(props.getProperty("geoCacheFailureTTLMinutes", "5"));
+        serverConfig.geoDatabaseFile = props.getProperty("geoDatabaseFile", "");
+        serverConfig.enableOnlineGeoLookup = Boolean.parseBoolean(props.getProperty("enableOnlineGeoLookup", "true"));
         
         // 邮件警报设置
         serverConfig.enableEmailAlerts = Boolean.parseBoolean(props.getProperty("email.enableEmailAlerts", "false"));
@@ -271,6 +307,25 @@ public class SimpleConfigManager {
         serverConfig.smtpPassword = props.getProperty("email.smtpPassword", "");
         serverConfig.emailFromAddress = props.getProperty("email.fromAddress", "");
         serverConfig.emailToAddress = props.getProperty("email.toAddress", "");
+        serverConfig.alertDigestIntervalSeconds = Integer.parseInt(props.getProperty("email.alertDigestIntervalSeconds", "300"));
+        serverConfig.alertImmediateCount = Integer.parseInt(props.getProperty("email.alertImmediateCount", "1"));
+        serverConfig.alertDigestTopSources = Integer.parseInt(props.getProperty("email.alertDigestTopSources", "10"));
+        serverConfig.alertQueueCapacity = Integer.parseInt(props.getProperty("email.alertQueueCapacity", "256"));
+        serverConfig.alertQueueRejectionPolicy = props.getProperty("email.alertQueueRejectionPolicy", "DROP_LOWEST");
+        
+        // 其他警报输出设置
+        serverConfig.alertFileEnabled = Boolean.parseBoolean(props.getProperty("alert.fileEnabled", "false"));
+        serverConfig.alertFileName = props.getProperty("alert.fileName", "auth_alerts.jsonl");
+        serverConfig.alertFileBatchSize = Integer.parseInt(props.getProperty("alert.fileBatchSize", "100"));
+        serverConfig.alertFileFlushIntervalMillis = Long.parseLong(props.getProperty("alert.fileFlushIntervalMillis", "1000"));
+        serverConfig.alertFileMaxRetries = Integer.parseInt(props.getProperty("alert.fileMaxRetries", "3"));
+        serverConfig.alertWebhookEnabled = Boolean.parseBoolean(props.getProperty("alert.webhookEnabled", "false"));
+        serverConfig.alertWebhookUrl = props.getProperty("alert.webhookUrl", "");
+        serverConfig.alertWebhookTimeoutMillis = Integer.parseInt(props.getProperty("alert.webhookTimeoutMillis", "5000"));
+        serverConfig.alertWebhookBatchSize = Integer.parseInt(props.getProperty("alert.webhookBatchSize", "50"));
+        serverConfig.alertWebhookFlushIntervalMillis = Long.parseLong(props.getProperty("alert.webhookFlushIntervalMillis", "5000"));
+        serverConfig.alertWebhookMaxRetries = Integer.parseInt(props.getProperty("alert.webhookMaxRetries", "5"));
+        serverConfig.alertWebhookRetryBackoffMillis = Long.parseLong(props.getProperty("alert.webhookRetryBackoffMillis", "1000"));
         
         return serverConfig;
     }
@@ -308,12 +363,29 @@ public class SimpleConfigManager {
         props.setProperty("authentication.timeWindow", String.valueOf(serverConfig.timeWindow));
         props.setProperty("authentication.challengeSize", String.valueOf(serverConfig.challengeSize));
         props.setProperty("authentication.responseTimeout", String.valueOf(serverConfig.responseTimeout));
+        props.setProperty("authentication.allowLegacyTokenSweep", String.valueOf(serverConfig.allowLegacyTokenSweep));
+        props.setProperty("authentication.verifyThreads", String.valueOf(serverConfig.verifyThreads));
+        props.setProperty("authentication.verifyQueueCapacity", String.valueOf(serverConfig.verifyQueueCapacity));
+        props.setProperty("authentication.loginPhaseAuth", String.valueOf(serverConfig.loginPhaseAuth));
+        props.setProperty("authentication.statelessChallenges", String.valueOf(serverConfig.statelessChallenges));
         
         // 安全设置
         props.setProperty("security.maxAttemptsPerIP", String.valueOf(serverConfig.maxAttemptsPerIP));
         props.setProperty("security.blockDurationMinutes", String.valueOf(serverConfig.blockDurationMinutes));
         props.setProperty("security.enableIPWhitelist", String.valueOf(serverConfig.enableIPWhitelist));
-        // IP白名单暂时不保存
+        props.setProperty("security.ipWhitelist", String.join(",", serverConfig.ipWhitelist));
+        props.setProperty("security.subnetEscalationThreshold", String.valueOf(serverConfig.subnetEscalationThreshold));
+        props.setProperty("security.subnetEscalationIPv4Prefix", String.valueOf(serverConfig.subnetEscalationIPv4Prefix));
+        props.setProperty("security.subnetEscalationIPv6Prefix", String.valueOf(serverConfig.subnetEscalationIPv6Prefix));
+        props.setProperty("security.failedAttemptWindowMinutes", String.valueOf(serverConfig.failedAttemptWindowMinutes));
+        props.setProperty("security.enableHandshakeRateLimit", String.valueOf(serverConfig.enableHandshakeRateLimit));
+        props.setProperty("security.handshakesPerIPPerMinute", String.valueOf(serverConfig.handshakesPerIPPerMinute));
+        props.setProperty("security.handshakeBurstPerIP", String.valueOf(serverConfig.handshakeBurstPerIP));
+        props.setProperty("security.handshakesPerSubnetPerMinute", String.valueOf(serverConfig.handshakesPerSubnetPerMinute));
+        props.setProperty("security.handshakeBurstPerSubnet", String.valueOf(serverConfig.handshakeBurstPerSubnet));
+        props.setProperty("security.handshakeSubnetIPv4Prefix", String.valueOf(serverConfig.handshakeSubnetIPv4Prefix));
+        props.setProperty("security.handshakeSubnetIPv6Prefix", String.valueOf(serverConfig.handshakeSubnetIPv6Prefix));
+        props.setProperty("security.enableEarlyConnectionFilter", String.valueOf(serverConfig.enableEarlyConnectionFilter));
         
         
         // 邮件警报设置
@@ -326,17 +398,45 @@ public class SimpleConfigManager {
         props.setProperty("email.smtpPassword", serverConfig.smtpPassword);
         props.setProperty("email.fromAddress", serverConfig.emailFromAddress);
         props.setProperty("email.toAddress", serverConfig.emailToAddress);
+        props.setProperty("email.alertDigestIntervalSeconds", String.valueOf(serverConfig.alertDigestIntervalSeconds));
+        props.setProperty("email.alertImmediateCount", String.valueOf(serverConfig.alertImmediateCount));
+        props.setProperty("email.alertDigestTopSources", String.valueOf(serverConfig.alertDigestTopSources));
+        props.setProperty("email.alertQueueCapacity", String.valueOf(serverConfig.alertQueueCapacity));
+        props.setProperty("email.alertQueueRejectionPolicy", serverConfig.alertQueueRejectionPolicy);
+        
+        // 其他警报输出设置
+        props.setProperty("alert.fileEnabled", String.valueOf(serverConfig.alertFileEnabled));
+        props.setProperty("alert.fileName", serverConfig.alertFileName);
+        props.setProperty("alert.fileBatchSize", String.valueOf(serverConfig.alertFileBatchSize));
+        props.setProperty("alert.fileFlushIntervalMillis", String.valueOf(serverConfig.alertFileFlushIntervalMillis));
+        props.setProperty("alert.fileMaxRetries", String.valueOf(serverConfig.alertFileMaxRetries));
+        props.setProperty("alert.webhookEnabled", String.valueOf(serverConfig.alertWebhookEnabled));
+        props.setProperty("alert.webhookUrl", serverConfig.alertWebhookUrl);
+        props.setProperty("alert.webhookTimeoutMillis", String.valueOf(serverConfig.alertWebhookTimeoutMillis));
+        props.setProperty("alert.webhookBatchSize", String.valueOf(serverConfig.alertWebhookBatchSize));
+        props.setProperty("alert.webhookFlushIntervalMillis", String.valueOf(serverConfig.alertWebhookFlushIntervalMillis));
+        props.setProperty("alert.webhookMaxRetries", String.valueOf(serverConfig.alertWebhookMaxRetries));
+        props.setProperty("alert.webhookRetryBackoffMillis", String.valueOf(serverConfig.alertWebhookRetryBackoffMillis));
         // 日志设置
         props.setProperty("logging.enableAuthLogging", String.valueOf(serverConfig.enableAuthLogging));
         props.setProperty("logging.logSuccessfulAuth", String.valueOf(serverConfig.logSuccessfulAuth));
         props.setProperty("logging.logFailedAttempts", String.valueOf(serverConfig.logFailedAttempts));
         props.setProperty("logging.debugMode", String.valueOf(serverConfig.debugMode));
+        props.setProperty("logging.debugCategories", serverConfig.debugCategories);
         
         // CSV记录设置
         props.setProperty("enableCSVLogging", String.valueOf(serverConfig.enableCSVLogging));
         props.setProperty("csvFileName", serverConfig.csvFileName);
         props.setProperty("logTimeoutAttempts", String.valueOf(serverConfig.logTimeoutAttempts));
+        props.setProperty("csvQueueCapacity", String.valueOf(serverConfig.csvQueueCapacity));
+        props.setProperty("csvBatchSize", String.valueOf(serverConfig.csvBatchSize));
+        props.setProperty("csvFlushIntervalMillis", String.valueOf(serverConfig.csvFlushIntervalMillis));
         props.setProperty("includeGeoLocation", String.valueOf(serverConfig.includeGeoLocation));
+        props.setProperty("geoCacheMaxEntries", String.valueOf(serverConfig.geoCacheMaxEntries));
+        props.setProperty("geoCacheTTLMinutes", String.valueOf(serverConfig.geoCacheTTLMinutes));
+        props.setProperty("geoCacheFailureTTLMinutes", String.valueOf(serverConfig.geoCacheFailureTTLMinutes));
+        props.setProperty("geoDatabaseFile", serverConfig.geoDatabaseFile);
+        props.setProperty("enableOnlineGeoLookup", String.valueOf(serverConfig.enableOnlineGeoLookup));
     }
     
     /**
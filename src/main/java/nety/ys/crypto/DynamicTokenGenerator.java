@@ -1,8 +1,8 @@
 package nety.ys.crypto;
 
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
-import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.TimeUnit;
@@ -10,6 +10,7 @@ import java.util.concurrent.TimeUnit;
 /**
  * 动态令牌生成器
  * 使用HMAC-SHA256算法生成基于时间窗口的动态令牌
+ * 每个线程持有一个从预初始化原型克隆出的HMAC引擎，可以被多个线程并发调用
  * 
  * @author nety.ys
  */
@@ -36,9 +37,19 @@ public class DynamicTokenGenerator {
     private final long timeWindowMillis;
     
     /**
-     * HMAC实例
+     * 已初始化密钥的HMAC原型，各线程的引擎从它克隆
      */
-    private final Mac hmac;
+    private final Mac prototype;
+    
+    /**
+     * 令牌长度（字节）
+     */
+    private final int tokenLength;
+    
+    /**
+     * 每线程的HMAC引擎
+     */
+    private final ThreadLocal<HmacEngine> engines = ThreadLocal.withInitial(this::newEngine);
     
     /**
      * 构造函数，使用默认时间窗口
@@ -65,11 +76,22 @@ public class DynamicTokenGenerator {
         this.sharedSecret = sharedSecret.clone();
         this.timeWindowMillis = timeWindowMillis;
         
+        // 初始化HMAC原型
+        this.prototype = createMac();
+        this.tokenLength = prototype.getMacLength();
+    }
+    
+    /**
+     * 创建并初始化一个新的HMAC实例
+     * 
+     * @return 已初始化密钥的HMAC实例
+     */
+    private Mac createMac() {
         try {
-            // 初始化HMAC实例
-            this.hmac = Mac.getInstance(HMAC_ALGORITHM);
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
             SecretKeySpec keySpec = new SecretKeySpec(this.sharedSecret, HMAC_ALGORITHM);
-            this.hmac.init(keySpec);
+            mac.init(keySpec);
+            return mac;
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("不支持的HMAC算法: " + HMAC_ALGORITHM, e);
         } catch (InvalidKeyException e) {
@@ -77,6 +99,24 @@ public class DynamicTokenGenerator {
         }
     }
     
+    /**
+     * 为当前线程创建HMAC引擎
+     * 优先克隆原型以跳过密钥初始化，提供者不支持克隆时重新初始化
+     * 
+     * @return HMAC引擎
+     */
+    private HmacEngine newEngine() {
+        Mac mac;
+        try {
+            synchronized (prototype) {
+                mac = (Mac) prototype.clone();
+            }
+        } catch (CloneNotSupportedException e) {
+            mac = createMac();
+        }
+        return new HmacEngine(mac, tokenLength);
+    }
+    
     /**
      * 生成动态令牌
      * 
@@ -85,22 +125,53 @@ public class DynamicTokenGenerator {
      * @return 动态令牌
      */
     public byte[] generateToken(byte[] challenge, long timestamp) {
+        byte[] token = new byte[tokenLength];
+        generateTokenInto(challenge, timestamp, token);
+        return token;
+    }
+    
+    /**
+     * 生成动态令牌并写入调用方提供的缓冲区
+     * 不分配任何临时对象，适合在高并发验证路径上重复调用
+     * 
+     * @param challenge 挑战数据
+     * @param timestamp 时间戳
+     * @param out 输出缓冲区，长度不能小于{@link #getTokenLength()}
+     * @return 写入的字节数
+     */
+    public int generateTokenInto(byte[] challenge, long timestamp, byte[] out) {
         if (challenge == null) {
             throw new IllegalArgumentException("挑战数据不能为空");
         }
+        if (out == null || out.length < tokenLength) {
+            throw new IllegalArgumentException("输出缓冲区长度不足，至少需要 " + tokenLength + " 字节");
+        }
+        
+        computeToken(engines.get(), challenge, timestamp, out);
+        return tokenLength;
+    }
+    
+    /**
+     * 使用指定引擎计算令牌：HMAC(挑战数据 + 大端序时间戳)
+     * 
+     * @param engine HMAC引擎
+     * @param challenge 挑战数据
+     * @param timestamp 时间戳
+     * @param out 输出缓冲区
+     */
+    private void computeToken(HmacEngine engine, byte[] challenge, long timestamp, byte[] out) {
+        byte[] timestampBytes = engine.timestampBytes;
+        for (int i = 7; i >= 0; i--) {
+            timestampBytes[i] = (byte) timestamp;
+            timestamp >>>= 8;
+        }
         
         try {
-            // 创建数据缓冲区：挑战数据 + 时间戳
-            ByteBuffer buffer = ByteBuffer.allocate(challenge.length + 8);
-            buffer.put(challenge);
-            buffer.putLong(timestamp);
-            
-            // 重置HMAC实例状态
-            hmac.reset();
-            
-            // 计算HMAC值
-            return hmac.doFinal(buffer.array());
-        } catch (Exception e) {
+            Mac mac = engine.mac;
+            mac.update(challenge);
+            mac.update(timestampBytes);
+            mac.doFinal(out, 0);
+        } catch (ShortBufferException e) {
             throw new RuntimeException("令牌生成失败", e);
         }
     }
@@ -119,11 +190,12 @@ public class DynamicTokenGenerator {
         }
         
         try {
-            // 生成预期的令牌
-            byte[] expectedToken = generateToken(challenge, timestamp);
+            // 生成预期的令牌到线程私有缓冲区
+            HmacEngine engine = engines.get();
+            computeToken(engine, challenge, timestamp, engine.expected);
             
             // 比较令牌
-            return constantTimeEquals(expectedToken, token);
+            return constantTimeEquals(engine.expected, token);
         } catch (Exception e) {
             return false;
         }
@@ -131,6 +203,8 @@ public class DynamicTokenGenerator {
     
     /**
      * 验证令牌（带时间容差）
+     * 逐步扫描容差范围内的时间戳，失败时最多需要计算 2*容差/500+1 次HMAC。
+     * 服务器不再使用此方法：所有客户端签名的都是挑战时间戳，旧版客户端用verifyToken验证即可
      * 
      * @param challenge 挑战数据
      * @param timestamp 时间戳
@@ -168,6 +242,33 @@ public class DynamicTokenGenerator {
         }
     }
     
+    /**
+     * 验证令牌（窗口模式）
+     * 客户端在响应中携带其签名时使用的时间戳，服务器只需检查该时间戳是否落在
+     * 挑战时间戳的容差范围内，再计算一次HMAC即可，失败时的开销与成功时相同
+     * 
+     * @param challenge 挑战数据
+     * @param challengeTimestamp 挑战时间戳
+     * @param signedTimestamp 客户端签名时使用的时间戳
+     * @param token 要验证的令牌
+     * @param timeToleranceMillis 时间容差（毫秒）
+     * @return 如果令牌有效则返回true
+     */
+    public boolean verifyTokenInWindow(byte[] challenge, long challengeTimestamp, long signedTimestamp,
+                                       byte[] token, long timeToleranceMillis) {
+        if (token == null || token.length == 0) {
+            return false;
+        }
+        
+        // 先做范围检查，超出窗口的响应无需计算HMAC
+        long drift = signedTimestamp - challengeTimestamp;
+        if (drift > timeToleranceMillis || drift < -timeToleranceMillis) {
+            return false;
+        }
+        
+        return verifyToken(challenge, signedTimestamp, token);
+    }
+    
     /**
      * 常数时间比较，防止时序攻击
      * 
@@ -188,6 +289,15 @@ public class DynamicTokenGenerator {
         return result == 0;
     }
     
+    /**
+     * 获取令牌长度
+     * 
+     * @return 令牌长度（字节）
+     */
+    public int getTokenLength() {
+        return tokenLength;
+    }
+    
     /**
      * 获取时间窗口大小（毫秒）
      * 
@@ -205,4 +315,19 @@ public class DynamicTokenGenerator {
     public byte[] getSharedSecret() {
         return sharedSecret.clone();
     }
+    
+    /**
+     * 线程私有的HMAC引擎
+     * 持有克隆的HMAC实例以及时间戳和预期令牌的复用缓冲区
+     */
+    private static final class HmacEngine {
+        private final Mac mac;
+        private final byte[] timestampBytes = new byte[8];
+        private final byte[] expected;
+        
+        private HmacEngine(Mac mac, int tokenLength) {
+            this.mac = mac;
+            this.expected = new byte[tokenLength];
+        }
+    }
 }
\ No newline at end of file
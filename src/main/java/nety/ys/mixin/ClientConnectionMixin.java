@@ -0,0 +1,33 @@
+package nety.ys.mixin;
+
+import net.minecraft.network.ClientConnection;
+import nety.ys.server.AuthContext;
+import nety.ys.server.AuthContextHolder;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+
+/**
+ * 客户端连接混入
+ * 为每个连接附加认证上下文，登录阶段和游戏阶段共用同一个上下文
+ * 
+ * @author nety.ys
+ */
+@Mixin(ClientConnection.class)
+public class ClientConnectionMixin implements AuthContextHolder {
+    
+    /**
+     * 连接的认证上下文
+     */
+    @Unique
+    private volatile AuthContext tokenauth$authContext;
+    
+    @Override
+    public AuthContext tokenauth$getAuthContext() {
+        return tokenauth$authContext;
+    }
+    
+    @Override
+    public void tokenauth$setAuthContext(AuthContext context) {
+        this.tokenauth$authContext = context;
+    }
+}
@@ -0,0 +1,25 @@
+package nety.ys.mixin;
+
+import com.mojang.authlib.GameProfile;
+import net.minecraft.server.network.ServerLoginNetworkHandler;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+/**
+ * 服务器登录网络处理器访问器
+ * 用于在登录阶段认证时获取客户端的游戏档案
+ * 
+ * @author nety.ys
+ */
+@Mixin(ServerLoginNetworkHandler.class)
+public interface ServerLoginNetworkHandlerAccessor {
+    
+    /**
+     * 获取客户端的游戏档案
+     * 离线模式下在登录完成前UUID可能为null
+     * 
+     * @return 游戏档案，收到Hello包之前为null
+     */
+    @Accessor("profile")
+    GameProfile getProfile();
+}
@@ -6,8 +6,11 @@ import net.minecraft.server.network.ServerLoginNetworkHandler;
 import net.minecraft.text.Text;
 import nety.ys.TokenAuthMod;
 import nety.ys.config.ModConfig;
+import nety.ys.server.AuthContext;
 import nety.ys.server.AuthPacketHandler;
 import nety.ys.server.AuthSessionManager;
+import nety.ys.server.HandshakeRateLimiter;
+import nety.ys.util.DebugLogger;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
 import org.spongepowered.asm.mixin.injection.At;
@@ -16,7 +19,6 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.util.UUID;
 
 /**
  * 服务器登录网络处理器混入
@@ -75,8 +77,8 @@ public class ServerLoginNetworkHandlerMixin {
                 TokenAuthMod.LOGGER.warn("未知地址类型: {}，使用回环地址", addressObj.getClass().getName());
             }
             
-            // 检查IP是否被阻止
-            if (AuthSessionManager.isIPBlocked(clientAddress.toString())) {
+            // 检查IP是否被阻止，接受连接时已由ConnectionFilter过滤，这里处理连接期间才被阻止的IP
+            if (AuthSessionManager.isIPBlocked(clientAddress)) {
                 TokenAuthMod.LOGGER.warn("IP地址 {} 已被阻止，拒绝连接", clientAddress.toString());
                 ((ServerLoginNetworkHandler)(Object)this).getConnection().disconnect(
                     Text.literal("您的IP地址已被阻止，请稍后再试")
@@ -85,44 +87,29 @@ public class ServerLoginNetworkHandlerMixin {
                 return;
             }
             
-            // 检查IP白名单（如果启用）
-            if (config.enableIPWhitelist && !config.ipWhitelist.contains(clientAddress.getHostAddress())) {
-                TokenAuthMod.LOGGER.warn("IP地址 {} 不在白名单中，拒绝连接", clientAddress.getHostAddress());
+            // 检查握手速率，超出速率的连接在分配会话和生成挑战之前就被拒绝
+            if (!HandshakeRateLimiter.tryAcquire(clientAddress)) {
+                DebugLogger.debug("IP地址 {} 登录握手过于频繁，拒绝连接", clientAddress);
                 ((ServerLoginNetworkHandler)(Object)this).getConnection().disconnect(
-                    Text.literal("您的IP地址不在白名单中")
+                    Text.literal("连接过于频繁，请稍后再试")
                 );
                 ci.cancel();
                 return;
             }
             
-            // 生成连接ID
-            String connectionId = UUID.randomUUID().toString();
-            TokenAuthMod.LOGGER.info("为连接 {} 生成连接ID: {}", clientAddress.toString(), connectionId);
-            
-            // 创建认证会话
-            AuthSessionManager.AuthSession session = AuthSessionManager.createSession(
-                connectionId,
-                clientAddress
-            );
-            
-            if (session == null) {
-                TokenAuthMod.LOGGER.error("无法为连接 {} 创建认证会话", connectionId);
+            // 检查IP白名单（如果启用）
+            if (config.enableIPWhitelist && !AuthSessionManager.isIPWhitelisted(clientAddress)) {
+                TokenAuthMod.LOGGER.warn("IP地址 {} 不在白名单中，拒绝连接", clientAddress.getHostAddress());
                 ((ServerLoginNetworkHandler)(Object)this).getConnection().disconnect(
-                    Text.literal("认证系统错误，请稍后再试")
+                    Text.literal("您的IP地址不在白名单中")
                 );
                 ci.cancel();
                 return;
             }
             
-            // 不在登录阶段发送挑战，而是让玩家进入游戏后在游戏阶段进行认证
-            // 这样可以避免登录阶段的数据包序列化问题
-            TokenAuthMod.LOGGER.info("允许玩家进入游戏，将在游戏阶段进行认证");
-            
-            // 不取消原版流程，让玩家正常进入游戏，然后在游戏阶段进行认证
-            // ci.cancel();
-            
-            TokenAuthMod.LOGGER.info("已为客户端 {} 创建认证会话，等待玩家进入游戏", clientAddress.toString());
-            
+            // 把认证上下文附加到连接上，挑战在认证开始时（登录查询阶段或玩家进入游戏后）创建
+            AuthContext context = AuthContext.getOrCreate(((ServerLoginNetworkHandler)(Object)this).getConnection());
+            DebugLogger.auth("已为客户端 {} 附加认证上下文，连接ID: {}", clientAddress, context.getConnectionId());
         } catch (Exception e) {
             TokenAuthMod.LOGGER.error("处理登录认证时出错", e);
             ((ServerLoginNetworkHandler)(Object)this).getConnection().disconnect(
@@ -131,64 +118,4 @@ public class ServerLoginNetworkHandlerMixin {
             ci.cancel();
         }
     }
-    
-    /**
-     * 在接受连接时注入认证检查
-     * 确保只有通过认证的客户端才能继续登录流程
-     *
-     * @param ci 回调信息
-     */
-    @Inject(method = "onHello", at = @At("RETURN"), cancellable = true)
-    private void onHelloReturn(CallbackInfo ci) {
-        // 获取服务器配置
-        ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
-        
-        // 添加空值检查，防止在客户端环境中出现NullPointerException
-        if (config == null) {
-            TokenAuthMod.LOGGER.warn("服务器配置为null，可能是客户端环境，继续原版登录流程");
-            return;
-        }
-        
-        // 检查认证是否启用
-        if (!config.enabled) {
-            // 认证系统未启用，继续原版流程
-            return;
-        }
-        
-        try {
-            // 获取客户端IP地址 - 处理本地连接和远程连接的两种情况
-            Object addressObj = ((ServerLoginNetworkHandler)(Object)this).getConnection().getAddress();
-            InetAddress clientAddress;
-            
-            if (addressObj instanceof InetSocketAddress) {
-                // 远程连接
-                clientAddress = ((InetSocketAddress) addressObj).getAddress();
-            } else if (addressObj instanceof io.netty.channel.local.LocalAddress) {
-                // 本地连接
-                clientAddress = InetAddress.getLoopbackAddress();
-            } else {
-                // 未知地址类型，使用回环地址作为后备
-                clientAddress = InetAddress.getLoopbackAddress();
-            }
-            
-            // 检查IP是否被阻止
-            if (AuthSessionManager.isIPBlocked(clientAddress.toString())) {
-                ((ServerLoginNetworkHandler)(Object)this).getConnection().disconnect(
-                    Text.literal("您的IP地址已被阻止，请稍后再试")
-                );
-                ci.cancel();
-                return;
-            }
-            
-            // 这里可以添加额外的认证检查逻辑
-            // 例如检查玩家是否已经通过令牌认证
-            
-        } catch (Exception e) {
-            TokenAuthMod.LOGGER.error("接受连接时进行认证检查出错", e);
-            ((ServerLoginNetworkHandler)(Object)this).getConnection().disconnect(
-                Text.literal("认证系统错误: " + e.getMessage())
-            );
-            ci.cancel();
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,33 @@
+package nety.ys.mixin;
+
+import io.netty.channel.Channel;
+import nety.ys.server.ConnectionFilter;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * 服务器网络通道初始化器混入
+ * 在服务器接受TCP连接、建立处理管道之前过滤被阻止的IP
+ * 
+ * @author nety.ys
+ */
+@Mixin(targets = "net.minecraft.server.ServerNetworkIo$1")
+public class ServerNetworkIoChannelInitializerMixin {
+    
+    /**
+     * 在初始化通道时检查客户端IP
+     * 被阻止的IP直接关闭通道，不再添加超时、解码器和ClientConnection
+     * 
+     * @param channel 新接受的通道
+     * @param ci 回调信息
+     */
+    @Inject(method = "initChannel", at = @At("HEAD"), cancellable = true, remap = false)
+    private void onInitChannel(Channel channel, CallbackInfo ci) {
+        if (ConnectionFilter.shouldReject(channel.remoteAddress())) {
+            channel.close();
+            ci.cancel();
+        }
+    }
+}
@@ -3,19 +3,49 @@ package nety.ys.mixin;
 import net.minecraft.server.network.ServerPlayerEntity;
 import nety.ys.TokenAuthMod;
 import nety.ys.server.AuthSessionManager;
+import nety.ys.server.AuthStateHolder;
 import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 /**
  * 服务器玩家实体混入
- * 用于处理玩家连接和断开事件
+ * 用于处理玩家连接和断开事件，并在玩家实体上保存认证状态
  * 
  * @author nety.ys
  */
 @Mixin(ServerPlayerEntity.class)
-public class ServerPlayerEntityMixin {
+public class ServerPlayerEntityMixin implements AuthStateHolder {
+    
+    /**
+     * 玩家是否已认证，约束检查只读取这个字段
+     */
+    @Unique
+    private volatile boolean tokenauth$authenticated;
+    
+    @Override
+    public boolean tokenauth$isAuthenticated() {
+        return tokenauth$authenticated;
+    }
+    
+    @Override
+    public void tokenauth$setAuthenticated(boolean authenticated) {
+        this.tokenauth$authenticated = authenticated;
+    }
+    
+    /**
+     * 重生和从末地返回时会创建新的玩家实体，从旧实体复制认证状态
+     * 
+     * @param oldPlayer 旧的玩家实体
+     * @param alive 玩家是否存活
+     * @param ci 回调信息
+     */
+    @Inject(method = "copyFrom", at = @At("TAIL"))
+    private void onCopyFrom(ServerPlayerEntity oldPlayer, boolean alive, CallbackInfo ci) {
+        this.tokenauth$authenticated = ((AuthStateHolder) oldPlayer).tokenauth$isAuthenticated();
+    }
     
     /**
      * 在玩家断开连接时清理认证状态
@@ -28,8 +58,8 @@ public class ServerPlayerEntityMixin {
         
         // 移除玩家认证状态
         if (player != null && player.getUuid() != null) {
-            AuthSessionManager.removePlayerAuthentication(player.getUuid().toString());
+            AuthSessionManager.removePlayerAuthentication(player);
             TokenAuthMod.LOGGER.debug("玩家 {} 已断开连接，清理认证状态", player.getName().getString());
         }
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,17 @@
 package nety.ys.network;
 
+import net.fabricmc.fabric.api.client.networking.v1.ClientLoginNetworking;
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.fabric.api.networking.v1.ServerLoginNetworking;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.fabricmc.loader.api.FabricLoader;
 import nety.ys.TokenAuthMod;
 import nety.ys.network.packets.AuthResultPacket;
 import nety.ys.network.packets.ChallengePacket;
 import nety.ys.network.packets.TokenResponsePacket;
+import nety.ys.server.LoginAuthHandler;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 数据包注册器
@@ -28,6 +33,9 @@ public class PacketRegistry {
             new TokenResponsePacket.ServerHandler().receive(server, player, handler, buf, responseSender);
         });
         
+        // 注册登录阶段的令牌响应处理器，应答与挑战使用同一个通道
+        ServerLoginNetworking.registerGlobalReceiver(ChallengePacket.ID, LoginAuthHandler::onQueryResponse);
+        
         TokenAuthMod.LOGGER.info("服务端数据包处理器注册完成");
     }
     
@@ -62,6 +70,13 @@ public class PacketRegistry {
             });
         });
         
+        // 注册登录阶段的服务器挑战处理器，返回null表示无法响应，服务器会断开连接
+        ClientLoginNetworking.registerGlobalReceiver(ChallengePacket.ID, (client, handler, buf, listenerAdder) -> {
+            ChallengePacket packet = ChallengePacket.fromBytes(buf);
+            TokenResponsePacket response = nety.ys.client.ClientPacketHandler.handleLoginChallenge(packet);
+            return CompletableFuture.completedFuture(response != null ? TokenResponsePacket.toBytes(response) : null);
+        });
+        
         // 注册认证结果处理器
         ClientPlayNetworking.registerGlobalReceiver(AuthResultPacket.ID, (client, handler, buf, responseSender) -> {
             TokenAuthMod.LOGGER.info("收到服务器认证结果数据包");
@@ -90,6 +105,9 @@ public class PacketRegistry {
         // 注销客户端令牌响应处理器
         ServerPlayNetworking.unregisterGlobalReceiver(TokenResponsePacket.ID);
         
+        // 注销登录阶段的令牌响应处理器
+        ServerLoginNetworking.unregisterGlobalReceiver(ChallengePacket.ID);
+        
         TokenAuthMod.LOGGER.info("服务端数据包处理器注销完成");
     }
     
@@ -101,6 +119,7 @@ public class PacketRegistry {
         
         // 注销服务器挑战处理器
         ClientPlayNetworking.unregisterGlobalReceiver(ChallengePacket.ID);
+        ClientLoginNetworking.unregisterGlobalReceiver(ChallengePacket.ID);
         
         // 注销认证结果处理器
         ClientPlayNetworking.unregisterGlobalReceiver(AuthResultPacket.ID);
@@ -40,15 +40,41 @@ public class TokenResponsePacket {
      */
     private final long challengeTimestamp;
     
+    /**
+     * 客户端签名时使用的时间戳（旧版客户端不发送此字段）
+     */
+    private final long signedTimestamp;
+    
+    /**
+     * 是否携带签名时间戳
+     */
+    private final boolean hasSignedTimestamp;
+    
     /**
      * 构造函数
      * 
      * @param tokenResponse 令牌响应数据
      * @param challengeTimestamp 原始挑战数据的时间戳
+     * @param signedTimestamp 客户端签名时使用的时间戳
+     */
+    public TokenResponsePacket(byte[] tokenResponse, long challengeTimestamp, long signedTimestamp) {
+        this.tokenResponse = tokenResponse;
+        this.challengeTimestamp = challengeTimestamp;
+        this.signedTimestamp = signedTimestamp;
+        this.hasSignedTimestamp = true;
+    }
+    
+    /**
+     * 构造函数（旧版格式，不携带签名时间戳）
+     * 
+     * @param tokenResponse 令牌响应数据
+     * @param challengeTimestamp 原始挑战数据的时间戳
      */
     public TokenResponsePacket(byte[] tokenResponse, long challengeTimestamp) {
         this.tokenResponse = tokenResponse;
         this.challengeTimestamp = challengeTimestamp;
+        this.signedTimestamp = challengeTimestamp;
+        this.hasSignedTimestamp = false;
     }
     
     /**
@@ -69,6 +95,12 @@ public class TokenResponsePacket {
     public static TokenResponsePacket fromBytes(PacketByteBuf buf) {
         byte[] tokenResponse = buf.readByteArray();
         long challengeTimestamp = buf.readLong();
+        
+        // 签名时间戳是追加字段，旧版客户端的数据包到此结束
+        if (buf.readableBytes() >= Long.BYTES) {
+            long signedTimestamp = buf.readLong();
+            return new TokenResponsePacket(tokenResponse, challengeTimestamp, signedTimestamp);
+        }
         return new TokenResponsePacket(tokenResponse, challengeTimestamp);
     }
     
@@ -82,6 +114,9 @@ public class TokenResponsePacket {
         PacketByteBuf buf = PacketByteBufs.create();
         buf.writeByteArray(packet.tokenResponse);
         buf.writeLong(packet.challengeTimestamp);
+        if (packet.hasSignedTimestamp) {
+            buf.writeLong(packet.signedTimestamp);
+        }
         return buf;
     }
     
@@ -125,18 +160,41 @@ public class TokenResponsePacket {
         return challengeTimestamp;
     }
     
+    /**
+     * 获取客户端签名时使用的时间戳
+     * 
+     * @return 签名时间戳，旧版数据包返回挑战时间戳
+     */
+    public long getSignedTimestamp() {
+        return signedTimestamp;
+    }
+    
+    /**
+     * 检查数据包是否携带签名时间戳
+     * 
+     * @return 如果携带签名时间戳则返回true
+     */
+    public boolean hasSignedTimestamp() {
+        return hasSignedTimestamp;
+    }
+    
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         
         TokenResponsePacket that = (TokenResponsePacket) obj;
-        return challengeTimestamp == that.challengeTimestamp && Arrays.equals(tokenResponse, that.tokenResponse);
+        return challengeTimestamp == that.challengeTimestamp &&
+               signedTimestamp == that.signedTimestamp &&
+               hasSignedTimestamp == that.hasSignedTimestamp &&
+               Arrays.equals(tokenResponse, that.tokenResponse);
     }
     
     @Override
     public int hashCode() {
         int result = Long.hashCode(challengeTimestamp);
+        result = 31 * result + Long.hashCode(signedTimestamp);
+        result = 31 * result + Boolean.hashCode(hasSignedTimestamp);
         result = 31 * result + Arrays.hashCode(tokenResponse);
         return result;
     }
@@ -146,6 +204,7 @@ public class TokenResponsePacket {
         return "TokenResponsePacket{" +
                 "tokenResponse=" + Arrays.toString(tokenResponse) +
                 ", challengeTimestamp=" + challengeTimestamp +
+                ", signedTimestamp=" + (hasSignedTimestamp ? String.valueOf(signedTimestamp) : "none") +
                 '}';
     }
     
@@ -155,17 +214,15 @@ public class TokenResponsePacket {
     public static class ServerHandler implements ServerPlayNetworking.PlayChannelHandler {
         @Override
         public void receive(MinecraftServer server, ServerPlayerEntity player, ServerPlayNetworkHandler handler, PacketByteBuf buf, PacketSender responseSender) {
+            // 在网络线程解码，验证交给验证线程池，结果再切回服务器主线程应用
             TokenResponsePacket packet = fromBytes(buf);
             
-            // 在服务器主线程处理
-            server.execute(() -> {
-                try {
-                    // 处理客户端令牌响应
-                    nety.ys.server.AuthPacketHandler.handleTokenResponse(packet, player, responseSender);
-                } catch (Exception e) {
-                    TokenAuthMod.LOGGER.error("处理客户端令牌响应时出错", e);
-                }
-            });
+            try {
+                // 处理客户端令牌响应
+                nety.ys.server.AuthPacketHandler.handleTokenResponse(packet, player, server);
+            } catch (Exception e) {
+                TokenAuthMod.LOGGER.error("处理客户端令牌响应时出错", e);
+            }
         }
     }
     
@@ -0,0 +1,137 @@
+package nety.ys.server;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一个汇总窗口内的认证失败事件
+ * 按IP分组统计次数、首次和最后出现时间以及涉及的玩家，窗口结束时由AuthAlertService交给各个AlertSink。
+ * 不是线程安全的：窗口内由AuthAlertService同步写入，窗口结束后只读
+ *
+ * @author nety.ys
+ */
+public class AlertDigest {
+    
+    /**
+     * 单个窗口最多单独统计的IP数，超出的IP只计入总数
+     */
+    private static final int MAX_SOURCES = 1024;
+    
+    /**
+     * 每个IP最多记录的玩家名称数
+     */
+    private static final int MAX_PLAYERS_PER_SOURCE = 5;
+    
+    private final long windowStart;
+    private final Map<InetAddress, Source> sources = new HashMap<>();
+    private final Map<String, Integer> reasonCounts = new HashMap<>();
+    private int totalCount;
+    private int untrackedCount;
+    
+    AlertDigest(long windowStart) {
+        this.windowStart = windowStart;
+    }
+    
+    /**
+     * 记录一次认证失败
+     */
+    void record(String playerName, InetAddress address, String reason, long time) {
+        totalCount++;
+        reasonCounts.merge(reason, 1, Integer::sum);
+        
+        Source source = sources.get(address);
+        if (source == null) {
+            if (sources.size() >= MAX_SOURCES) {
+                untrackedCount++;
+                return;
+            }
+            source = new Source(address, time);
+            sources.put(address, source);
+        }
+        
+        source.count++;
+        source.lastSeen = time;
+        if (source.players.size() < MAX_PLAYERS_PER_SOURCE) {
+            source.players.add(playerName);
+        }
+    }
+    
+    public boolean isEmpty() {
+        return totalCount == 0;
+    }
+    
+    public long getWindowStart() {
+        return windowStart;
+    }
+    
+    public int getTotalCount() {
+        return totalCount;
+    }
+    
+    public int getSourceCount() {
+        return sources.size();
+    }
+    
+    public int getUntrackedCount() {
+        return untrackedCount;
+    }
+    
+    public Map<String, Integer> getReasonCounts() {
+        return reasonCounts;
+    }
+    
+    /**
+     * 获取失败次数最多的来源
+     *
+     * @param limit 最多返回的来源数
+     * @return 按失败次数降序排列的来源
+     */
+    public List<Source> getTopSources(int limit) {
+        List<Source> sorted = new ArrayList<>(sources.values());
+        sorted.sort((a, b) -> a.count != b.count ? Integer.compare(b.count, a.count) : Long.compare(a.firstSeen, b.firstSeen));
+        return sorted.size() > limit ? new ArrayList<>(sorted.subList(0, Math.max(0, limit))) : sorted;
+    }
+    
+    /**
+     * 单个IP在窗口内的统计
+     */
+    public static final class Source {
+        final InetAddress address;
+        final long firstSeen;
+        final Set<String> players = new LinkedHashSet<>();
+        long lastSeen;
+        int count;
+        
+        Source(InetAddress address, long firstSeen) {
+            this.address = address;
+            this.firstSeen = firstSeen;
+            this.lastSeen = firstSeen;
+        }
+        
+        public InetAddress getAddress() {
+            return address;
+        }
+        
+        public int getCount() {
+            return count;
+        }
+        
+        public long getFirstSeen() {
+            return firstSeen;
+        }
+        
+        public long getLastSeen() {
+            return lastSeen;
+        }
+        
+        public Collection<String> getPlayers() {
+            return players;
+        }
+    }
+}
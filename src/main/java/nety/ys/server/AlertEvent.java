@@ -0,0 +1,57 @@
+package nety.ys.server;
+
+import java.net.InetAddress;
+
+/**
+ * 一次认证失败事件
+ *
+ * @author nety.ys
+ */
+public final class AlertEvent {
+    
+    private final String serverName;
+    private final String playerName;
+    private final InetAddress address;
+    private final String reason;
+    private final long time;
+    private final boolean immediate;
+    
+    AlertEvent(String serverName, String playerName, InetAddress address, String reason, long time, boolean immediate) {
+        this.serverName = serverName;
+        this.playerName = playerName;
+        this.address = address;
+        this.reason = reason;
+        this.time = time;
+        this.immediate = immediate;
+    }
+    
+    public String getServerName() {
+        return serverName;
+    }
+    
+    public String getPlayerName() {
+        return playerName;
+    }
+    
+    public InetAddress getAddress() {
+        return address;
+    }
+    
+    public String getReason() {
+        return reason;
+    }
+    
+    public long getTime() {
+        return time;
+    }
+    
+    /**
+     * 是否需要单独通知
+     * 为false时这次失败已计入当前汇总窗口，会在窗口结束时通过publishDigest送达
+     *
+     * @return 如果需要单独通知则返回true
+     */
+    public boolean isImmediate() {
+        return immediate;
+    }
+}
@@ -0,0 +1,53 @@
+package nety.ys.server;
+
+/**
+ * 认证警报输出
+ * AuthAlertService把每次认证失败和每个汇总窗口的结果分发给所有启用的输出，
+ * 内置邮件、JSON Lines文件和Webhook三种输出，其他模组可以通过AuthAlertService.registerSink添加自定义输出。
+ * <p>
+ * 两个方法都可能在服务器主线程调用，实现不能阻塞，耗时的发送应在自己的线程中完成
+ *
+ * @author nety.ys
+ */
+public interface AlertSink {
+    
+    /**
+     * 获取输出名称，用于日志和状态显示
+     *
+     * @return 输出名称
+     */
+    String getName();
+    
+    /**
+     * 处理一次认证失败
+     * 所有失败都会调用此方法，只希望收到少量通知的输出应检查AlertEvent.isImmediate
+     *
+     * @param event 认证失败事件
+     */
+    void publish(AlertEvent event);
+    
+    /**
+     * 处理一个汇总窗口，只有窗口内有被合并的失败时才会调用
+     *
+     * @param digest 汇总窗口，调用后不再修改
+     * @param windowEnd 窗口结束时间（毫秒）
+     */
+    void publishDigest(AlertDigest digest, long windowEnd);
+    
+    /**
+     * 获取状态描述，用于/token status
+     *
+     * @return 状态描述
+     */
+    default String getStatus() {
+        return getName();
+    }
+    
+    /**
+     * 关闭输出，在超时前尽量发送完排队的警报
+     *
+     * @param timeoutMillis 等待时间（毫秒）
+     */
+    default void shutdown(long timeoutMillis) {
+    }
+}
@@ -3,182 +3,337 @@ package nety.ys.server;
 import nety.ys.TokenAuthMod;
 import nety.ys.config.ModConfig;
 import nety.ys.config.SimpleConfigManager;
-import nety.ys.util.EmailNotifier;
-import nety.ys.util.IPGeolocationUtil;
 import nety.ys.util.DebugLogger;
 
 import java.net.InetAddress;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * 认证警报服务
- * 负责处理认证失败和超时事件，并发送邮件通知
- * 使用独立线程处理邮件和地理位置请求，避免阻塞主线程
+ * 负责处理认证失败和超时事件，并分发给各个警报输出（邮件、JSON Lines文件、Webhook和其他模组注册的输出）；
+ * 同一汇总窗口内的失败会合并为一个汇总，需要单独通知的失败和汇总分别交给输出处理，
+ * 每个输出在自己的线程中批量发送，不阻塞主线程
  *
  * @author nety.ys
  */
 public class AuthAlertService {
     
-    // 使用独立线程池处理警报服务，避免阻塞主线程
-    private static final ExecutorService alertExecutor = Executors.newFixedThreadPool(2);
+    // 内置的邮件输出，是否发送由enableEmailAlerts决定
+    private static final EmailAlertSink emailSink = new EmailAlertSink();
+    
+    // 其他模组注册的输出
+    private static final List<AlertSink> customSinks = new CopyOnWriteArrayList<>();
+    
+    // 按配置创建的文件和Webhook输出，配置变化时重建
+    private static final Object sinkLock = new Object();
+    private static volatile String configuredSinkKey;
+    private static volatile List<AlertSink> configuredSinks = List.of();
+    
+    // 当前的汇总窗口，为null表示没有打开的窗口
+    private static final Object digestLock = new Object();
+    private static AlertDigest currentDigest;
+    private static int immediateAlertsSent;
     
     /**
-     * 发送认证失败警报邮件
+     * 发送认证失败警报
+     * 每个汇总窗口内的前几次失败标记为需要单独通知，其余的在窗口结束时合并为一个汇总，
+     * 避免攻击期间每次失败都发送一封邮件；文件和Webhook输出会收到每一次失败
      * 
      * @param playerName 玩家名称
      * @param ipAddress IP地址
      * @param reason 失败原因
      */
     public static CompletableFuture<Void> sendAuthFailureAlert(String playerName, InetAddress ipAddress, String reason) {
-        return CompletableFuture.runAsync(() -> {
-            try {
-                DebugLogger.email("准备发送认证失败警报邮件 - 玩家: {}, IP: {}, 原因: {}",
-                    playerName, ipAddress.getHostAddress(), reason);
-                
-                // 获取服务器配置
-                SimpleConfigManager configManager = (SimpleConfigManager) TokenAuthMod.getInstance().getConfigManager();
-                ModConfig.ServerConfig config = configManager.getServerConfig();
-                
-                // 检查是否启用了邮件警报
-                if (!config.enableEmailAlerts) {
-                    DebugLogger.email("邮件警报功能已禁用，跳过发送认证失败邮件");
-                    return;
+        try {
+            DebugLogger.email(() -> "准备分发认证失败警报 - 玩家: " + playerName + ", IP: " + ipAddress.getHostAddress() + ", 原因: " + reason);
+            
+            // 获取服务器配置
+            SimpleConfigManager configManager = (SimpleConfigManager) TokenAuthMod.getInstance().getConfigManager();
+            ModConfig.ServerConfig config = configManager.getServerConfig();
+            
+            // 检查是否有启用的输出
+            List<AlertSink> sinks = getSinks(config);
+            if (!config.enableEmailAlerts && sinks.size() == 1) {
+                DebugLogger.email("没有启用的警报输出，跳过认证失败警报");
+                return CompletableFuture.completedFuture(null);
+            }
+            
+            boolean immediate = recordForDigest(playerName, ipAddress, reason, config);
+            if (!immediate) {
+                DebugLogger.email(() -> "认证失败已计入汇总 - IP: " + ipAddress.getHostAddress());
+            }
+            
+            AlertEvent event = new AlertEvent(config.serverName, playerName, ipAddress, reason,
+                                              System.currentTimeMillis(), immediate);
+            for (AlertSink sink : sinks) {
+                try {
+                    sink.publish(event);
+                } catch (Exception e) {
+                    TokenAuthMod.LOGGER.error("警报输出 {} 处理认证失败时出错", sink.getName(), e);
                 }
+            }
+        } catch (Exception e) {
+            TokenAuthMod.LOGGER.error("发送认证失败警报时出错", e);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+    
+    /**
+     * 注册自定义警报输出
+     * 
+     * @param sink 警报输出
+     */
+    public static void registerSink(AlertSink sink) {
+        customSinks.add(sink);
+        TokenAuthMod.LOGGER.info("已注册警报输出: {}", sink.getName());
+    }
+    
+    /**
+     * 注销自定义警报输出，不会关闭该输出
+     * 
+     * @param sink 警报输出
+     */
+    public static void unregisterSink(AlertSink sink) {
+        customSinks.remove(sink);
+    }
+    
+    /**
+     * 获取当前所有输出，邮件输出总是第一个
+     */
+    private static List<AlertSink> getSinks(ModConfig.ServerConfig config) {
+        List<AlertSink> sinks = new ArrayList<>();
+        sinks.add(emailSink);
+        sinks.addAll(getConfiguredSinks(config));
+        sinks.addAll(customSinks);
+        return sinks;
+    }
+    
+    private static List<AlertSink> getActiveSinks() {
+        try {
+            return getSinks(TokenAuthMod.getInstance().getConfigManager().getServerConfig());
+        } catch (Exception e) {
+            List<AlertSink> sinks = new ArrayList<>();
+            sinks.add(emailSink);
+            sinks.addAll(configuredSinks);
+            sinks.addAll(customSinks);
+            return sinks;
+        }
+    }
+    
+    /**
+     * 获取按配置创建的文件和Webhook输出，配置变化时关闭旧的输出并创建新的
+     */
+    private static List<AlertSink> getConfiguredSinks(ModConfig.ServerConfig config) {
+        String key = config.alertFileEnabled + "|" + config.alertFileName + "|" + config.alertFileBatchSize + "|"
+            + config.alertFileFlushIntervalMillis + "|" + config.alertFileMaxRetries + "|"
+            + config.alertWebhookEnabled + "|" + config.alertWebhookUrl + "|" + config.alertWebhookTimeoutMillis + "|"
+            + config.alertWebhookBatchSize + "|" + config.alertWebhookFlushIntervalMillis + "|"
+            + config.alertWebhookMaxRetries + "|" + config.alertWebhookRetryBackoffMillis + "|"
+            + config.alertQueueCapacity;
+        if (key.equals(configuredSinkKey)) {
+            return configuredSinks;
+        }
+        
+        synchronized (sinkLock) {
+            if (!key.equals(configuredSinkKey)) {
+                List<AlertSink> oldSinks = configuredSinks;
+                configuredSinks = List.copyOf(createConfiguredSinks(config));
+                configuredSinkKey = key;
                 
-                DebugLogger.email("邮件警报功能已启用，继续处理认证失败警报");
-                
-                // 检查邮件配置是否有效
-                if (!isEmailConfigValid(config)) {
-                    TokenAuthMod.LOGGER.warn("邮件配置无效，无法发送认证失败警报");
-                    return;
+                // 旧输出在后台发送完剩余的事件
+                if (!oldSinks.isEmpty()) {
+                    CompletableFuture.runAsync(() -> oldSinks.forEach(sink -> sink.shutdown(5000)));
                 }
-                
-                // 获取当前时间
-                String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss"));
-                DebugLogger.email("获取当前时间: {}", timestamp);
-                
-                // 异步获取地理位置信息
-                String location = "未知位置";
-                if (config.includeGeoLocation) {
-                    try {
-                        DebugLogger.email("正在获取IP {} 的地理位置信息...", ipAddress.getHostAddress());
-                        IPGeolocationUtil.GeoLocationInfo geoInfo = IPGeolocationUtil.getGeoLocation(ipAddress);
-                        location = geoInfo.getFullLocation();
-                        DebugLogger.email("获取地理位置信息成功: {}", location);
-                    } catch (Exception e) {
-                        TokenAuthMod.LOGGER.error("获取IP {} 地理位置信息失败", ipAddress.getHostAddress(), e);
-                    }
-                } else {
-                    DebugLogger.email("地理位置信息获取已禁用");
+            }
+            return configuredSinks;
+        }
+    }
+    
+    private static List<AlertSink> createConfiguredSinks(ModConfig.ServerConfig config) {
+        List<AlertSink> sinks = new ArrayList<>();
+        
+        if (config.alertFileEnabled) {
+            String fileName = stripQuotes(config.alertFileName);
+            if (fileName.isEmpty()) {
+                fileName = "auth_alerts.jsonl";
+            }
+            Path file = ModConfig.getConfigDir().resolve(fileName);
+            sinks.add(new JsonLinesAlertSink(file, config.alertQueueCapacity, config.alertFileBatchSize,
+                                             config.alertFileFlushIntervalMillis, config.alertFileMaxRetries, 500));
+            TokenAuthMod.LOGGER.info("已启用JSON文件警报输出: {}", file);
+        }
+        
+        if (config.alertWebhookEnabled) {
+            String url = stripQuotes(config.alertWebhookUrl);
+            try {
+                sinks.add(new WebhookAlertSink(new URL(url), config.alertWebhookTimeoutMillis, config.alertQueueCapacity,
+                                               config.alertWebhookBatchSize, config.alertWebhookFlushIntervalMillis,
+                                               config.alertWebhookMaxRetries, config.alertWebhookRetryBackoffMillis));
+                TokenAuthMod.LOGGER.info("已启用Webhook警报输出: {}", url);
+            } catch (MalformedURLException e) {
+                TokenAuthMod.LOGGER.warn("Webhook地址无效，已禁用Webhook警报输出: {}", url);
+            }
+        }
+        
+        return sinks;
+    }
+    
+    private static String stripQuotes(String value) {
+        if (value == null) {
+            return "";
+        }
+        value = value.trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1).trim();
+        }
+        return value;
+    }
+    
+    /**
+     * 将一次认证失败计入当前汇总窗口
+     * 
+     * @return 如果这次失败需要立即单独发送则返回true
+     */
+    private static boolean recordForDigest(String playerName, InetAddress ipAddress, String reason,
+                                           ModConfig.ServerConfig config) {
+        if (config.alertDigestIntervalSeconds <= 0) {
+            return true;
+        }
+        
+        synchronized (digestLock) {
+            if (currentDigest == null) {
+                // 开启新的汇总窗口
+                long now = System.currentTimeMillis();
+                currentDigest = new AlertDigest(now);
+                immediateAlertsSent = 0;
+                if (AuthScheduler.schedule(AuthAlertService::flushDigest,
+                                           config.alertDigestIntervalSeconds, TimeUnit.SECONDS) == null) {
+                    // 调度器未运行，无法在窗口结束时发送汇总，退回到逐条发送
+                    currentDigest = null;
+                    return true;
                 }
-                
-                // 创建邮件配置
-                EmailNotifier.EmailConfig emailConfig = new EmailNotifier.EmailConfig(
-                    config.smtpHost,
-                    config.smtpPort,
-                    config.smtpUsername,
-                    config.smtpPassword,
-                    config.emailFromAddress,
-                    config.emailToAddress,
-                    config.enableSSL
-                );
-                
-                DebugLogger.email("创建邮件配置完成，准备发送邮件");
-                
-                // 发送邮件
-                EmailNotifier.sendIntrusionAlert(
-                    config.serverName,
-                    playerName,
-                    timestamp,
-                    ipAddress.getHostAddress(),
-                    location,
-                    reason,
-                    emailConfig
-                ).thenAccept(success -> {
-                    if (success) {
-                        DebugLogger.email("认证失败警报邮件发送成功");
-                    } else {
-                        TokenAuthMod.LOGGER.warn("认证失败警报邮件发送失败");
-                    }
-                });
-                
+            }
+            
+            if (immediateAlertsSent < config.alertImmediateCount) {
+                immediateAlertsSent++;
+                return true;
+            }
+            
+            currentDigest.record(playerName, ipAddress, reason, System.currentTimeMillis());
+            return false;
+        }
+    }
+    
+    /**
+     * 结束当前汇总窗口
+     * 窗口内有被合并的失败时把汇总交给各个输出并立即开启下一个窗口，持续的攻击因此只产生周期性的汇总；
+     * 窗口内没有失败时关闭窗口，下一次失败会再次立即发送
+     */
+    private static void flushDigest() {
+        AlertDigest digest;
+        long windowEnd = System.currentTimeMillis();
+        synchronized (digestLock) {
+            digest = currentDigest;
+            if (digest == null) {
+                return;
+            }
+            
+            if (digest.isEmpty()) {
+                currentDigest = null;
+                return;
+            }
+            
+            ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+            currentDigest = new AlertDigest(windowEnd);
+            if (config.alertDigestIntervalSeconds <= 0 || AuthScheduler.schedule(AuthAlertService::flushDigest,
+                    config.alertDigestIntervalSeconds, TimeUnit.SECONDS) == null) {
+                currentDigest = null;
+            }
+        }
+        
+        for (AlertSink sink : getActiveSinks()) {
+            try {
+                sink.publishDigest(digest, windowEnd);
             } catch (Exception e) {
-                TokenAuthMod.LOGGER.error("发送认证失败警报时出错", e);
+                TokenAuthMod.LOGGER.error("警报输出 {} 处理汇总窗口时出错", sink.getName(), e);
             }
-        }, alertExecutor);
+        }
     }
     
     /**
-     * 发送认证超时警报邮件
+     * 发送认证超时警报
      * 
      * @param playerName 玩家名称
      * @param ipAddress IP地址
      */
     public static CompletableFuture<Void> sendAuthTimeoutAlert(String playerName, InetAddress ipAddress) {
-        DebugLogger.email("准备发送认证超时警报邮件 - 玩家: {}, IP: {}",
-                playerName, ipAddress.getHostAddress());
+        DebugLogger.email(() -> "准备发送认证超时警报 - 玩家: " + playerName + ", IP: " + ipAddress.getHostAddress());
         return sendAuthFailureAlert(playerName, ipAddress, "认证超时");
     }
     
     /**
-     * 关闭警报服务执行器
+     * 获取邮件输出正在排队的警报任务数
+     * 
+     * @return 排队任务数
      */
-    public static void shutdown() {
-        TokenAuthMod.LOGGER.info("正在关闭认证警报服务...");
-        
-        if (alertExecutor != null && !alertExecutor.isShutdown()) {
-            alertExecutor.shutdown();
-            try {
-                // 等待当前任务完成，最多等待10秒
-                if (!alertExecutor.awaitTermination(10, java.util.concurrent.TimeUnit.SECONDS)) {
-                    TokenAuthMod.LOGGER.warn("警报服务执行器未能在10秒内正常关闭，强制关闭");
-                    alertExecutor.shutdownNow();
-                    
-                    // 再给5秒时间让任务响应中断
-                    if (!alertExecutor.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS)) {
-                        TokenAuthMod.LOGGER.error("警报服务执行器强制关闭失败");
-                    }
-                } else {
-                    TokenAuthMod.LOGGER.info("认证警报服务已正常关闭");
-                }
-            } catch (InterruptedException e) {
-                TokenAuthMod.LOGGER.warn("等待警报服务执行器关闭时被中断，强制关闭");
-                alertExecutor.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
-        }
+    public static int getQueuedCount() {
+        return emailSink.getQueuedCount();
     }
     
     /**
-     * 检查邮件配置是否有效
+     * 获取邮件输出因队列已满或服务关闭而丢弃的警报任务数
      * 
-     * @param config 服务器配置
-     * @return 如果邮件配置有效则返回true
+     * @return 丢弃的任务数
      */
-    private static boolean isEmailConfigValid(ModConfig.ServerConfig config) {
-        boolean isValid = config.smtpHost != null && !config.smtpHost.isEmpty() &&
-               config.smtpPort != null && !config.smtpPort.isEmpty() &&
-               config.smtpUsername != null && !config.smtpUsername.isEmpty() &&
-               config.smtpPassword != null && !config.smtpPassword.isEmpty() &&
-               config.emailFromAddress != null && !config.emailFromAddress.isEmpty() &&
-               config.emailToAddress != null && !config.emailToAddress.isEmpty();
-        
-        DebugLogger.email("邮件配置验证结果: {}", isValid);
+    public static long getDroppedCount() {
+        return emailSink.getDroppedCount();
+    }
+    
+    /**
+     * 获取所有警报输出的状态
+     * 
+     * @return 状态描述
+     */
+    public static String getSinkStatus() {
+        return getActiveSinks().stream().map(AlertSink::getStatus).collect(Collectors.joining(", "));
+    }
+    
+    /**
+     * 关闭警报服务
+     * 先发出尚未到期的汇总，再关闭各个输出；邮件输出最多等待10秒，其他输出各等待5秒
+     */
+    public static void shutdown() {
+        TokenAuthMod.LOGGER.info("正在关闭认证警报服务...");
         
-        if (!isValid) {
-            TokenAuthMod.LOGGER.warn("邮件配置项检查:");
-            DebugLogger.email("  SMTP主机: {}", config.smtpHost != null ? config.smtpHost : "null");
-            DebugLogger.email("  SMTP端口: {}", config.smtpPort != null ? config.smtpPort : "null");
-            DebugLogger.email("  SMTP用户名: {}", config.smtpUsername != null ? config.smtpUsername : "null");
-            DebugLogger.email("  SMTP密码: {}", config.smtpPassword != null && !config.smtpPassword.isEmpty() ? "[已设置]" : "[空]");
-            DebugLogger.email("  发件人地址: {}", config.emailFromAddress != null ? config.emailFromAddress : "null");
-            DebugLogger.email("  收件人地址: {}", config.emailToAddress != null ? config.emailToAddress : "null");
+        // 发出尚未到期的汇总
+        flushDigest();
+        synchronized (digestLock) {
+            currentDigest = null;
         }
         
-        return isValid;
+        emailSink.shutdown(10000);
+        
+        List<AlertSink> others;
+        synchronized (sinkLock) {
+            others = new ArrayList<>(configuredSinks);
+            configuredSinks = List.of();
+            configuredSinkKey = null;
+        }
+        others.addAll(customSinks);
+        for (AlertSink sink : others) {
+            try {
+                sink.shutdown(5000);
+            } catch (Exception e) {
+                TokenAuthMod.LOGGER.error("关闭警报输出 {} 时出错", sink.getName(), e);
+            }
+        }
     }
-}
\ No newline at end of file
+}
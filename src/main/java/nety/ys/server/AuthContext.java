@@ -0,0 +1,128 @@
+package nety.ys.server;
+
+import net.minecraft.network.ClientConnection;
+import nety.ys.util.NetworkUtil;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接的认证上下文
+ * 在收到Hello包时附加到ClientConnection上，登录阶段和游戏阶段都从这里读取连接ID、客户端地址和认证会话，
+ * 每个连接只创建一个会话，不再需要按玩家UUID或IP地址查找
+ * 
+ * @author nety.ys
+ */
+public final class AuthContext {
+    
+    /**
+     * 连接ID计数器
+     */
+    private static final AtomicLong nextConnectionId = new AtomicLong();
+    
+    private final String connectionId;
+    private final InetAddress address;
+    private volatile AuthSessionManager.AuthSession session;
+    private volatile boolean loginVerified;
+    
+    private AuthContext(InetAddress address) {
+        this.connectionId = "conn-" + nextConnectionId.incrementAndGet();
+        this.address = address;
+    }
+    
+    /**
+     * 获取连接的认证上下文
+     * 
+     * @param connection 客户端连接
+     * @return 认证上下文，尚未附加时返回null
+     */
+    public static AuthContext of(ClientConnection connection) {
+        return ((AuthContextHolder) connection).tokenauth$getAuthContext();
+    }
+    
+    /**
+     * 获取连接的认证上下文，尚未附加时创建一个
+     * 认证系统在玩家登录后才启用时连接上没有上下文
+     * 
+     * @param connection 客户端连接
+     * @return 认证上下文
+     */
+    public static AuthContext getOrCreate(ClientConnection connection) {
+        AuthContextHolder holder = (AuthContextHolder) connection;
+        AuthContext context = holder.tokenauth$getAuthContext();
+        if (context != null) {
+            return context;
+        }
+        synchronized (holder) {
+            context = holder.tokenauth$getAuthContext();
+            if (context == null) {
+                context = new AuthContext(NetworkUtil.getClientAddress(connection.getAddress()));
+                holder.tokenauth$setAuthContext(context);
+            }
+            return context;
+        }
+    }
+    
+    /**
+     * 获取连接ID，用作认证会话的键
+     * 
+     * @return 连接ID
+     */
+    public String getConnectionId() {
+        return connectionId;
+    }
+    
+    /**
+     * 获取客户端IP地址
+     * 
+     * @return 客户端IP地址，本地连接为回环地址
+     */
+    public InetAddress getAddress() {
+        return address;
+    }
+    
+    /**
+     * 获取当前的认证会话
+     * 
+     * @return 认证会话，尚未发送挑战或使用无状态挑战时返回null
+     */
+    public AuthSessionManager.AuthSession getSession() {
+        return session;
+    }
+    
+    /**
+     * 设置当前的认证会话
+     * 
+     * @param session 认证会话
+     */
+    void setSession(AuthSessionManager.AuthSession session) {
+        this.session = session;
+    }
+    
+    /**
+     * 移除当前的认证会话，连接断开时调用
+     */
+    public void clearSession() {
+        AuthSessionManager.AuthSession current = session;
+        if (current != null) {
+            session = null;
+            AuthSessionManager.removeSession(current);
+        }
+    }
+    
+    /**
+     * 检查连接是否已在登录阶段通过认证
+     * 
+     * @return 如果已在登录阶段通过认证则返回true
+     */
+    public boolean isLoginVerified() {
+        return loginVerified;
+    }
+    
+    /**
+     * 标记连接已在登录阶段通过认证
+     */
+    void markLoginVerified() {
+        this.loginVerified = true;
+    }
+}
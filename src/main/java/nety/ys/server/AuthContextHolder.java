@@ -0,0 +1,24 @@
+package nety.ys.server;
+
+/**
+ * 附加了认证上下文的对象
+ * 由ClientConnectionMixin实现，通过AuthContext.of和AuthContext.getOrCreate访问
+ * 
+ * @author nety.ys
+ */
+public interface AuthContextHolder {
+    
+    /**
+     * 获取附加的认证上下文
+     * 
+     * @return 认证上下文，尚未附加时返回null
+     */
+    AuthContext tokenauth$getAuthContext();
+    
+    /**
+     * 附加认证上下文
+     * 
+     * @param context 认证上下文
+     */
+    void tokenauth$setAuthContext(AuthContext context);
+}
@@ -1,6 +1,6 @@
 package nety.ys.server;
 
-import net.fabricmc.fabric.api.networking.v1.PacketSender;
+import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
 import nety.ys.TokenAuthMod;
 import nety.ys.config.ModConfig;
@@ -13,7 +13,6 @@ import nety.ys.server.AuthAlertService;
 import nety.ys.util.DebugLogger;
 
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 
 /**
  * 服务端认证数据包处理器
@@ -25,17 +24,20 @@ public class AuthPacketHandler {
     
     /**
      * 处理客户端令牌响应
+     * 在网络线程上调用：验证在工作线程池中完成，只有认证结果的应用会切回服务器主线程
      * 
      * @param packet 令牌响应数据包
      * @param player 玩家实体
-     * @param responseSender 响应发送器
+     * @param server 服务器实例
      */
-    public static void handleTokenResponse(TokenResponsePacket packet, ServerPlayerEntity player, PacketSender responseSender) {
+    public static void handleTokenResponse(TokenResponsePacket packet, ServerPlayerEntity player, MinecraftServer server) {
         try {
-            DebugLogger.auth("收到玩家 {} 的令牌响应", player.getName().getString());
+            String playerName = player.getName().getString();
+            DebugLogger.auth("收到玩家 {} 的令牌响应", playerName);
             
-            // 获取玩家IP地址
-            InetAddress playerAddress = ((InetSocketAddress) player.networkHandler.connection.getAddress()).getAddress();
+            // 获取连接的认证上下文和玩家IP地址
+            AuthContext context = AuthContext.getOrCreate(player.networkHandler.connection);
+            InetAddress playerAddress = context.getAddress();
             
             // 获取服务器配置
             SimpleConfigManager configManager = (SimpleConfigManager) TokenAuthMod.getInstance().getConfigManager();
@@ -53,93 +55,190 @@ public class AuthPacketHandler {
                 return;
             }
             
-            DebugLogger.auth("开始验证玩家 {} 的令牌响应", player.getName().getString());
-            DebugLogger.debug("客户端发送的令牌: {}", java.util.Base64.getEncoder().encodeToString(packet.getTokenResponse()));
-            DebugLogger.debug("挑战时间戳: {}", packet.getChallengeTimestamp());
+            // 提交到验证线程池
+            boolean submitted = AuthVerificationExecutor.submit(() -> {
+                // 旧版客户端不携带签名时间戳，按挑战时间戳验证
+                if (!packet.hasSignedTimestamp() && !config.allowLegacyTokenSweep) {
+                    TokenAuthMod.LOGGER.warn("玩家 {} 使用旧版令牌响应格式，已禁用兼容验证", playerName);
+                    failAsync(player, server, playerName, playerAddress, "客户端版本过旧", "客户端版本过旧，请更新Token Auth Mod");
+                    return;
+                }
+                
+                boolean isValid;
+                try {
+                    isValid = verifyTokenResponse(packet, context, playerName, config);
+                } catch (Exception e) {
+                    TokenAuthMod.LOGGER.error("验证令牌响应时出错", e);
+                    failAsync(player, server, playerName, playerAddress,
+                        "处理令牌响应时出错: " + e.getMessage(), "认证失败，请检查客户端配置");
+                    return;
+                }
+                
+                if (isValid) {
+                    server.execute(() -> applyAuthenticationSuccess(player));
+                } else {
+                    TokenAuthMod.LOGGER.warn("玩家 {} 认证失败：令牌验证失败", playerName);
+                    failAsync(player, server, playerName, playerAddress, "令牌验证失败", "认证失败，请检查客户端配置");
+                }
+            });
             
-            // 获取会话信息以便调试
-            AuthSessionManager.AuthSession session = AuthSessionHelper.findSessionByPlayer(player);
+            if (!submitted) {
+                // 队列已满说明正在经历登录洪峰，不计入失败次数，让客户端稍后重试
+                TokenAuthMod.LOGGER.warn("令牌验证队列已满，拒绝玩家 {} 的令牌响应", playerName);
+                server.execute(() -> {
+                    if (player.networkHandler.connection.isOpen()) {
+                        player.networkHandler.disconnect(net.minecraft.text.Text.literal("认证服务器繁忙，请稍后再试"));
+                    }
+                });
+            }
+        } catch (Exception e) {
+            TokenAuthMod.LOGGER.error("处理令牌响应时出错", e);
+            server.execute(() -> onAuthenticationFailure(player, "处理令牌响应时出错: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 在验证线程上验证令牌响应
+     * 
+     * @param packet 令牌响应数据包
+     * @param context 连接的认证上下文
+     * @param playerName 玩家名称
+     * @param config 服务器配置
+     * @return 如果验证成功则返回true
+     */
+    private static boolean verifyTokenResponse(TokenResponsePacket packet, AuthContext context,
+                                               String playerName, ModConfig.ServerConfig config) {
+        DebugLogger.auth("开始验证玩家 {} 的令牌响应", playerName);
+        DebugLogger.debug(() -> "客户端发送的令牌: " + java.util.Base64.getEncoder().encodeToString(packet.getTokenResponse()));
+        DebugLogger.debug("挑战时间戳: {}", packet.getChallengeTimestamp());
+        
+        // 打印会话信息以便调试
+        if (!config.statelessChallenges && DebugLogger.isEnabled(DebugLogger.Category.DEBUG)) {
+            AuthSessionManager.AuthSession session = context.getSession();
             if (session != null) {
-                DebugLogger.debug("服务器会话挑战: {}", java.util.Base64.getEncoder().encodeToString(session.getChallenge()));
+                DebugLogger.debug(() -> "服务器会话挑战: " + java.util.Base64.getEncoder().encodeToString(session.getChallenge()));
                 DebugLogger.debug("服务器会话时间戳: {}", session.getTimestamp());
             } else {
-                // 打印所有活跃会话用于调试
-                AuthSessionHelper.debugPrintAllSessions();
+                // 打印该IP下的会话用于调试
+                AuthSessionHelper.debugPrintSessions(context.getAddress());
             }
-            
-            // 验证令牌响应
-            boolean isValid = AuthSessionManager.verifyTokenResponse(
-                player.getUuid().toString(),
+        }
+        
+        if (!packet.hasSignedTimestamp()) {
+            DebugLogger.auth("玩家 {} 未携带签名时间戳，使用兼容模式验证", playerName);
+        }
+        return verifyResponse(context, packet, config);
+    }
+    
+    /**
+     * 验证令牌响应，根据配置使用会话或无状态挑战
+     * 
+     * @param context 连接的认证上下文
+     * @param packet 令牌响应数据包
+     * @param config 服务器配置
+     * @return 如果验证成功则返回true
+     */
+    static boolean verifyResponse(AuthContext context, TokenResponsePacket packet, ModConfig.ServerConfig config) {
+        InetAddress address = context.getAddress();
+        if (config.statelessChallenges) {
+            return AuthSessionManager.verifyStatelessTokenResponse(
                 packet.getTokenResponse(),
                 packet.getChallengeTimestamp(),
-                playerAddress
+                packet.getSignedTimestamp(),
+                packet.hasSignedTimestamp(),
+                address
+            );
+        }
+        
+        boolean isValid;
+        if (packet.hasSignedTimestamp()) {
+            isValid = AuthSessionManager.verifyTokenResponse(
+                context.getConnectionId(),
+                packet.getTokenResponse(),
+                packet.getChallengeTimestamp(),
+                packet.getSignedTimestamp(),
+                address
+            );
+        } else {
+            isValid = AuthSessionManager.verifyTokenResponse(
+                context.getConnectionId(),
+                packet.getTokenResponse(),
+                packet.getChallengeTimestamp(),
+                address
             );
-            
-            if (isValid) {
-                // 认证成功
-                TokenAuthMod.LOGGER.info("玩家 {} 认证成功", player.getName().getString());
-                onAuthenticationSuccess(player);
-                
-                // 发送认证成功结果给客户端
-                new nety.ys.network.packets.AuthResultPacket(true, "认证成功，正在进入游戏...").send(player);
-            } else {
-                // 认证失败
-                TokenAuthMod.LOGGER.warn("玩家 {} 认证失败：令牌验证失败", player.getName().getString());
-                onAuthenticationFailure(player, "令牌验证失败");
-                
-                // 发送认证失败结果给客户端
-                new nety.ys.network.packets.AuthResultPacket(false, "认证失败，请检查客户端配置").send(player);
-            }
-        } catch (Exception e) {
-            TokenAuthMod.LOGGER.error("处理令牌响应时出错", e);
-            onAuthenticationFailure(player, "处理令牌响应时出错: " + e.getMessage());
         }
+        
+        // 验证成功时会话已被移除
+        if (isValid) {
+            context.setSession(null);
+        }
+        return isValid;
     }
     
     /**
-     * 发送挑战给客户端
-     *
-     * @param player 目标玩家
-     * @return 如果成功发送挑战则返回true
+     * 记录认证失败并切回服务器主线程处理
+     * CSV记录和警报在当前线程完成，服务器主线程只负责计数、阻止IP和断开连接
+     * 
+     * @param player 玩家实体
+     * @param server 服务器实例
+     * @param playerName 玩家名称
+     * @param playerAddress 玩家IP地址
+     * @param reason 失败原因
+     * @param clientMessage 发送给客户端的消息
      */
-    public static boolean sendChallengeToClient(ServerPlayerEntity player) {
-        return sendChallengeToClient(player, null);
+    private static void failAsync(ServerPlayerEntity player, MinecraftServer server, String playerName,
+                                  InetAddress playerAddress, String reason, String clientMessage) {
+        recordAuthenticationFailure(playerName, playerAddress, reason);
+        server.execute(() -> {
+            onAuthenticationFailure(player, reason);
+            
+            // 发送认证失败结果给客户端
+            new nety.ys.network.packets.AuthResultPacket(false, clientMessage).send(player);
+        });
+    }
+    
+    /**
+     * 在服务器主线程应用认证成功结果
+     * 
+     * @param player 玩家实体
+     */
+    private static void applyAuthenticationSuccess(ServerPlayerEntity player) {
+        if (!player.networkHandler.connection.isOpen()) {
+            DebugLogger.auth(() -> "玩家 " + player.getName().getString() + " 在验证完成前已断开连接");
+            return;
+        }
+        
+        // 认证成功
+        TokenAuthMod.LOGGER.info("玩家 {} 认证成功", player.getName().getString());
+        onAuthenticationSuccess(player);
+        
+        // 发送认证成功结果给客户端
+        new nety.ys.network.packets.AuthResultPacket(true, "认证成功，正在进入游戏...").send(player);
     }
     
     /**
      * 发送挑战给客户端
      *
      * @param player 目标玩家
-     * @param connectionId 连接ID（可选）
      * @return 如果成功发送挑战则返回true
      */
-    public static boolean sendChallengeToClient(ServerPlayerEntity player, String connectionId) {
+    public static boolean sendChallengeToClient(ServerPlayerEntity player) {
         try {
-            // 获取玩家IP地址
-            InetAddress playerAddress = ((InetSocketAddress) player.networkHandler.connection.getAddress()).getAddress();
-            
-            // 创建认证会话
-            String sessionId = connectionId != null ? connectionId : player.getUuid().toString();
-            AuthSessionManager.AuthSession session = AuthSessionManager.createSession(
-                sessionId,
-                playerAddress
+            // 创建挑战数据包，会话保存在连接的认证上下文中
+            ChallengePacket challengePacket = createChallenge(
+                AuthContext.getOrCreate(player.networkHandler.connection),
+                player.getUuid()
             );
             
-            if (session == null) {
+            if (challengePacket == null) {
                 TokenAuthMod.LOGGER.error("无法为玩家 {} 创建认证会话", player.getName().getString());
                 return false;
             }
             
-            // 创建挑战数据包
-            ChallengePacket challengePacket = new ChallengePacket(
-                session.getChallenge(),
-                session.getTimestamp()
-            );
-            
             // 发送挑战给客户端
             challengePacket.send(player);
             
-            DebugLogger.auth("已向玩家 {} 发送认证挑战", player.getName().getString());
+            DebugLogger.auth(() -> "已向玩家 " + player.getName().getString() + " 发送认证挑战");
             return true;
         } catch (Exception e) {
             TokenAuthMod.LOGGER.error("发送挑战给客户端时出错", e);
@@ -147,6 +246,30 @@ public class AuthPacketHandler {
         }
     }
     
+    /**
+     * 创建挑战，根据配置使用会话或无状态挑战
+     * 
+     * @param context 连接的认证上下文
+     * @param playerId 玩家UUID，登录阶段为null
+     * @return 挑战数据包，如果创建失败则返回null
+     */
+    static ChallengePacket createChallenge(AuthContext context, java.util.UUID playerId) {
+        ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+        if (config.statelessChallenges) {
+            long timestamp = System.currentTimeMillis();
+            byte[] challenge = AuthSessionManager.createStatelessChallenge(context.getAddress(), timestamp);
+            return challenge != null ? new ChallengePacket(challenge, timestamp) : null;
+        }
+        
+        AuthSessionManager.AuthSession session = AuthSessionManager.createSession(
+            context.getConnectionId(), context.getAddress(), playerId);
+        if (session == null) {
+            return null;
+        }
+        context.setSession(session);
+        return new ChallengePacket(session.getChallenge(), session.getTimestamp());
+    }
+    
     /**
      * 认证成功处理
      * 
@@ -161,15 +284,16 @@ public class AuthPacketHandler {
             TokenAuthMod.LOGGER.info("玩家 {} 认证成功", player.getName().getString());
         }
         
-        // 标记玩家为已认证
-        AuthSessionManager.markPlayerAsAuthenticated(player.getUuid().toString());
+        // 标记玩家为已认证，并取消认证超时检查
+        AuthSessionManager.markPlayerAsAuthenticated(player);
+        AuthScheduler.cancelPlayerTimeout(player.getUuid().toString());
         
         // 移除玩家的约束（如果约束系统可用）
         try {
             // 检查约束系统是否可用
             Class.forName("nety.ys.constraint.api.ConstraintAPI");
             ConstraintManager.removeConstraintsFromPlayer(player);
-            DebugLogger.debug("已为已认证玩家 {} 移除约束", player.getName().getString());
+            DebugLogger.debug(() -> "已为已认证玩家 " + player.getName().getString() + " 移除约束");
         } catch (ClassNotFoundException e) {
             DebugLogger.debug("约束系统不可用，跳过约束移除");
         } catch (Exception e) {
@@ -180,8 +304,29 @@ public class AuthPacketHandler {
         // 这里可能需要通知服务器继续处理玩家的登录
     }
     
+    /**
+     * 记录认证失败（CSV文件和警报邮件）
+     * 可能涉及文件和网络I/O，不应在服务器主线程调用
+     * 
+     * @param playerName 玩家名称
+     * @param playerAddress 玩家IP地址
+     * @param reason 失败原因
+     */
+    static void recordAuthenticationFailure(String playerName, InetAddress playerAddress, String reason) {
+        // 发送认证失败警报邮件
+        AuthAlertService.sendAuthFailureAlert(playerName, playerAddress, reason)
+            .exceptionally(throwable -> {
+                TokenAuthMod.LOGGER.error("发送认证失败警报邮件时出错", throwable);
+                return null;
+            });
+        
+        // 记录到CSV文件
+        FailedAuthLogger.logFailedAuth(playerName, playerAddress, reason);
+    }
+    
     /**
      * 认证失败处理
+     * 必须在服务器主线程调用
      * 
      * @param player 玩家实体
      * @param reason 失败原因
@@ -195,29 +340,27 @@ public class AuthPacketHandler {
             TokenAuthMod.LOGGER.warn("玩家 {} 认证失败: {}", player.getName().getString(), reason);
         }
         
-        // 获取玩家IP地址
-        InetAddress playerAddress = ((InetSocketAddress) player.networkHandler.connection.getAddress()).getAddress();
-        
-        // 记录到CSV文件
-        
-        // 发送认证失败警报邮件
-        AuthAlertService.sendAuthFailureAlert(player.getName().getString(), playerAddress, reason)
-            .exceptionally(throwable -> {
-                TokenAuthMod.LOGGER.error("发送认证失败警报邮件时出错", throwable);
-                return null;
-            });
-        FailedAuthLogger.logFailedAuth(player.getName().getString(), playerAddress, reason);
-        
         // 增加失败尝试次数
-        int attempts = AuthSessionManager.incrementFailedAttempt(playerAddress.toString());
+        countFailedAttempt(AuthContext.getOrCreate(player.networkHandler.connection).getAddress(), config);
+        
+        // 断开玩家连接
+        player.networkHandler.disconnect(net.minecraft.text.Text.literal("认证失败: " + reason));
+    }
+    
+    /**
+     * 增加IP的失败尝试次数，达到上限时阻止该IP
+     * 必须在服务器主线程调用
+     * 
+     * @param address 客户端IP地址
+     * @param config 服务器配置
+     */
+    static void countFailedAttempt(InetAddress address, ModConfig.ServerConfig config) {
+        int attempts = AuthSessionManager.incrementFailedAttempt(address);
         
         // 检查是否需要阻止IP
         if (attempts >= config.maxAttemptsPerIP) {
-            AuthSessionManager.blockIPAddress(playerAddress.toString(), config.blockDurationMinutes);
-            TokenAuthMod.LOGGER.warn("IP地址 {} 已被阻止，原因：认证失败次数过多", playerAddress.toString());
+            AuthSessionManager.blockFailingIPAddress(address, config);
+            TokenAuthMod.LOGGER.warn("IP地址 {} 已被阻止，原因：认证失败次数过多", address.toString());
         }
-        
-        // 断开玩家连接
-        player.networkHandler.disconnect(net.minecraft.text.Text.literal("认证失败: " + reason));
     }
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+package nety.ys.server;
+
+import nety.ys.TokenAuthMod;
+import nety.ys.util.HashedTimingWheel;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 认证调度器
+ * 认证系统共用的定时任务调度器，会话超时、IP阻止到期和玩家认证超时都在同一个时间轮上调度，
+ * 不再为每个会话或每个加入的玩家单独创建线程
+ * 
+ * @author nety.ys
+ */
+public class AuthScheduler {
+    
+    /**
+     * 时间轮刻度（毫秒）
+     */
+    private static final long TICK_MILLIS = 100;
+    
+    /**
+     * 时间轮槽位数量
+     */
+    private static final int WHEEL_SIZE = 512;
+    
+    /**
+     * 时间轮
+     */
+    private static volatile HashedTimingWheel wheel;
+    
+    /**
+     * 玩家认证超时任务，键为玩家UUID
+     */
+    private static final Map<String, PlayerTimeout> playerTimeouts = new ConcurrentHashMap<>();
+    
+    /**
+     * 启动调度器
+     */
+    public static synchronized void initialize() {
+        if (wheel != null) {
+            return;
+        }
+        
+        wheel = new HashedTimingWheel("TokenAuth-Scheduler", TICK_MILLIS, TimeUnit.MILLISECONDS, WHEEL_SIZE);
+        TokenAuthMod.LOGGER.info("认证调度器已启动，刻度: {} 毫秒，槽位数: {}", TICK_MILLIS, WHEEL_SIZE);
+    }
+    
+    /**
+     * 调度一个延迟任务
+     * 任务在调度线程上执行，需要访问游戏状态的任务应自行转交给服务器主线程
+     * 
+     * @param task 任务
+     * @param delay 延迟
+     * @param unit 延迟单位
+     * @return 可取消的任务句柄，调度器未启动时返回null
+     */
+    public static HashedTimingWheel.Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        HashedTimingWheel current = wheel;
+        if (current == null) {
+            TokenAuthMod.LOGGER.warn("认证调度器未启动，忽略定时任务");
+            return null;
+        }
+        return current.schedule(task, delay, unit);
+    }
+    
+    /**
+     * 安排玩家认证超时任务，同一玩家已有的超时任务会被取消
+     * 调度器未启动时改用一次性的延迟执行，超时检查不会被丢弃
+     * 
+     * @param playerId 玩家UUID
+     * @param task 超时任务
+     * @param delayMillis 超时时间（毫秒）
+     */
+    public static void schedulePlayerTimeout(String playerId, Runnable task, long delayMillis) {
+        // 先登记再调度，任务执行时一定能找到自己的条目
+        PlayerTimeout entry = new PlayerTimeout();
+        playerTimeouts.compute(playerId, (id, previous) -> {
+            if (previous != null) {
+                previous.cancel();
+            }
+            return entry;
+        });
+        
+        Runnable expire = () -> {
+            // 已被取消或替换的条目不再属于这个任务
+            if (playerTimeouts.remove(playerId, entry)) {
+                task.run();
+            }
+        };
+        
+        HashedTimingWheel current = wheel;
+        if (current != null) {
+            try {
+                entry.setTimeout(current.schedule(expire, delayMillis, TimeUnit.MILLISECONDS));
+                return;
+            } catch (IllegalStateException e) {
+                // 调度器正在停止
+            }
+        }
+        TokenAuthMod.LOGGER.warn("认证调度器未运行，玩家 {} 的认证超时改用单独的延迟任务", playerId);
+        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(expire);
+    }
+    
+    /**
+     * 取消玩家的认证超时任务
+     * 
+     * @param playerId 玩家UUID
+     * @return 如果存在尚未执行的超时任务并已取消则返回true
+     */
+    public static boolean cancelPlayerTimeout(String playerId) {
+        PlayerTimeout entry = playerTimeouts.remove(playerId);
+        if (entry == null) {
+            return false;
+        }
+        entry.cancel();
+        return true;
+    }
+    
+    /**
+     * 获取等待执行的任务总数
+     * 
+     * @return 等待执行的任务数
+     */
+    public static long getPendingCount() {
+        HashedTimingWheel current = wheel;
+        return current != null ? current.getPendingCount() : 0;
+    }
+    
+    /**
+     * 获取已执行的任务总数
+     * 
+     * @return 已执行的任务数
+     */
+    public static long getExpiredCount() {
+        HashedTimingWheel current = wheel;
+        return current != null ? current.getExpiredCount() : 0;
+    }
+    
+    /**
+     * 获取等待中的玩家认证超时任务数
+     * 
+     * @return 等待中的玩家认证超时任务数
+     */
+    public static int getPendingPlayerTimeoutCount() {
+        return playerTimeouts.size();
+    }
+    
+    /**
+     * 停止调度器，未执行的任务全部丢弃
+     */
+    public static synchronized void shutdown() {
+        HashedTimingWheel current = wheel;
+        if (current == null) {
+            return;
+        }
+        
+        wheel = null;
+        playerTimeouts.clear();
+        current.stop();
+    }
+    
+    /**
+     * 玩家认证超时条目，在调度前放入表中，时间轮任务句柄调度后再设置
+     */
+    private static final class PlayerTimeout {
+        private volatile HashedTimingWheel.Timeout timeout;
+        private volatile boolean cancelled;
+        
+        void setTimeout(HashedTimingWheel.Timeout timeout) {
+            this.timeout = timeout;
+            // 调度期间已被取消
+            if (cancelled) {
+                timeout.cancel();
+            }
+        }
+        
+        void cancel() {
+            cancelled = true;
+            HashedTimingWheel.Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+}
@@ -1,14 +1,11 @@
 package nety.ys.server;
 
-import net.minecraft.server.network.ServerPlayerEntity;
 import nety.ys.TokenAuthMod;
 import nety.ys.crypto.DynamicTokenGenerator;
 import nety.ys.util.DebugLogger;
 
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.util.Collection;
-import java.util.Map;
 
 /**
  * 认证会话辅助类
@@ -18,43 +15,6 @@ import java.util.Map;
  */
 public class AuthSessionHelper {
     
-    /**
-     * 根据玩家查找对应的认证会话
-     * 
-     * @param player 玩家实体
-     * @return 对应的认证会话，如果找不到则返回null
-     */
-    public static AuthSessionManager.AuthSession findSessionByPlayer(ServerPlayerEntity player) {
-        try {
-            InetAddress playerAddress = ((InetSocketAddress) player.networkHandler.connection.getAddress()).getAddress();
-            
-            // 获取所有活跃会话
-            Collection<AuthSessionManager.AuthSession> sessions = getAllActiveSessions();
-            
-            DebugLogger.debug("查找玩家会话 - 玩家: {}, IP: {}, 活跃会话数: {}",
-                player.getName().getString(), playerAddress.toString(), sessions.size());
-            
-            // 查找匹配IP地址的会话
-            for (AuthSessionManager.AuthSession session : sessions) {
-                DebugLogger.debug("检查会话 - IP: {}, 时间戳: {}",
-                    session.getAddress().toString(), session.getTimestamp());
-                
-                if (session.getAddress().equals(playerAddress)) {
-                    DebugLogger.debug("找到匹配的会话 - 玩家: {}, IP: {}, 会话时间戳: {}",
-                        player.getName().getString(), playerAddress.toString(), session.getTimestamp());
-                    return session;
-                }
-            }
-            
-            TokenAuthMod.LOGGER.warn("未找到匹配的会话 - 玩家: {}, IP: {}", 
-                player.getName().getString(), playerAddress.toString());
-            return null;
-        } catch (Exception e) {
-            TokenAuthMod.LOGGER.error("查找玩家会话时出错", e);
-            return null;
-        }
-    }
-    
     /**
      * 验证共享密钥配置
      * 
@@ -88,34 +48,24 @@ public class AuthSessionHelper {
      * @return 所有活跃会话的集合
      */
     public static Collection<AuthSessionManager.AuthSession> getAllActiveSessions() {
-        try {
-            // 使用反射获取私有字段
-            java.lang.reflect.Field field = AuthSessionManager.class.getDeclaredField("activeSessions");
-            field.setAccessible(true);
-            @SuppressWarnings("unchecked")
-            Map<String, AuthSessionManager.AuthSession> sessions = 
-                (Map<String, AuthSessionManager.AuthSession>) field.get(null);
-            return sessions.values();
-        } catch (Exception e) {
-            TokenAuthMod.LOGGER.error("获取活跃会话时出错", e);
-            return java.util.Collections.emptyList();
-        }
+        return AuthSessionManager.getActiveSessions();
     }
     
     /**
-     * 打印所有活跃会话信息（用于调试）
+     * 打印IP地址下的活跃会话信息（用于调试）
+     * 
+     * @param address IP地址
      */
-    public static void debugPrintAllSessions() {
+    public static void debugPrintSessions(InetAddress address) {
         try {
-            Collection<AuthSessionManager.AuthSession> sessions = getAllActiveSessions();
-            DebugLogger.debug("=== 当前活跃会话 (总数: {}) ===", sessions.size());
+            Collection<AuthSessionManager.AuthSession> sessions = AuthSessionManager.findSessionsByAddress(address);
+            DebugLogger.debug("=== IP地址 {} 的活跃会话 (总数: {}) ===", address, sessions.size());
             
             for (AuthSessionManager.AuthSession session : sessions) {
-                DebugLogger.debug("会话 - ID: {}, IP: {}, 时间戳: {}, 挑战长度: {}",
-                    session.getConnectionId(),
-                    session.getAddress().toString(),
-                    session.getTimestamp(),
-                    session.getChallenge().length);
+                DebugLogger.debug(() -> "会话 - ID: " + session.getConnectionId()
+                    + ", IP: " + session.getAddress().toString()
+                    + ", 时间戳: " + session.getTimestamp()
+                    + ", 挑战长度: " + session.getChallenge().length);
             }
             
             DebugLogger.debug("=== 会话信息打印完成 ===");
@@ -123,4 +73,4 @@ public class AuthSessionHelper {
             TokenAuthMod.LOGGER.error("打印会话信息时出错", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,21 @@
 package nety.ys.server;
 
+import net.minecraft.server.network.ServerPlayerEntity;
 import nety.ys.TokenAuthMod;
 import nety.ys.config.ModConfig;
 import nety.ys.crypto.DynamicTokenGenerator;
 import nety.ys.util.DebugLogger;
+import nety.ys.util.HashedTimingWheel;
+import nety.ys.util.IPAddressKey;
+import nety.ys.util.IPAddressLongMap;
+import nety.ys.util.IPPrefixTrie;
 
 import java.net.InetAddress;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 认证会话管理器
@@ -25,25 +30,60 @@ public class AuthSessionManager {
      */
     private static final Map<String, AuthSession> activeSessions = new ConcurrentHashMap<>();
     
+    /**
+     * 按玩家UUID索引的认证会话
+     */
+    private static final Map<UUID, AuthSession> sessionsByPlayer = new ConcurrentHashMap<>();
+    
+    /**
+     * 按IP地址索引的认证会话
+     */
+    private static final Map<InetAddress, Set<AuthSession>> sessionsByAddress = new ConcurrentHashMap<>();
+    
     /**
      * 已认证的玩家
      */
     private static final Set<String> authenticatedPlayers = ConcurrentHashMap.newKeySet();
     
     /**
-     * IP失败尝试次数
+     * IP失败尝试次数，高32位为统计窗口编号，低32位为窗口内的失败次数
+     */
+    private static final IPAddressLongMap failedAttempts = new IPAddressLongMap();
+    
+    /**
+     * 最近分配的统计窗口编号
+     */
+    private static final AtomicInteger failedAttemptWindows = new AtomicInteger();
+    
+    /**
+     * 被阻止的IP地址及解除阻止的时间
+     */
+    private static final IPAddressLongMap blockedIPs = new IPAddressLongMap();
+    
+    /**
+     * 被阻止的网段及解除阻止的时间
+     */
+    private static final IPPrefixTrie blockedSubnets = new IPPrefixTrie();
+    
+    /**
+     * 各网段内因认证失败被阻止的IP数量，用于自动升级为网段阻止
+     */
+    private static final IPAddressLongMap blockedPerSubnet = new IPAddressLongMap();
+    
+    /**
+     * IP白名单前缀树，配置中的白名单列表变化时重建
      */
-    private static final Map<String, Integer> failedAttempts = new ConcurrentHashMap<>();
+    private static volatile Whitelist whitelist;
     
     /**
-     * 被阻止的IP地址
+     * 已超时的会话数
      */
-    private static final Map<String, Long> blockedIPs = new ConcurrentHashMap<>();
+    private static final AtomicLong expiredSessionCount = new AtomicLong();
     
     /**
-     * 定时任务执行器
+     * 已到期解除的IP阻止数
      */
-    private static ScheduledExecutorService scheduler;
+    private static final AtomicLong expiredIPBlockCount = new AtomicLong();
     
     /**
      * 动态令牌生成器
@@ -71,16 +111,14 @@ public class AuthSessionManager {
             TokenAuthMod.LOGGER.warn("共享密钥未配置，令牌生成器未初始化");
         }
         
-        // 初始化定时任务执行器
-        scheduler = Executors.newScheduledThreadPool(1);
+        // 初始化令牌验证执行器
+        AuthVerificationExecutor.initialize(config);
         
-        // 启动会话清理任务
-        scheduler.scheduleAtFixedRate(AuthSessionManager::cleanupExpiredSessions, 
-                                    1, 1, TimeUnit.MINUTES);
+        // 初始化登录握手限流器
+        HandshakeRateLimiter.initialize(config);
         
-        // 启动IP阻止清理任务
-        scheduler.scheduleAtFixedRate(AuthSessionManager::cleanupExpiredIPBlocks, 
-                                    1, 1, TimeUnit.MINUTES);
+        // 启动认证调度器，会话和IP阻止在到期时由调度线程移除
+        AuthScheduler.initialize();
         
         TokenAuthMod.LOGGER.info("认证会话管理器初始化完成");
     }
@@ -103,22 +141,20 @@ public class AuthSessionManager {
         
         // 清理所有会话
         activeSessions.clear();
+        sessionsByPlayer.clear();
+        sessionsByAddress.clear();
         authenticatedPlayers.clear();
         failedAttempts.clear();
         blockedIPs.clear();
+        blockedSubnets.clear();
+        blockedPerSubnet.clear();
+        ChallengeCookies.reset();
         
-        // 关闭定时任务执行器
-        if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdown();
-            try {
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                }
-            } catch (InterruptedException e) {
-                scheduler.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
-        }
+        // 停止认证调度器
+        AuthScheduler.shutdown();
+        
+        // 关闭令牌验证执行器
+        AuthVerificationExecutor.shutdown();
         
         // 释放文件锁资源
         nety.ys.util.FailedAuthLogger.cleanup();
@@ -132,8 +168,20 @@ public class AuthSessionManager {
      * @return 认证会话，如果创建失败则返回null
      */
     public static AuthSession createSession(String connectionId, InetAddress address) {
+        return createSession(connectionId, address, null);
+    }
+    
+    /**
+     * 创建认证会话
+     * 
+     * @param connectionId 连接ID
+     * @param address 客户端IP地址
+     * @param playerId 玩家UUID，登录阶段尚未确定玩家时为null
+     * @return 认证会话，如果创建失败则返回null
+     */
+    public static AuthSession createSession(String connectionId, InetAddress address, UUID playerId) {
         // 检查IP是否被阻止
-        if (isIPBlocked(address.toString())) {
+        if (isIPBlocked(address)) {
             TokenAuthMod.LOGGER.warn("IP地址 {} 被阻止，拒绝创建会话", address.toString());
             return null;
         }
@@ -151,27 +199,120 @@ public class AuthSessionManager {
         
         // 创建会话
         long timestamp = System.currentTimeMillis();
-        AuthSession session = new AuthSession(connectionId, challenge, timestamp, address);
+        AuthSession session = new AuthSession(connectionId, challenge, timestamp, address, playerId);
         
-        // 存储会话
-        activeSessions.put(connectionId, session);
+        // 存储会话，同一连接ID的旧会话从索引中移除并取消超时任务
+        AuthSession previous = activeSessions.put(connectionId, session);
+        if (previous != null) {
+            unindexSession(previous);
+            previous.cancelExpiry();
+        }
+        indexSession(session);
         
         // 设置会话超时
         long timeout = TokenAuthMod.getInstance().getConfigManager().getServerConfig().responseTimeout;
         DebugLogger.debug("设置会话 {} 超时时间: {} 毫秒", connectionId, timeout);
-        scheduler.schedule(() -> {
-            AuthSession expiredSession = activeSessions.remove(connectionId);
-            if (expiredSession != null) {
-                DebugLogger.debug("会话 {} 已超时，创建时间: {}, 当前时间: {}",
-                    connectionId, expiredSession.getTimestamp(), System.currentTimeMillis());
-            }
-        }, timeout, TimeUnit.MILLISECONDS);
+        session.expiryTimeout = AuthScheduler.schedule(() -> expireSession(session), timeout, TimeUnit.MILLISECONDS);
         
         return session;
     }
     
     /**
-     * 验证令牌响应
+     * 移除认证会话并取消超时任务
+     * 客户端在响应挑战前断开连接时调用
+     * 
+     * @param session 认证会话
+     */
+    public static void removeSession(AuthSession session) {
+        if (activeSessions.remove(session.getConnectionId(), session)) {
+            unindexSession(session);
+            session.cancelExpiry();
+        }
+    }
+    
+    /**
+     * 创建无状态挑战
+     * 挑战数据由ChallengeCookies根据客户端IP地址和时间戳计算，不保存会话也不安排超时任务
+     * 
+     * @param address 客户端IP地址
+     * @param timestamp 挑战时间戳
+     * @return 挑战数据，如果创建失败则返回null
+     */
+    public static byte[] createStatelessChallenge(InetAddress address, long timestamp) {
+        // 检查IP是否被阻止
+        if (isIPBlocked(address)) {
+            TokenAuthMod.LOGGER.warn("IP地址 {} 被阻止，拒绝创建挑战", address.toString());
+            return null;
+        }
+        
+        // 检查令牌生成器是否已初始化
+        if (tokenGenerator == null) {
+            TokenAuthMod.LOGGER.error("令牌生成器未初始化，无法创建挑战");
+            return null;
+        }
+        
+        int challengeSize = TokenAuthMod.getInstance().getConfigManager().getServerConfig().challengeSize;
+        return ChallengeCookies.create(address, timestamp, challengeSize);
+    }
+    
+    /**
+     * 验证无状态挑战的令牌响应
+     * 根据客户端回传的挑战时间戳重新计算挑战数据，不需要查找会话
+     * 
+     * @param tokenResponse 令牌响应
+     * @param challengeTimestamp 挑战时间戳
+     * @param signedTimestamp 客户端签名时使用的时间戳
+     * @param windowed 是否使用窗口模式验证，旧版客户端不携带签名时间戳时为false
+     * @param address 客户端IP地址
+     * @return 如果验证成功则返回true
+     */
+    public static boolean verifyStatelessTokenResponse(byte[] tokenResponse, long challengeTimestamp,
+                                                       long signedTimestamp, boolean windowed, InetAddress address) {
+        // 检查令牌生成器是否已初始化
+        if (tokenGenerator == null) {
+            TokenAuthMod.LOGGER.error("令牌生成器未初始化，无法验证令牌");
+            return false;
+        }
+        
+        // 重新计算挑战数据
+        ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+        byte[] challenge = ChallengeCookies.derive(address, challengeTimestamp, config.challengeSize, config.responseTimeout);
+        if (challenge == null) {
+            TokenAuthMod.LOGGER.warn("IP地址 {} 的挑战已过期或时间戳无效，挑战时间戳: {}", address, challengeTimestamp);
+            return false;
+        }
+        
+        // 验证令牌
+        boolean isValid;
+        if (windowed) {
+            isValid = tokenGenerator.verifyTokenInWindow(challenge, challengeTimestamp, signedTimestamp,
+                                                         tokenResponse, config.timeWindow);
+        } else {
+            // 旧版客户端签名的就是挑战时间戳，只需计算一次HMAC
+            isValid = tokenGenerator.verifyToken(challenge, challengeTimestamp, tokenResponse);
+        }
+        
+        if (!isValid) {
+            TokenAuthMod.LOGGER.warn("令牌验证失败，IP地址: {}", address);
+            return false;
+        }
+        
+        // 同一挑战只能使用一次
+        if (!ChallengeCookies.markUsed(challenge, challengeTimestamp)) {
+            TokenAuthMod.LOGGER.warn("IP地址 {} 重复使用了已验证的挑战", address);
+            return false;
+        }
+        
+        // 重置失败尝试次数
+        failedAttempts.remove(IPAddressKey.high(address), IPAddressKey.low(address));
+        
+        DebugLogger.debug("无状态挑战验证成功，IP地址: {}", address);
+        return true;
+    }
+    
+    /**
+     * 验证令牌响应（兼容模式）
+     * 旧版客户端不携带签名时间戳，按挑战时间戳验证
      * 
      * @param connectionId 连接ID
      * @param tokenResponse 令牌响应
@@ -181,25 +322,50 @@ public class AuthSessionManager {
      */
     public static boolean verifyTokenResponse(String connectionId, byte[] tokenResponse, 
                                           long challengeTimestamp, InetAddress address) {
+        return verifyTokenResponse(connectionId, tokenResponse, challengeTimestamp, 0L, false, address);
+    }
+    
+    /**
+     * 验证令牌响应（窗口模式）
+     * 客户端携带签名时间戳，服务器只做一次范围检查和一次HMAC计算
+     * 
+     * @param connectionId 连接ID
+     * @param tokenResponse 令牌响应
+     * @param challengeTimestamp 挑战时间戳
+     * @param signedTimestamp 客户端签名时使用的时间戳
+     * @param address 客户端IP地址
+     * @return 如果验证成功则返回true
+     */
+    public static boolean verifyTokenResponse(String connectionId, byte[] tokenResponse,
+                                          long challengeTimestamp, long signedTimestamp, InetAddress address) {
+        return verifyTokenResponse(connectionId, tokenResponse, challengeTimestamp, signedTimestamp, true, address);
+    }
+    
+    /**
+     * 验证令牌响应
+     * 
+     * @param connectionId 连接ID
+     * @param tokenResponse 令牌响应
+     * @param challengeTimestamp 挑战时间戳
+     * @param signedTimestamp 客户端签名时使用的时间戳
+     * @param windowed 是否使用窗口模式验证
+     * @param address 客户端IP地址
+     * @return 如果验证成功则返回true
+     */
+    private static boolean verifyTokenResponse(String connectionId, byte[] tokenResponse, long challengeTimestamp,
+                                               long signedTimestamp, boolean windowed, InetAddress address) {
         // 检查令牌生成器是否已初始化
         if (tokenGenerator == null) {
             TokenAuthMod.LOGGER.error("令牌生成器未初始化，无法验证令牌");
             return false;
         }
         
-        // 获取会话 - 尝试多种方式查找会话
+        // 获取会话
         AuthSession session = activeSessions.get(connectionId);
         if (session == null) {
-            TokenAuthMod.LOGGER.warn("未找到连接ID {} 的会话，尝试通过其他方式查找", connectionId);
-            
-            // 如果直接查找失败，打印所有活跃会话用于调试
-            DebugLogger.debug("当前活跃会话数量: {}", activeSessions.size());
-            for (Map.Entry<String, AuthSession> entry : activeSessions.entrySet()) {
-                AuthSession s = entry.getValue();
-                DebugLogger.debug("会话 - ID: {}, IP: {}, 时间戳: {}",
-                    entry.getKey(), s.getAddress().toString(), s.getTimestamp());
-            }
-            
+            TokenAuthMod.LOGGER.warn("未找到连接ID {} 的会话", connectionId);
+            DebugLogger.debug("IP地址 {} 下的待认证会话数: {}，全部活跃会话数: {}",
+                address, findSessionsByAddress(address).size(), activeSessions.size());
             return false;
         }
         
@@ -212,19 +378,29 @@ public class AuthSessionManager {
         
         // 验证令牌
         ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
-        boolean isValid = tokenGenerator.verifyTokenWithTolerance(
-            session.getChallenge(), 
-            challengeTimestamp, 
-            tokenResponse,
-            config.timeWindow
-        );
+        boolean isValid;
+        if (windowed) {
+            isValid = tokenGenerator.verifyTokenInWindow(
+                session.getChallenge(),
+                challengeTimestamp,
+                signedTimestamp,
+                tokenResponse,
+                config.timeWindow
+            );
+        } else {
+            // 旧版客户端签名的就是挑战时间戳，只需计算一次HMAC
+            isValid = tokenGenerator.verifyToken(session.getChallenge(), challengeTimestamp, tokenResponse);
+        }
         
         if (isValid) {
-            // 移除会话
-            activeSessions.remove(connectionId);
+            // 移除会话并取消超时任务
+            if (activeSessions.remove(connectionId, session)) {
+                unindexSession(session);
+                session.cancelExpiry();
+            }
             
             // 重置失败尝试次数
-            failedAttempts.remove(address.toString());
+            failedAttempts.remove(IPAddressKey.high(address), IPAddressKey.low(address));
             
             TokenAuthMod.LOGGER.debug("令牌验证成功，连接ID: {}", connectionId);
         } else {
@@ -236,128 +412,291 @@ public class AuthSessionManager {
     
     /**
      * 标记玩家为已认证
+     * 认证状态保存在玩家实体上，UUID集合只用于统计
      * 
-     * @param playerId 玩家ID
+     * @param player 玩家
      */
-    public static void markPlayerAsAuthenticated(String playerId) {
-        authenticatedPlayers.add(playerId);
+    public static void markPlayerAsAuthenticated(ServerPlayerEntity player) {
+        ((AuthStateHolder) player).tokenauth$setAuthenticated(true);
+        authenticatedPlayers.add(player.getUuid().toString());
     }
     
     /**
      * 检查玩家是否已认证
+     * 只读取玩家实体上的标志，可以在每tick的约束检查中调用
      * 
-     * @param playerId 玩家ID
+     * @param player 玩家
      * @return 如果玩家已认证则返回true
      */
-    public static boolean isPlayerAuthenticated(String playerId) {
-        return authenticatedPlayers.contains(playerId);
+    public static boolean isPlayerAuthenticated(ServerPlayerEntity player) {
+        return ((AuthStateHolder) player).tokenauth$isAuthenticated();
     }
     
     /**
      * 移除玩家认证状态
      * 
-     * @param playerId 玩家ID
+     * @param player 玩家
      */
-    public static void removePlayerAuthentication(String playerId) {
-        authenticatedPlayers.remove(playerId);
+    public static void removePlayerAuthentication(ServerPlayerEntity player) {
+        ((AuthStateHolder) player).tokenauth$setAuthenticated(false);
+        authenticatedPlayers.remove(player.getUuid().toString());
     }
     
     /**
      * 增加失败尝试次数
+     * 每个IP的第一次失败开始一个统计窗口，窗口结束时整个计数由一个定时任务移除；
+     * 认证成功时计数被提前移除，旧窗口的定时任务按窗口编号识别，不会移除之后新开始的计数
      * 
-     * @param ipAddress IP地址
-     * @return 新的失败尝试次数
+     * @param address IP地址
+     * @return 统计窗口内的失败尝试次数
      */
-    public static int incrementFailedAttempt(String ipAddress) {
-        return failedAttempts.merge(ipAddress, 1, Integer::sum);
+    public static int incrementFailedAttempt(InetAddress address) {
+        long high = IPAddressKey.high(address);
+        long low = IPAddressKey.low(address);
+        
+        // 编号0保留给"不存在"
+        int window = failedAttemptWindows.incrementAndGet();
+        if (window == 0) {
+            window = failedAttemptWindows.incrementAndGet();
+        }
+        long windowBits = (window & 0xFFFFFFFFL) << 32;
+        long value = failedAttempts.update(high, low, current -> current == 0L ? windowBits | 1L : current + 1L);
+        
+        int windowMinutes = TokenAuthMod.getInstance().getConfigManager().getServerConfig().failedAttemptWindowMinutes;
+        if (windowMinutes > 0 && (value & 0xFFFFFFFF00000000L) == windowBits) {
+            AuthScheduler.schedule(
+                () -> failedAttempts.removeIf(high, low, current -> (current & 0xFFFFFFFF00000000L) == windowBits),
+                windowMinutes, TimeUnit.MINUTES);
+        }
+        
+        return (int) value;
     }
     
     /**
-     * 阻止IP地址
+     * 阻止IP地址或网段
      * 
-     * @param ipAddress IP地址
+     * @param ipAddress IP地址或CIDR网段字符串
      * @param durationMinutes 阻止持续时间（分钟）
+     * @throws IllegalArgumentException 如果不是有效的IP地址或网段
      */
     public static void blockIPAddress(String ipAddress, int durationMinutes) {
-        long unblockTime = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(durationMinutes);
-        blockedIPs.put(ipAddress, unblockTime);
+        IPAddressKey.Prefix prefix = IPAddressKey.parsePrefix(ipAddress);
+        if (prefix.isSingleAddress()) {
+            blockIPAddress(IPAddressKey.toAddress(prefix.getHigh(), prefix.getLow()), durationMinutes);
+        } else {
+            blockSubnet(prefix, durationMinutes);
+        }
+    }
+    
+    /**
+     * 阻止IP地址
+     * 
+     * @param address IP地址
+     * @param durationMinutes 阻止持续时间（分钟）
+     */
+    public static void blockIPAddress(InetAddress address, int durationMinutes) {
+        long high = IPAddressKey.high(address);
+        long low = IPAddressKey.low(address);
+        long duration = TimeUnit.MINUTES.toMillis(durationMinutes);
+        long unblockTime = System.currentTimeMillis() + duration;
+        blockedIPs.put(high, low, unblockTime);
+        
+        // 到期时只移除本次设置的阻止，被重新阻止的IP不受旧任务影响
+        AuthScheduler.schedule(() -> expireIPBlock(high, low, unblockTime), duration, TimeUnit.MILLISECONDS);
         
         // 如果玩家在线，踢出服务器
-        if (server != null) {
-            server.getPlayerManager().getPlayerList().forEach(player -> {
-                if (player.getIp().equals(ipAddress)) {
-                    player.networkHandler.disconnect(
-                        net.minecraft.text.Text.literal("您的IP地址已被阻止，请稍后再试")
-                    );
-                }
-            });
-        }
+        disconnectBlockedPlayers(new IPAddressKey.Prefix(high, low, 128));
     }
     
     /**
-     * 检查IP是否被阻止
+     * 阻止网段
      * 
-     * @param ipAddress IP地址
-     * @return 如果IP被阻止则返回true
+     * @param prefix 网段
+     * @param durationMinutes 阻止持续时间（分钟）
      */
-    public static boolean isIPBlocked(String ipAddress) {
-        Long unblockTime = blockedIPs.get(ipAddress);
-        if (unblockTime == null) {
-            return false;
-        }
+    public static void blockSubnet(IPAddressKey.Prefix prefix, int durationMinutes) {
+        long duration = TimeUnit.MINUTES.toMillis(durationMinutes);
+        long unblockTime = System.currentTimeMillis() + duration;
+        blockedSubnets.put(prefix, unblockTime);
         
-        if (System.currentTimeMillis() > unblockTime) {
-            blockedIPs.remove(ipAddress);
-            return false;
-        }
+        AuthScheduler.schedule(() -> expireSubnetBlock(prefix, unblockTime), duration, TimeUnit.MILLISECONDS);
         
-        return true;
+        TokenAuthMod.LOGGER.warn("网段 {} 已被阻止 {} 分钟", prefix, durationMinutes);
+        disconnectBlockedPlayers(prefix);
     }
     
     /**
-     * 清理过期的会话
+     * 因认证失败次数过多阻止IP地址
+     * 同一网段内被阻止的IP数量在阻止持续时间内达到阈值时，自动升级为阻止整个网段
+     * 
+     * @param address IP地址
+     * @param config 服务器配置
      */
-    private static void cleanupExpiredSessions() {
-        long currentTime = System.currentTimeMillis();
-        long timeout = TokenAuthMod.getInstance().getConfigManager().getServerConfig().responseTimeout;
+    public static void blockFailingIPAddress(InetAddress address, ModConfig.ServerConfig config) {
+        blockIPAddress(address, config.blockDurationMinutes);
         
-        DebugLogger.debug("开始清理过期会话，当前时间: {}, 超时时间: {} 毫秒", currentTime, timeout);
-        DebugLogger.debug("当前活跃会话数量: {}", activeSessions.size());
+        if (config.subnetEscalationThreshold <= 0) {
+            return;
+        }
         
-        Iterator<Map.Entry<String, AuthSession>> iterator = activeSessions.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<String, AuthSession> entry = iterator.next();
-            AuthSession session = entry.getValue();
-            long sessionAge = currentTime - session.getTimestamp();
-            
-            DebugLogger.debug("检查会话: {}, 创建时间: {}, 年龄: {} 毫秒",
-                entry.getKey(), session.getTimestamp(), sessionAge);
-            
-            if (sessionAge > timeout) {
-                iterator.remove();
-                DebugLogger.debug("清理过期会话: {}, 年龄: {} 毫秒 (超时: {} 毫秒)",
-                    entry.getKey(), sessionAge, timeout);
+        IPAddressKey.Prefix subnet = IPAddressKey.prefixOf(address,
+            config.subnetEscalationIPv4Prefix, config.subnetEscalationIPv6Prefix);
+        long high = subnet.getHigh();
+        long low = subnet.getLow();
+        long blockedInSubnet = blockedPerSubnet.addAndGet(high, low, 1);
+        
+        // 计数随阻止到期回落，只统计阻止持续时间内的IP
+        AuthScheduler.schedule(() -> {
+            long remaining = blockedPerSubnet.addAndGet(high, low, -1);
+            if (remaining <= 0) {
+                blockedPerSubnet.remove(high, low, remaining);
+            }
+        }, config.blockDurationMinutes, TimeUnit.MINUTES);
+        
+        if (blockedInSubnet >= config.subnetEscalationThreshold) {
+            TokenAuthMod.LOGGER.warn("网段 {} 内已有 {} 个IP因认证失败被阻止，升级为网段阻止", subnet, blockedInSubnet);
+            blockSubnet(subnet, config.blockDurationMinutes);
+        }
+    }
+    
+    /**
+     * 检查IP是否被阻止（包括所在网段被阻止）
+     * IPv4地址的检查不分配任何对象
+     * 
+     * @param address IP地址
+     * @return 如果IP被阻止则返回true
+     */
+    public static boolean isIPBlocked(InetAddress address) {
+        long high = IPAddressKey.high(address);
+        long low = IPAddressKey.low(address);
+        long now = System.currentTimeMillis();
+        
+        long unblockTime = blockedIPs.get(high, low, 0L);
+        if (unblockTime != 0L) {
+            if (now <= unblockTime) {
+                return true;
             }
+            blockedIPs.remove(high, low, unblockTime);
+        }
+        
+        if (!blockedSubnets.isEmpty()) {
+            long subnetUnblockTime = blockedSubnets.maxMatch(high, low, 0L);
+            return subnetUnblockTime != 0L && now <= subnetUnblockTime;
         }
         
-        DebugLogger.debug("会话清理完成，剩余活跃会话数量: {}", activeSessions.size());
+        return false;
     }
     
     /**
-     * 清理过期的IP阻止
+     * 检查IP是否在白名单中，白名单支持CIDR网段
+     * 
+     * @param address IP地址
+     * @return 如果IP在白名单中则返回true
+     */
+    public static boolean isIPWhitelisted(InetAddress address) {
+        List<String> entries = TokenAuthMod.getInstance().getConfigManager().getServerConfig().ipWhitelist;
+        Whitelist current = whitelist;
+        if (current == null || current.source != entries) {
+            current = new Whitelist(entries);
+            whitelist = current;
+        }
+        return current.trie.containsAddress(IPAddressKey.high(address), IPAddressKey.low(address));
+    }
+    
+    /**
+     * 断开被阻止的IP或网段内的在线玩家
+     * 
+     * @param prefix 被阻止的网段
      */
-    private static void cleanupExpiredIPBlocks() {
-        long currentTime = System.currentTimeMillis();
+    private static void disconnectBlockedPlayers(IPAddressKey.Prefix prefix) {
+        if (server == null) {
+            return;
+        }
         
-        Iterator<Map.Entry<String, Long>> iterator = blockedIPs.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<String, Long> entry = iterator.next();
-            Long unblockTime = entry.getValue();
-            
-            if (currentTime > unblockTime) {
-                iterator.remove();
-                DebugLogger.debug("移除过期的IP阻止: {}", entry.getKey());
+        server.getPlayerManager().getPlayerList().forEach(player -> {
+            java.net.SocketAddress playerAddress = player.networkHandler.connection.getAddress();
+            if (playerAddress instanceof java.net.InetSocketAddress) {
+                InetAddress address = ((java.net.InetSocketAddress) playerAddress).getAddress();
+                if (prefix.contains(IPAddressKey.high(address), IPAddressKey.low(address))) {
+                    player.networkHandler.disconnect(
+                        net.minecraft.text.Text.literal("您的IP地址已被阻止，请稍后再试")
+                    );
+                }
             }
+        });
+    }
+    
+    /**
+     * 将会话加入二级索引
+     * 
+     * @param session 认证会话
+     */
+    private static void indexSession(AuthSession session) {
+        if (session.getPlayerId() != null) {
+            sessionsByPlayer.put(session.getPlayerId(), session);
+        }
+        sessionsByAddress.compute(session.getAddress(), (address, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+            }
+            sessions.add(session);
+            return sessions;
+        });
+    }
+    
+    /**
+     * 将会话从二级索引中移除
+     * 
+     * @param session 认证会话
+     */
+    private static void unindexSession(AuthSession session) {
+        if (session.getPlayerId() != null) {
+            sessionsByPlayer.remove(session.getPlayerId(), session);
+        }
+        sessionsByAddress.computeIfPresent(session.getAddress(), (address, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+    
+    /**
+     * 会话超时处理，在时间轮计时线程上执行
+     * 
+     * @param session 超时的会话
+     */
+    private static void expireSession(AuthSession session) {
+        if (activeSessions.remove(session.getConnectionId(), session)) {
+            unindexSession(session);
+            expiredSessionCount.incrementAndGet();
+            DebugLogger.debug("会话 {} 已超时，创建时间: {}, 当前时间: {}",
+                session.getConnectionId(), session.getTimestamp(), System.currentTimeMillis());
+        }
+    }
+    
+    /**
+     * IP阻止到期处理，在时间轮计时线程上执行
+     * 
+     * @param high IP地址键的高64位
+     * @param low IP地址键的低64位
+     * @param unblockTime 设置阻止时的解除时间
+     */
+    private static void expireIPBlock(long high, long low, long unblockTime) {
+        if (blockedIPs.remove(high, low, unblockTime)) {
+            expiredIPBlockCount.incrementAndGet();
+            DebugLogger.debug(() -> "移除过期的IP阻止: " + IPAddressKey.toString(high, low));
+        }
+    }
+    
+    /**
+     * 网段阻止到期处理，在时间轮计时线程上执行
+     * 
+     * @param prefix 网段
+     * @param unblockTime 设置阻止时的解除时间
+     */
+    private static void expireSubnetBlock(IPAddressKey.Prefix prefix, long unblockTime) {
+        if (blockedSubnets.remove(prefix, unblockTime)) {
+            expiredIPBlockCount.incrementAndGet();
+            DebugLogger.debug("移除过期的网段阻止: {}", prefix);
         }
     }
     
@@ -385,17 +724,41 @@ public class AuthSessionManager {
      * @return 被阻止的IP数量
      */
     public static int getBlockedIPCount() {
-        return blockedIPs.size();
+        return blockedIPs.size() + blockedSubnets.size();
+    }
+    
+    /**
+     * 获取已超时的会话数
+     *
+     * @return 已超时的会话数
+     */
+    public static long getExpiredSessionCount() {
+        return expiredSessionCount.get();
+    }
+    
+    /**
+     * 获取已到期解除的IP阻止数
+     *
+     * @return 已到期解除的IP阻止数
+     */
+    public static long getExpiredIPBlockCount() {
+        return expiredIPBlockCount.get();
     }
     
     /**
      * 解除阻止IP地址
      *
-     * @param ipAddress IP地址
+     * @param ipAddress IP地址或CIDR网段字符串
+     * @throws IllegalArgumentException 如果不是有效的IP地址或网段
      */
     public static void unblockIPAddress(String ipAddress) {
-        blockedIPs.remove(ipAddress);
-        TokenAuthMod.LOGGER.info("IP地址 {} 的阻止已解除", ipAddress);
+        IPAddressKey.Prefix prefix = IPAddressKey.parsePrefix(ipAddress);
+        if (prefix.isSingleAddress()) {
+            blockedIPs.remove(prefix.getHigh(), prefix.getLow());
+        } else {
+            blockedSubnets.remove(prefix);
+        }
+        TokenAuthMod.LOGGER.info("IP地址 {} 的阻止已解除", prefix);
     }
     
     /**
@@ -404,7 +767,10 @@ public class AuthSessionManager {
      * @return 被阻止的IP地址集合
      */
     public static java.util.Set<String> getBlockedIPs() {
-        return new java.util.HashSet<>(blockedIPs.keySet());
+        java.util.Set<String> result = new java.util.HashSet<>();
+        blockedIPs.forEach((high, low, unblockTime) -> result.add(IPAddressKey.toString(high, low)));
+        blockedSubnets.forEach((prefix, unblockTime) -> result.add(prefix.toString()));
+        return result;
     }
     
     /**
@@ -417,6 +783,74 @@ public class AuthSessionManager {
         return activeSessions.get(connectionId);
     }
     
+    /**
+     * 根据玩家UUID查找认证会话
+     * 
+     * @param playerId 玩家UUID
+     * @return 认证会话，如果不存在则返回null
+     */
+    public static AuthSession findSessionByPlayer(UUID playerId) {
+        return playerId != null ? sessionsByPlayer.get(playerId) : null;
+    }
+    
+    /**
+     * 根据IP地址查找认证会话
+     * 同一IP地址存在多个会话时返回其中任意一个
+     * 
+     * @param address IP地址
+     * @return 认证会话，如果不存在则返回null
+     */
+    public static AuthSession findSessionByAddress(InetAddress address) {
+        Set<AuthSession> sessions = address != null ? sessionsByAddress.get(address) : null;
+        if (sessions == null) {
+            return null;
+        }
+        Iterator<AuthSession> iterator = sessions.iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+    
+    /**
+     * 获取IP地址下的全部认证会话
+     * 
+     * @param address IP地址
+     * @return 认证会话集合的只读视图，如果不存在则返回空集合
+     */
+    public static Set<AuthSession> findSessionsByAddress(InetAddress address) {
+        Set<AuthSession> sessions = address != null ? sessionsByAddress.get(address) : null;
+        return sessions != null ? Collections.unmodifiableSet(sessions) : Collections.emptySet();
+    }
+    
+    /**
+     * 获取全部活跃会话（用于调试）
+     * 
+     * @return 活跃会话集合的只读视图
+     */
+    public static Collection<AuthSession> getActiveSessions() {
+        return Collections.unmodifiableCollection(activeSessions.values());
+    }
+    
+    /**
+     * IP白名单，由配置中的白名单列表构建
+     */
+    private static final class Whitelist {
+        private final List<String> source;
+        private final IPPrefixTrie trie = new IPPrefixTrie();
+        
+        Whitelist(List<String> source) {
+            this.source = source;
+            if (source == null) {
+                return;
+            }
+            for (String entry : source) {
+                try {
+                    trie.put(IPAddressKey.parsePrefix(entry), 0L);
+                } catch (IllegalArgumentException e) {
+                    TokenAuthMod.LOGGER.warn("忽略无效的IP白名单条目: {}", entry);
+                }
+            }
+        }
+    }
+    
     /**
      * 认证会话类
      */
@@ -425,12 +859,19 @@ public class AuthSessionManager {
         private final byte[] challenge;
         private final long timestamp;
         private final InetAddress address;
+        private final UUID playerId;
+        private volatile HashedTimingWheel.Timeout expiryTimeout;
         
         public AuthSession(String connectionId, byte[] challenge, long timestamp, InetAddress address) {
+            this(connectionId, challenge, timestamp, address, null);
+        }
+        
+        public AuthSession(String connectionId, byte[] challenge, long timestamp, InetAddress address, UUID playerId) {
             this.connectionId = connectionId;
             this.challenge = challenge;
             this.timestamp = timestamp;
             this.address = address;
+            this.playerId = playerId;
         }
         
         public String getConnectionId() {
@@ -448,5 +889,19 @@ public class AuthSessionManager {
         public InetAddress getAddress() {
             return address;
         }
+        
+        public UUID getPlayerId() {
+            return playerId;
+        }
+        
+        /**
+         * 取消会话的超时任务
+         */
+        void cancelExpiry() {
+            HashedTimingWheel.Timeout timeout = expiryTimeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package nety.ys.server;
+
+/**
+ * 保存了认证状态的玩家
+ * 由ServerPlayerEntityMixin实现，通过AuthSessionManager的玩家方法访问
+ * 
+ * @author nety.ys
+ */
+public interface AuthStateHolder {
+    
+    /**
+     * 检查玩家是否已认证
+     * 
+     * @return 如果玩家已认证则返回true
+     */
+    boolean tokenauth$isAuthenticated();
+    
+    /**
+     * 设置玩家的认证状态
+     * 
+     * @param authenticated 是否已认证
+     */
+    void tokenauth$setAuthenticated(boolean authenticated);
+}
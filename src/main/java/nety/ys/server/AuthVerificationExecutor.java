@@ -0,0 +1,133 @@
+package nety.ys.server;
+
+import nety.ys.TokenAuthMod;
+import nety.ys.config.ModConfig;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌验证执行器
+ * 在有界的工作线程池中完成令牌验证，避免HMAC计算和日志记录占用服务器主线程
+ * 
+ * @author nety.ys
+ */
+public class AuthVerificationExecutor {
+    
+    /**
+     * 验证线程池
+     */
+    private static volatile ThreadPoolExecutor executor;
+    
+    /**
+     * 因队列已满被拒绝的验证任务数
+     */
+    private static final AtomicLong rejectedCount = new AtomicLong();
+    
+    /**
+     * 初始化验证执行器
+     * 
+     * @param config 服务器配置
+     */
+    public static synchronized void initialize(ModConfig.ServerConfig config) {
+        if (executor != null && !executor.isShutdown()) {
+            return;
+        }
+        
+        int threads = Math.max(1, config.verifyThreads);
+        int capacity = Math.max(1, config.verifyQueueCapacity);
+        
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            threads, threads,
+            60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(capacity),
+            new VerifyThreadFactory(),
+            new ThreadPoolExecutor.AbortPolicy()
+        );
+        pool.allowCoreThreadTimeOut(true);
+        executor = pool;
+        
+        TokenAuthMod.LOGGER.info("令牌验证执行器已启动，线程数: {}，队列容量: {}", threads, capacity);
+    }
+    
+    /**
+     * 提交验证任务
+     * 
+     * @param task 验证任务
+     * @return 如果任务已进入队列则返回true，执行器未启动或队列已满时返回false
+     */
+    public static boolean submit(Runnable task) {
+        ThreadPoolExecutor pool = executor;
+        if (pool == null || pool.isShutdown()) {
+            return false;
+        }
+        
+        try {
+            pool.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+    }
+    
+    /**
+     * 获取等待验证的任务数
+     * 
+     * @return 队列中的任务数
+     */
+    public static int getQueuedCount() {
+        ThreadPoolExecutor pool = executor;
+        return pool != null ? pool.getQueue().size() : 0;
+    }
+    
+    /**
+     * 获取被拒绝的验证任务数
+     * 
+     * @return 被拒绝的任务数
+     */
+    public static long getRejectedCount() {
+        return rejectedCount.get();
+    }
+    
+    /**
+     * 关闭验证执行器
+     */
+    public static synchronized void shutdown() {
+        ThreadPoolExecutor pool = executor;
+        if (pool == null || pool.isShutdown()) {
+            return;
+        }
+        
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                TokenAuthMod.LOGGER.warn("令牌验证执行器未能在5秒内正常关闭，强制关闭");
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+    
+    /**
+     * 验证线程工厂
+     */
+    private static class VerifyThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "TokenAuth-Verify-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
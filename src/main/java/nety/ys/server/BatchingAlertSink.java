@@ -0,0 +1,264 @@
+package nety.ys.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import nety.ys.TokenAuthMod;
+import nety.ys.util.DebugLogger;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量发送的警报输出基类
+ * 事件格式化为JSON后进入有界队列，由输出自己的线程按批次发送；
+ * 达到批次大小或到达刷新间隔时发送一批，失败时按指数退避重试，超过重试次数后丢弃这一批
+ *
+ * @author nety.ys
+ */
+public abstract class BatchingAlertSink implements AlertSink {
+    
+    private final String name;
+    private final int capacity;
+    private final int batchSize;
+    private final int maxRetries;
+    private final long retryBackoffMillis;
+    
+    private final ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final ScheduledThreadPoolExecutor worker;
+    
+    /**
+     * @param name 输出名称
+     * @param capacity 最多排队的事件数，超出的事件被丢弃
+     * @param batchSize 每批最多发送的事件数
+     * @param flushIntervalMillis 未满一批时的发送间隔（毫秒）
+     * @param maxRetries 每批失败后的最大重试次数
+     * @param retryBackoffMillis 第一次重试前的等待时间（毫秒），之后每次翻倍
+     */
+    protected BatchingAlertSink(String name, int capacity, int batchSize, long flushIntervalMillis,
+                                int maxRetries, long retryBackoffMillis) {
+        this.name = name;
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBackoffMillis = Math.max(0, retryBackoffMillis);
+        
+        this.worker = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "TokenAuth-AlertSink-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.worker.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        long interval = Math.max(100, flushIntervalMillis);
+        this.worker.scheduleWithFixedDelay(this::drain, interval, interval, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 发送一批已格式化的事件
+     *
+     * @param batch JSON格式的事件，按发生顺序排列
+     * @throws IOException 发送失败时抛出，PermanentFailureException表示重试也不会成功
+     */
+    protected abstract void deliver(List<String> batch) throws IOException;
+    
+    @Override
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public void publish(AlertEvent event) {
+        offer(toJson(event).toString());
+    }
+    
+    @Override
+    public void publishDigest(AlertDigest digest, long windowEnd) {
+        offer(toJson(digest, windowEnd).toString());
+    }
+    
+    private void offer(String line) {
+        if (queuedCount.incrementAndGet() > capacity) {
+            queuedCount.decrementAndGet();
+            long dropped = droppedCount.incrementAndGet();
+            if (dropped == 1 || dropped % 100 == 0) {
+                TokenAuthMod.LOGGER.warn("警报输出 {} 的队列已满，已累计丢弃 {} 个事件", name, dropped);
+            }
+            return;
+        }
+        queue.add(line);
+        
+        // 攒够一批时立即发送，不等刷新间隔
+        if (queuedCount.get() >= batchSize && drainScheduled.compareAndSet(false, true)) {
+            try {
+                worker.execute(this::drain);
+            } catch (RuntimeException e) {
+                drainScheduled.set(false);
+            }
+        }
+    }
+    
+    /**
+     * 发送队列中的所有事件，只在输出线程中调用
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        List<String> batch = new ArrayList<>(batchSize);
+        while (true) {
+            batch.clear();
+            String line;
+            while (batch.size() < batchSize && (line = queue.poll()) != null) {
+                queuedCount.decrementAndGet();
+                batch.add(line);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            if (!deliverWithRetry(batch)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * @return 如果输出线程没有被中断则返回true
+     */
+    private boolean deliverWithRetry(List<String> batch) {
+        long backoff = retryBackoffMillis;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                deliver(batch);
+                deliveredCount.addAndGet(batch.size());
+                return true;
+            } catch (PermanentFailureException e) {
+                TokenAuthMod.LOGGER.warn("警报输出 {} 发送失败，丢弃 {} 个事件: {}", name, batch.size(), e.getMessage());
+                droppedCount.addAndGet(batch.size());
+                return true;
+            } catch (IOException | RuntimeException e) {
+                if (attempt >= maxRetries) {
+                    TokenAuthMod.LOGGER.warn("警报输出 {} 重试 {} 次后仍然失败，丢弃 {} 个事件: {}",
+                                             name, maxRetries, batch.size(), e.getMessage());
+                    droppedCount.addAndGet(batch.size());
+                    return true;
+                }
+                DebugLogger.debug("警报输出 {} 发送失败，{}毫秒后重试: {}", name, backoff, e.getMessage());
+            }
+            
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                // 关闭超时，剩余的事件不再发送
+                droppedCount.addAndGet(batch.size());
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            backoff = Math.min(backoff * 2, TimeUnit.MINUTES.toMillis(1));
+        }
+    }
+    
+    /**
+     * 转换为JSON格式的认证失败事件
+     */
+    protected JsonObject toJson(AlertEvent event) {
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "auth_failure");
+        json.addProperty("time", Instant.ofEpochMilli(event.getTime()).toString());
+        json.addProperty("server", event.getServerName());
+        json.addProperty("player", event.getPlayerName());
+        json.addProperty("ip", event.getAddress().getHostAddress());
+        json.addProperty("reason", event.getReason());
+        return json;
+    }
+    
+    /**
+     * 转换为JSON格式的汇总窗口
+     */
+    protected JsonObject toJson(AlertDigest digest, long windowEnd) {
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "auth_failure_digest");
+        json.addProperty("windowStart", Instant.ofEpochMilli(digest.getWindowStart()).toString());
+        json.addProperty("windowEnd", Instant.ofEpochMilli(windowEnd).toString());
+        json.addProperty("total", digest.getTotalCount());
+        json.addProperty("sources", digest.getSourceCount());
+        json.addProperty("untracked", digest.getUntrackedCount());
+        
+        JsonObject reasons = new JsonObject();
+        for (Map.Entry<String, Integer> entry : digest.getReasonCounts().entrySet()) {
+            reasons.addProperty(entry.getKey(), entry.getValue());
+        }
+        json.add("reasons", reasons);
+        
+        JsonArray topSources = new JsonArray();
+        for (AlertDigest.Source source : digest.getTopSources(Integer.MAX_VALUE)) {
+            JsonObject item = new JsonObject();
+            item.addProperty("ip", source.getAddress().getHostAddress());
+            item.addProperty("count", source.getCount());
+            item.addProperty("firstSeen", Instant.ofEpochMilli(source.getFirstSeen()).toString());
+            item.addProperty("lastSeen", Instant.ofEpochMilli(source.getLastSeen()).toString());
+            JsonArray players = new JsonArray();
+            source.getPlayers().forEach(players::add);
+            item.add("players", players);
+            topSources.add(item);
+        }
+        json.add("topSources", topSources);
+        return json;
+    }
+    
+    @Override
+    public String getStatus() {
+        return name + "(已发送: " + deliveredCount.get() + ", 待发送: " + queuedCount.get()
+            + ", 已丢弃: " + droppedCount.get() + ")";
+    }
+    
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+    
+    public int getQueuedCount() {
+        return queuedCount.get();
+    }
+    
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+    
+    @Override
+    public void shutdown(long timeoutMillis) {
+        if (worker.isShutdown()) {
+            return;
+        }
+        // 发送剩余的事件后停止
+        worker.execute(this::drain);
+        worker.shutdown();
+        try {
+            if (!worker.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                worker.shutdownNow();
+                TokenAuthMod.LOGGER.warn("警报输出 {} 未能在{}毫秒内发送完，剩余 {} 个事件被丢弃",
+                                         name, timeoutMillis, queuedCount.get());
+            }
+        } catch (InterruptedException e) {
+            worker.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 重试也不会成功的发送失败，例如Webhook返回4xx
+     */
+    protected static class PermanentFailureException extends IOException {
+        public PermanentFailureException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package nety.ys.server;
+
+import nety.ys.crypto.DynamicTokenGenerator;
+import nety.ys.util.CryptoUtil;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 无状态挑战
+ * 挑战数据是轮换的服务器密钥对客户端IP地址和挑战时间戳的HMAC，客户端回传时间戳后服务器重新计算即可验证，
+ * 等待响应的握手不在服务器上保存任何状态。
+ * <p>
+ * 密钥每个轮换周期随机生成一次，只保留当前和上一个周期的密钥；
+ * 验证成功的挑战记录在生成它的周期密钥中，防止同一响应被重放，密钥轮换掉时记录随之丢弃，不需要逐条清理。
+ * <p>
+ * 挑战只由IP地址和毫秒时间戳决定，同一IP在同一毫秒内发起的两个连接会得到相同的挑战，
+ * 先验证的连接使用掉这个挑战后，另一个连接会被当作重放拒绝，需要重新连接
+ *
+ * @author nety.ys
+ */
+public class ChallengeCookies {
+    
+    /**
+     * 密钥轮换周期（毫秒），也是挑战有效期的上限
+     */
+    static final long KEY_ROTATION_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    
+    /**
+     * 密钥长度（字节）
+     */
+    private static final int KEY_LENGTH = 32;
+    
+    /**
+     * 当前周期的密钥
+     */
+    private static volatile CookieKey currentKey;
+    
+    /**
+     * 上一个周期的密钥，跨周期的挑战用它验证
+     */
+    private static volatile CookieKey previousKey;
+    
+    /**
+     * 生成挑战数据
+     * 
+     * @param address 客户端IP地址
+     * @param timestamp 挑战时间戳
+     * @param size 挑战长度（字节），超过HMAC输出长度时取HMAC输出长度
+     * @return 挑战数据
+     */
+    public static byte[] create(InetAddress address, long timestamp, int size) {
+        return compute(keyFor(timestamp / KEY_ROTATION_MILLIS, true), address, timestamp, size);
+    }
+    
+    /**
+     * 根据客户端回传的时间戳重新计算挑战数据
+     * 
+     * @param address 客户端IP地址
+     * @param timestamp 客户端回传的挑战时间戳
+     * @param size 挑战长度（字节）
+     * @param maxAgeMillis 挑战有效期（毫秒），不超过密钥轮换周期
+     * @return 挑战数据，时间戳超出有效期或对应的密钥已轮换掉时返回null
+     */
+    public static byte[] derive(InetAddress address, long timestamp, int size, long maxAgeMillis) {
+        long age = System.currentTimeMillis() - timestamp;
+        if (age < 0 || age > Math.min(maxAgeMillis, KEY_ROTATION_MILLIS)) {
+            return null;
+        }
+        
+        CookieKey key = keyFor(timestamp / KEY_ROTATION_MILLIS, false);
+        return key != null ? compute(key, address, timestamp, size) : null;
+    }
+    
+    /**
+     * 记录验证成功的挑战
+     * 只有持有共享密钥的客户端能走到这一步，记录数受两个轮换周期内的正常登录次数限制
+     * 
+     * @param challenge 挑战数据
+     * @param timestamp 挑战时间戳
+     * @return 如果该挑战第一次使用则返回true，重放时返回false
+     */
+    public static boolean markUsed(byte[] challenge, long timestamp) {
+        CookieKey key = keyFor(timestamp / KEY_ROTATION_MILLIS, false);
+        if (key == null) {
+            // 验证之后密钥刚好轮换掉，挑战已过期
+            return false;
+        }
+        return key.usedCookies.add(ByteBuffer.wrap(challenge.clone()));
+    }
+    
+    /**
+     * 清除密钥和重放记录，之前发出的挑战全部失效
+     */
+    public static synchronized void reset() {
+        currentKey = null;
+        previousKey = null;
+    }
+    
+    /**
+     * 获取有效期内记录的已使用挑战数
+     * 
+     * @return 已使用挑战数
+     */
+    public static int getUsedCount() {
+        CookieKey current = currentKey;
+        CookieKey previous = previousKey;
+        return (current != null ? current.usedCookies.size() : 0) + (previous != null ? previous.usedCookies.size() : 0);
+    }
+    
+    private static byte[] compute(CookieKey key, InetAddress address, long timestamp, int size) {
+        byte[] mac = key.mac.generateToken(address.getAddress(), timestamp);
+        return Arrays.copyOf(mac, Math.max(1, Math.min(size, mac.length)));
+    }
+    
+    /**
+     * 获取指定周期的密钥
+     * 
+     * @param epoch 轮换周期序号
+     * @param rotate 周期比当前密钥新时是否轮换生成新密钥
+     * @return 密钥，不存在时返回null
+     */
+    private static CookieKey keyFor(long epoch, boolean rotate) {
+        CookieKey current = currentKey;
+        if (current != null && current.epoch == epoch) {
+            return current;
+        }
+        CookieKey previous = previousKey;
+        if (previous != null && previous.epoch == epoch) {
+            return previous;
+        }
+        if (!rotate || (current != null && current.epoch > epoch)) {
+            return null;
+        }
+        
+        synchronized (ChallengeCookies.class) {
+            current = currentKey;
+            if (current != null && current.epoch >= epoch) {
+                return current.epoch == epoch ? current : null;
+            }
+            // 空闲超过一个周期时上一个周期没有发出过挑战，不需要保留密钥
+            previousKey = current != null && current.epoch == epoch - 1 ? current : null;
+            currentKey = new CookieKey(epoch, CryptoUtil.generateRandomBytes(KEY_LENGTH));
+            return currentKey;
+        }
+    }
+    
+    /**
+     * 一个轮换周期的密钥
+     */
+    private static final class CookieKey {
+        private final long epoch;
+        private final DynamicTokenGenerator mac;
+        
+        /**
+         * 用这个密钥生成、已验证成功的挑战
+         */
+        private final Set<ByteBuffer> usedCookies = ConcurrentHashMap.newKeySet();
+        
+        CookieKey(long epoch, byte[] secret) {
+            this.epoch = epoch;
+            this.mac = new DynamicTokenGenerator(secret);
+        }
+    }
+}
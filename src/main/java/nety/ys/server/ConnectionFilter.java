@@ -0,0 +1,63 @@
+package nety.ys.server;
+
+import nety.ys.TokenAuthMod;
+import nety.ys.config.ModConfig;
+import nety.ys.util.DebugLogger;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接过滤器
+ * 在Netty接受连接、初始化通道时检查客户端IP，被阻止的IP直接关闭通道，
+ * 不会创建ClientConnection和编解码器，也不会解码任何Minecraft数据包
+ * 
+ * @author nety.ys
+ */
+public class ConnectionFilter {
+    
+    /**
+     * 接受连接时被关闭的连接数
+     */
+    private static final AtomicLong rejectedCount = new AtomicLong();
+    
+    /**
+     * 检查新接受的连接是否应被立即关闭
+     * 在Netty事件循环线程调用，IPv4地址只做一次阻止表查找且不分配任何对象
+     * 
+     * @param remoteAddress 客户端地址
+     * @return 如果客户端IP被阻止则返回true
+     */
+    public static boolean shouldReject(SocketAddress remoteAddress) {
+        if (!(remoteAddress instanceof InetSocketAddress)) {
+            return false;
+        }
+        
+        ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+        if (config == null || !config.enabled || !config.enableEarlyConnectionFilter) {
+            return false;
+        }
+        
+        InetAddress address = ((InetSocketAddress) remoteAddress).getAddress();
+        if (address == null || !AuthSessionManager.isIPBlocked(address)) {
+            return false;
+        }
+        
+        rejectedCount.incrementAndGet();
+        if (DebugLogger.isEnabled(DebugLogger.Category.DEBUG)) {
+            DebugLogger.debug("IP地址 {} 已被阻止，接受连接时直接关闭", address);
+        }
+        return true;
+    }
+    
+    /**
+     * 获取接受连接时被关闭的连接数
+     * 
+     * @return 被关闭的连接数
+     */
+    public static long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
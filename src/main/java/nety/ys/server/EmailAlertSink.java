@@ -0,0 +1,325 @@
+package nety.ys.server;
+
+import nety.ys.TokenAuthMod;
+import nety.ys.config.ModConfig;
+import nety.ys.util.DebugLogger;
+import nety.ys.util.EmailNotifier;
+import nety.ys.util.IPGeolocationUtil;
+import nety.ys.util.PriorityTaskExecutor;
+
+import java.net.InetAddress;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 邮件警报输出
+ * 只发送需要单独通知的失败和汇总邮件，被合并的失败不单独发邮件；
+ * 地理位置查询和邮件构建在独立线程中进行，任务在有界队列中排队，
+ * 同一IP已有警报排队时新警报为低优先级，队列已满时优先丢弃
+ *
+ * @author nety.ys
+ */
+class EmailAlertSink implements AlertSink {
+    
+    // 地理位置查询的最长等待时间（毫秒），超时后以未知位置发送
+    private static final long GEO_LOOKUP_TIMEOUT_MS = 5000;
+    
+    // 使用独立线程池处理警报服务，避免阻塞主线程
+    private final PriorityTaskExecutor alertExecutor = new PriorityTaskExecutor("TokenAuth-Alert", 2, 60000, null);
+    
+    // 每个IP正在排队的单条警报数，用于区分首次警报和重复警报
+    private final Map<InetAddress, Integer> pendingAlerts = new ConcurrentHashMap<>();
+    
+    @Override
+    public String getName() {
+        return "邮件";
+    }
+    
+    @Override
+    public void publish(AlertEvent event) {
+        if (!event.isImmediate()) {
+            return;
+        }
+        
+        ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+        if (!config.enableEmailAlerts) {
+            DebugLogger.email("邮件警报功能已禁用，跳过发送认证失败邮件");
+            return;
+        }
+        alertExecutor.configure(config.alertQueueCapacity,
+                                PriorityTaskExecutor.RejectionPolicy.parse(config.alertQueueRejectionPolicy));
+        
+        // 同一IP已有警报排队时，这次警报是重复的
+        InetAddress ipAddress = event.getAddress();
+        boolean repeat = pendingAlerts.merge(ipAddress, 1, Integer::sum) > 1;
+        PriorityTaskExecutor.Priority priority = repeat ? PriorityTaskExecutor.Priority.LOW : PriorityTaskExecutor.Priority.HIGH;
+        
+        alertExecutor.execute(priority, () -> {
+            try {
+                sendSingleAlert(event.getPlayerName(), ipAddress, event.getReason(), priority);
+            } catch (Exception e) {
+                TokenAuthMod.LOGGER.error("发送认证失败警报时出错", e);
+            }
+        }).handle((result, throwable) -> {
+            pendingAlerts.computeIfPresent(ipAddress, (address, count) -> count > 1 ? count - 1 : null);
+            if (throwable != null) {
+                // 队列已满或服务已关闭，执行器已记录丢弃
+                DebugLogger.email(() -> "认证失败警报未发送 - IP: " + ipAddress.getHostAddress() + ", 原因: " + throwable.getMessage());
+            }
+            return null;
+        });
+    }
+    
+    @Override
+    public void publishDigest(AlertDigest digest, long windowEnd) {
+        alertExecutor.execute(PriorityTaskExecutor.Priority.HIGH, () -> sendDigest(digest, windowEnd))
+            .exceptionally(throwable -> {
+                TokenAuthMod.LOGGER.warn("丢弃包含 {} 次认证失败的汇总邮件: {}", digest.getTotalCount(), throwable.getMessage());
+                return null;
+            });
+    }
+    
+    /**
+     * 立即发送单次认证失败的警报邮件
+     */
+    private static void sendSingleAlert(String playerName, InetAddress ipAddress, String reason,
+                                        PriorityTaskExecutor.Priority priority) {
+        ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+        
+        // 检查邮件配置是否有效
+        if (!isEmailConfigValid(config)) {
+            TokenAuthMod.LOGGER.warn("邮件配置无效，无法发送认证失败警报");
+            return;
+        }
+        
+        // 获取当前时间
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss"));
+        DebugLogger.email("获取当前时间: {}", timestamp);
+        
+        // 异步获取地理位置信息
+        String location = "未知位置";
+        if (config.includeGeoLocation) {
+            try {
+                DebugLogger.email(() -> "正在获取IP " + ipAddress.getHostAddress() + " 的地理位置信息...");
+                IPGeolocationUtil.GeoLocationInfo geoInfo =
+                    IPGeolocationUtil.getGeoLocationAsync(ipAddress, GEO_LOOKUP_TIMEOUT_MS).join();
+                location = geoInfo.getFullLocation();
+                DebugLogger.email("获取地理位置信息成功: {}", location);
+            } catch (Exception e) {
+                TokenAuthMod.LOGGER.error("获取IP {} 地理位置信息失败", ipAddress.getHostAddress(), e);
+            }
+        } else {
+            DebugLogger.email("地理位置信息获取已禁用");
+        }
+        
+        // 创建邮件配置
+        EmailNotifier.EmailConfig emailConfig = createEmailConfig(config);
+        
+        DebugLogger.email("创建邮件配置完成，准备发送邮件");
+        
+        // 发送邮件
+        EmailNotifier.sendIntrusionAlert(
+            config.serverName,
+            playerName,
+            timestamp,
+            ipAddress.getHostAddress(),
+            location,
+            reason,
+            emailConfig,
+            priority
+        ).thenAccept(success -> {
+            if (success) {
+                DebugLogger.email("认证失败警报邮件发送成功");
+            } else {
+                TokenAuthMod.LOGGER.warn("认证失败警报邮件发送失败");
+            }
+        });
+    }
+    
+    /**
+     * 发送汇总邮件
+     */
+    private static void sendDigest(AlertDigest digest, long windowEnd) {
+        try {
+            ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+            if (!config.enableEmailAlerts || !isEmailConfigValid(config)) {
+                DebugLogger.email("邮件警报已禁用或配置无效，丢弃汇总邮件");
+                return;
+            }
+            
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
+            StringBuilder content = new StringBuilder();
+            content.append("致").append(config.serverName).append(":\n\n");
+            content.append("您的服务器在以下时间段内持续出现认证失败，已合并为一封汇总邮件\n\n");
+            content.append("时间段: ").append(formatTime(digest.getWindowStart(), formatter))
+                   .append(" - ").append(formatTime(windowEnd, formatter)).append("\n");
+            content.append("失败次数: ").append(digest.getTotalCount()).append("\n");
+            content.append("来源IP数: ").append(digest.getSourceCount());
+            if (digest.getUntrackedCount() > 0) {
+                content.append("（另有 ").append(digest.getUntrackedCount()).append(" 次失败来自未单独统计的IP）");
+            }
+            content.append("\n");
+            
+            content.append("失败原因: ");
+            boolean first = true;
+            for (Map.Entry<String, Integer> entry : digest.getReasonCounts().entrySet()) {
+                if (!first) {
+                    content.append("，");
+                }
+                content.append(entry.getKey()).append(" × ").append(entry.getValue());
+                first = false;
+            }
+            content.append("\n\n");
+            
+            // 所有来源的地理位置并行查询，总等待时间有上限，未完成的显示为未知位置
+            List<AlertDigest.Source> sources = digest.getTopSources(config.alertDigestTopSources);
+            List<CompletableFuture<IPGeolocationUtil.GeoLocationInfo>> lookups = new ArrayList<>(sources.size());
+            if (config.includeGeoLocation) {
+                for (AlertDigest.Source source : sources) {
+                    lookups.add(IPGeolocationUtil.getGeoLocationAsync(source.address, GEO_LOOKUP_TIMEOUT_MS));
+                }
+                CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0]))
+                    .completeOnTimeout(null, GEO_LOOKUP_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                    .join();
+            }
+            
+            content.append("主要来源:\n");
+            for (int i = 0; i < sources.size(); i++) {
+                AlertDigest.Source source = sources.get(i);
+                String location = "未知位置";
+                if (!lookups.isEmpty()) {
+                    IPGeolocationUtil.GeoLocationInfo geoInfo = lookups.get(i).getNow(null);
+                    if (geoInfo != null) {
+                        location = geoInfo.getFullLocation();
+                    }
+                }
+                content.append("- ").append(source.address.getHostAddress())
+                       .append(" (").append(location).append(")")
+                       .append(" 次数: ").append(source.count)
+                       .append(" 首次: ").append(formatTime(source.firstSeen, formatter))
+                       .append(" 最后: ").append(formatTime(source.lastSeen, formatter))
+                       .append(" 玩家: ").append(String.join(", ", source.getPlayers()))
+                       .append("\n");
+            }
+            content.append("\n——Token_auth");
+            
+            EmailNotifier.sendNotification("TokenAuth 认证失败汇总 - " + config.serverName,
+                                           content.toString(), createEmailConfig(config))
+                .thenAccept(success -> {
+                    if (success) {
+                        DebugLogger.email("认证失败汇总邮件发送成功，共 {} 次失败", digest.getTotalCount());
+                    } else {
+                        TokenAuthMod.LOGGER.warn("认证失败汇总邮件发送失败");
+                    }
+                });
+        } catch (Exception e) {
+            TokenAuthMod.LOGGER.error("发送认证失败汇总邮件时出错", e);
+        }
+    }
+    
+    private static String formatTime(long millis, DateTimeFormatter formatter) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()).format(formatter);
+    }
+    
+    /**
+     * 根据服务器配置创建邮件配置
+     */
+    private static EmailNotifier.EmailConfig createEmailConfig(ModConfig.ServerConfig config) {
+        return new EmailNotifier.EmailConfig(
+            config.smtpHost,
+            config.smtpPort,
+            config.smtpUsername,
+            config.smtpPassword,
+            config.emailFromAddress,
+            config.emailToAddress,
+            config.enableSSL
+        );
+    }
+    
+    /**
+     * 获取正在排队的警报任务数
+     * 
+     * @return 排队任务数
+     */
+    int getQueuedCount() {
+        return alertExecutor.getQueuedCount();
+    }
+    
+    /**
+     * 获取因队列已满或服务关闭而丢弃的警报任务数
+     * 
+     * @return 丢弃的任务数
+     */
+    long getDroppedCount() {
+        return alertExecutor.getDroppedCount();
+    }
+    
+    @Override
+    public String getStatus() {
+        return "邮件(待处理: " + getQueuedCount() + ", 已丢弃: " + getDroppedCount() + ")";
+    }
+    
+    /**
+     * 关闭警报执行器
+     * 已排队的警报按优先级继续处理，超时后未处理完的警报被丢弃
+     */
+    @Override
+    public void shutdown(long timeoutMillis) {
+        if (alertExecutor.isShutdown()) {
+            return;
+        }
+        
+        if (alertExecutor.shutdown(timeoutMillis)) {
+            TokenAuthMod.LOGGER.info("认证警报服务已正常关闭");
+            return;
+        }
+        
+        TokenAuthMod.LOGGER.warn("警报服务执行器未能在{}毫秒内正常关闭，强制关闭", timeoutMillis);
+        try {
+            // 再给5秒时间让任务响应中断
+            if (!alertExecutor.awaitTermination(5000)) {
+                TokenAuthMod.LOGGER.error("警报服务执行器强制关闭失败");
+            }
+        } catch (InterruptedException e) {
+            TokenAuthMod.LOGGER.warn("等待警报服务执行器关闭时被中断");
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * 检查邮件配置是否有效
+     * 
+     * @param config 服务器配置
+     * @return 如果邮件配置有效则返回true
+     */
+    private static boolean isEmailConfigValid(ModConfig.ServerConfig config) {
+        boolean isValid = config.smtpHost != null && !config.smtpHost.isEmpty() &&
+               config.smtpPort != null && !config.smtpPort.isEmpty() &&
+               config.smtpUsername != null && !config.smtpUsername.isEmpty() &&
+               config.smtpPassword != null && !config.smtpPassword.isEmpty() &&
+               config.emailFromAddress != null && !config.emailFromAddress.isEmpty() &&
+               config.emailToAddress != null && !config.emailToAddress.isEmpty();
+        
+        DebugLogger.email("邮件配置验证结果: {}", isValid);
+        
+        if (!isValid) {
+            TokenAuthMod.LOGGER.warn("邮件配置项检查:");
+            DebugLogger.email("  SMTP主机: {}", config.smtpHost != null ? config.smtpHost : "null");
+            DebugLogger.email("  SMTP端口: {}", config.smtpPort != null ? config.smtpPort : "null");
+            DebugLogger.email("  SMTP用户名: {}", config.smtpUsername != null ? config.smtpUsername : "null");
+            DebugLogger.email("  SMTP密码: {}", config.smtpPassword != null && !config.smtpPassword.isEmpty() ? "[已设置]" : "[空]");
+            DebugLogger.email("  发件人地址: {}", config.emailFromAddress != null ? config.emailFromAddress : "null");
+            DebugLogger.email("  收件人地址: {}", config.emailToAddress != null ? config.emailToAddress : "null");
+        }
+        
+        return isValid;
+    }
+}
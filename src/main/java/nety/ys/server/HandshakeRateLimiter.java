@@ -0,0 +1,149 @@
+package nety.ys.server;
+
+import nety.ys.TokenAuthMod;
+import nety.ys.config.ModConfig;
+import nety.ys.util.IPAddressKey;
+import nety.ys.util.TokenBucketRateLimiter;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 登录握手限流器
+ * 在登录Hello阶段按IP和按网段限制新连接的速率，超出速率的连接在分配会话和生成挑战之前就被拒绝。
+ * IPv6地址按/64计为一个IP，一个用户通常拥有整个/64
+ * 
+ * @author nety.ys
+ */
+public class HandshakeRateLimiter {
+    
+    /**
+     * 每个限流器的槽位数量
+     */
+    private static final int SLOT_COUNT = 1 << 16;
+    
+    /**
+     * 按IP的限流器，未启用时为null
+     */
+    private static volatile TokenBucketRateLimiter perIPLimiter;
+    
+    /**
+     * 按网段的限流器，未启用时为null
+     */
+    private static volatile TokenBucketRateLimiter perSubnetLimiter;
+    
+    /**
+     * IPv4网段前缀长度
+     */
+    private static volatile int ipv4PrefixLength = 24;
+    
+    /**
+     * IPv6网段前缀长度
+     */
+    private static volatile int ipv6PrefixLength = 48;
+    
+    /**
+     * 按IP限流时IPv6地址使用的前缀长度
+     */
+    private static final int IPV6_IP_PREFIX = 64;
+    
+    /**
+     * 被拒绝的握手次数
+     */
+    private static final AtomicLong rejectedCount = new AtomicLong();
+    
+    /**
+     * 根据配置初始化限流器，重载配置时也会调用
+     * 限流参数没有变化的限流器保留现有的令牌桶
+     * 
+     * @param config 服务器配置
+     */
+    public static synchronized void initialize(ModConfig.ServerConfig config) {
+        if (!config.enableHandshakeRateLimit) {
+            perIPLimiter = null;
+            perSubnetLimiter = null;
+            TokenAuthMod.LOGGER.info("登录握手限流未启用");
+            return;
+        }
+        
+        perIPLimiter = createLimiter(perIPLimiter, config.handshakesPerIPPerMinute, config.handshakeBurstPerIP);
+        perSubnetLimiter = createLimiter(perSubnetLimiter, config.handshakesPerSubnetPerMinute, config.handshakeBurstPerSubnet);
+        ipv4PrefixLength = Math.max(0, Math.min(32, config.handshakeSubnetIPv4Prefix));
+        ipv6PrefixLength = Math.max(0, Math.min(128, config.handshakeSubnetIPv6Prefix));
+        if (perIPLimiter != null && perSubnetLimiter != null && ipv6PrefixLength >= IPV6_IP_PREFIX) {
+            TokenAuthMod.LOGGER.warn("握手限流的IPv6网段前缀 /{} 不短于按IP使用的 /{}，IPv6连接的两个限流器将使用同一个令牌桶",
+                ipv6PrefixLength, IPV6_IP_PREFIX);
+        }
+        
+        TokenAuthMod.LOGGER.info("登录握手限流已启用，每IP: {}/分钟（突发 {}），每网段: {}/分钟（突发 {}）",
+            config.handshakesPerIPPerMinute, config.handshakeBurstPerIP,
+            config.handshakesPerSubnetPerMinute, config.handshakeBurstPerSubnet);
+    }
+    
+    private static TokenBucketRateLimiter createLimiter(TokenBucketRateLimiter current, int permitsPerMinute, int burst) {
+        if (permitsPerMinute <= 0) {
+            return null;
+        }
+        if (current != null && current.hasLimits(permitsPerMinute, burst)) {
+            return current;
+        }
+        return new TokenBucketRateLimiter(permitsPerMinute, burst, SLOT_COUNT);
+    }
+    
+    /**
+     * 尝试为一次登录握手获取许可
+     * IPv4地址的检查不分配任何对象
+     * 
+     * @param address 客户端IP地址
+     * @return 如果允许握手则返回true，超出速率时返回false
+     */
+    public static boolean tryAcquire(InetAddress address) {
+        TokenBucketRateLimiter ipLimiter = perIPLimiter;
+        TokenBucketRateLimiter subnetLimiter = perSubnetLimiter;
+        if (ipLimiter == null && subnetLimiter == null) {
+            return true;
+        }
+        
+        boolean ipv4 = address instanceof Inet4Address;
+        long high = IPAddressKey.high(address);
+        long low = IPAddressKey.low(address);
+        
+        // IPv6按/64计为一个IP
+        long ipLow = ipv4 ? low : 0L;
+        int length = ipv4 ? 96 + ipv4PrefixLength : ipv6PrefixLength;
+        long subnetHigh = high & IPAddressKey.highMask(length);
+        long subnetLow = low & IPAddressKey.lowMask(length);
+        
+        // 两个限流器都有令牌时才扣减，被一个拒绝的握手不消耗另一个的令牌
+        if ((ipLimiter != null && !ipLimiter.hasPermit(high, ipLow))
+                || (subnetLimiter != null && !subnetLimiter.hasPermit(subnetHigh, subnetLow))) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        
+        if (ipLimiter != null && !ipLimiter.tryAcquire(high, ipLow)) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        if (subnetLimiter != null && !subnetLimiter.tryAcquire(subnetHigh, subnetLow)) {
+            // 检查之后令牌被并发的握手用完，退还按IP的令牌
+            if (ipLimiter != null) {
+                ipLimiter.release(high, ipLow);
+            }
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * 获取被拒绝的握手次数
+     * 
+     * @return 被拒绝的握手次数
+     */
+    public static long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
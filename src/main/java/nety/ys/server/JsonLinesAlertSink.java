@@ -0,0 +1,46 @@
+package nety.ys.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * 追加写入JSON Lines文件的警报输出
+ * 每行一个JSON对象，适合交给日志采集工具处理；每批只打开一次文件
+ *
+ * @author nety.ys
+ */
+public class JsonLinesAlertSink extends BatchingAlertSink {
+    
+    private final Path file;
+    
+    public JsonLinesAlertSink(Path file, int capacity, int batchSize, long flushIntervalMillis,
+                              int maxRetries, long retryBackoffMillis) {
+        super("JSON文件", capacity, batchSize, flushIntervalMillis, maxRetries, retryBackoffMillis);
+        this.file = file;
+    }
+    
+    @Override
+    protected void deliver(List<String> batch) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            for (String line : batch) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+    
+    @Override
+    public String getStatus() {
+        return super.getStatus() + " " + file.getFileName();
+    }
+}
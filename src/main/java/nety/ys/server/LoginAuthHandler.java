@@ -0,0 +1,294 @@
+package nety.ys.server;
+
+import com.mojang.authlib.GameProfile;
+import net.fabricmc.fabric.api.networking.v1.PacketSender;
+import net.fabricmc.fabric.api.networking.v1.ServerLoginNetworking;
+import net.minecraft.network.ClientConnection;
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerLoginNetworkHandler;
+import net.minecraft.text.Text;
+import nety.ys.TokenAuthMod;
+import nety.ys.config.ModConfig;
+import nety.ys.mixin.ServerLoginNetworkHandlerAccessor;
+import nety.ys.network.packets.ChallengePacket;
+import nety.ys.network.packets.TokenResponsePacket;
+import nety.ys.util.DebugLogger;
+import nety.ys.util.FailedAuthLogger;
+import nety.ys.util.HashedTimingWheel;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 登录阶段认证处理器
+ * 在登录查询阶段向客户端发送挑战，客户端以查询应答返回令牌响应，验证完成前登录不会结束。
+ * 认证失败的客户端在创建玩家实体、发送区块之前就被断开，只消耗几百字节的流量
+ * 
+ * @author nety.ys
+ */
+public class LoginAuthHandler {
+    
+    /**
+     * 等待令牌响应的登录连接
+     */
+    private static final Map<ServerLoginNetworkHandler, PendingLogin> pendingLogins = new ConcurrentHashMap<>();
+    
+    /**
+     * 检查是否使用登录阶段认证
+     * 
+     * @param config 服务器配置
+     * @return 如果认证系统已启用且使用登录阶段认证则返回true
+     */
+    public static boolean isEnabled(ModConfig.ServerConfig config) {
+        return config != null && config.enabled && config.loginPhaseAuth;
+    }
+    
+    /**
+     * 登录查询阶段开始时发送认证挑战
+     * 在服务器主线程调用
+     * 
+     * @param handler 登录网络处理器
+     * @param server 服务器实例
+     * @param sender 数据包发送器
+     * @param synchronizer 登录同步器，登录会等待其中的任务完成
+     */
+    public static void onQueryStart(ServerLoginNetworkHandler handler, MinecraftServer server,
+                                    PacketSender sender, ServerLoginNetworking.LoginSynchronizer synchronizer) {
+        ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+        if (!isEnabled(config)) {
+            return;
+        }
+        
+        AuthContext context = AuthContext.getOrCreate(handler.getConnection());
+        String playerName = getPlayerName(handler);
+        
+        // 创建挑战，会话保存在连接的认证上下文中，无状态挑战不保存会话
+        ChallengePacket challenge = AuthPacketHandler.createChallenge(context, null);
+        if (challenge == null) {
+            TokenAuthMod.LOGGER.error("无法为玩家 {} 创建登录阶段认证会话", playerName);
+            handler.disconnect(Text.literal("认证系统错误，请稍后再试"));
+            return;
+        }
+        
+        PendingLogin pending = new PendingLogin(context, playerName);
+        pendingLogins.put(handler, pending);
+        
+        // 在验证完成前保持登录等待
+        synchronizer.waitFor(pending.result);
+        
+        // 客户端未在超时时间内响应时断开连接
+        pending.timeout = AuthScheduler.schedule(
+            () -> server.execute(() -> onNoResponse(handler, pending, config, "认证超时")),
+            config.responseTimeout, TimeUnit.MILLISECONDS
+        );
+        
+        sender.sendPacket(ChallengePacket.ID, ChallengePacket.toBytes(challenge));
+        DebugLogger.auth("已在登录阶段向玩家 {} 发送认证挑战", playerName);
+    }
+    
+    /**
+     * 处理客户端的登录查询应答
+     * 在网络线程调用：验证在工作线程池中完成，登录的放行和断开切回服务器主线程
+     * 
+     * @param server 服务器实例
+     * @param handler 登录网络处理器
+     * @param understood 客户端是否识别该查询
+     * @param buf 应答数据
+     * @param synchronizer 登录同步器
+     * @param responseSender 数据包发送器
+     */
+    public static void onQueryResponse(MinecraftServer server, ServerLoginNetworkHandler handler, boolean understood,
+                                       PacketByteBuf buf, ServerLoginNetworking.LoginSynchronizer synchronizer,
+                                       PacketSender responseSender) {
+        PendingLogin pending = pendingLogins.get(handler);
+        if (pending == null) {
+            DebugLogger.auth("收到未知登录连接的令牌响应，忽略");
+            return;
+        }
+        
+        ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+        
+        // 未安装模组的客户端不识别查询，与不响应挑战的客户端同样处理
+        if (!understood) {
+            server.execute(() -> onNoResponse(handler, pending, config, "客户端不支持令牌认证"));
+            return;
+        }
+        
+        TokenResponsePacket packet;
+        try {
+            packet = TokenResponsePacket.fromBytes(buf);
+        } catch (RuntimeException e) {
+            fail(server, handler, pending, config, "令牌响应格式错误", "认证失败，请检查客户端配置");
+            return;
+        }
+        
+        boolean submitted = AuthVerificationExecutor.submit(() -> verify(server, handler, pending, config, packet));
+        if (!submitted) {
+            // 队列已满说明正在经历登录洪峰，不计入失败次数，让客户端稍后重试
+            TokenAuthMod.LOGGER.warn("令牌验证队列已满，拒绝玩家 {} 的登录", pending.playerName);
+            if (finish(handler, pending)) {
+                server.execute(() -> handler.disconnect(Text.literal("认证服务器繁忙，请稍后再试")));
+            }
+        }
+    }
+    
+    /**
+     * 在验证线程上验证令牌响应
+     */
+    private static void verify(MinecraftServer server, ServerLoginNetworkHandler handler, PendingLogin pending,
+                               ModConfig.ServerConfig config, TokenResponsePacket packet) {
+        // 旧版客户端不携带签名时间戳，按挑战时间戳验证
+        if (!packet.hasSignedTimestamp() && !config.allowLegacyTokenSweep) {
+            fail(server, handler, pending, config, "客户端版本过旧", "客户端版本过旧，请更新Token Auth Mod");
+            return;
+        }
+        
+        boolean isValid;
+        try {
+            isValid = AuthPacketHandler.verifyResponse(pending.context, packet, config);
+        } catch (Exception e) {
+            TokenAuthMod.LOGGER.error("验证登录阶段令牌响应时出错", e);
+            fail(server, handler, pending, config, "处理令牌响应时出错: " + e.getMessage(), "认证失败，请检查客户端配置");
+            return;
+        }
+        
+        if (!isValid) {
+            fail(server, handler, pending, config, "令牌验证失败", "认证失败，请检查客户端配置");
+            return;
+        }
+        
+        if (!finish(handler, pending)) {
+            return;
+        }
+        
+        // 先标记连接再放行登录，玩家进入游戏时据此跳过游戏阶段的挑战
+        pending.context.markLoginVerified();
+        pending.result.complete(null);
+        
+        if (config.enableAuthLogging && config.logSuccessfulAuth) {
+            TokenAuthMod.LOGGER.info("玩家 {} 在登录阶段认证成功", pending.playerName);
+        }
+    }
+    
+    /**
+     * 记录认证失败并断开连接
+     * CSV记录和警报在当前线程完成，失败计数和断开连接切回服务器主线程
+     */
+    private static void fail(MinecraftServer server, ServerLoginNetworkHandler handler, PendingLogin pending,
+                             ModConfig.ServerConfig config, String reason, String clientMessage) {
+        if (!finish(handler, pending)) {
+            return;
+        }
+        
+        AuthPacketHandler.recordAuthenticationFailure(pending.playerName, pending.context.getAddress(), reason);
+        server.execute(() -> {
+            if (config.enableAuthLogging && config.logFailedAttempts) {
+                TokenAuthMod.LOGGER.warn("玩家 {} 在登录阶段认证失败: {}", pending.playerName, reason);
+            }
+            AuthPacketHandler.countFailedAttempt(pending.context.getAddress(), config);
+            handler.disconnect(Text.literal(clientMessage));
+        });
+    }
+    
+    /**
+     * 客户端没有给出令牌响应时断开连接，与游戏阶段的认证超时同样记录
+     * 在服务器主线程调用
+     */
+    private static void onNoResponse(ServerLoginNetworkHandler handler, PendingLogin pending,
+                                     ModConfig.ServerConfig config, String reason) {
+        if (!finish(handler, pending)) {
+            return;
+        }
+        
+        TokenAuthMod.LOGGER.warn("玩家 {} 登录阶段认证失败: {}，断开连接", pending.playerName, reason);
+        
+        if (config.logTimeoutAttempts) {
+            FailedAuthLogger.logFailedAuth(pending.playerName, pending.context.getAddress(), reason);
+        }
+        AuthAlertService.sendAuthTimeoutAlert(pending.playerName, pending.context.getAddress())
+            .exceptionally(throwable -> {
+                TokenAuthMod.LOGGER.error("发送认证超时警报邮件时出错", throwable);
+                return null;
+            });
+        
+        handler.disconnect(Text.literal("认证超时，请使用支持令牌认证的客户端"));
+    }
+    
+    /**
+     * 结束等待中的登录认证，每个连接只有第一次调用成功
+     * 
+     * @return 如果本次调用结束了认证则返回true
+     */
+    private static boolean finish(ServerLoginNetworkHandler handler, PendingLogin pending) {
+        if (!pendingLogins.remove(handler, pending)) {
+            return false;
+        }
+        if (pending.timeout != null) {
+            pending.timeout.cancel();
+        }
+        return true;
+    }
+    
+    /**
+     * 登录阶段断开连接时清理等待中的认证
+     * 
+     * @param handler 登录网络处理器
+     * @param server 服务器实例
+     */
+    public static void onLoginDisconnect(ServerLoginNetworkHandler handler, MinecraftServer server) {
+        PendingLogin pending = pendingLogins.remove(handler);
+        if (pending != null) {
+            if (pending.timeout != null) {
+                pending.timeout.cancel();
+            }
+            pending.context.clearSession();
+            DebugLogger.auth("玩家 {} 在登录阶段认证完成前断开连接", pending.playerName);
+        }
+    }
+    
+    /**
+     * 检查连接是否已在登录阶段通过认证
+     * 
+     * @param connection 客户端连接
+     * @return 如果该连接已在登录阶段通过认证则返回true
+     */
+    public static boolean isVerified(ClientConnection connection) {
+        AuthContext context = AuthContext.of(connection);
+        return context != null && context.isLoginVerified();
+    }
+    
+    /**
+     * 获取等待令牌响应的登录连接数
+     * 
+     * @return 等待中的登录连接数
+     */
+    public static int getPendingCount() {
+        return pendingLogins.size();
+    }
+    
+    /**
+     * 获取登录连接的玩家名称
+     */
+    private static String getPlayerName(ServerLoginNetworkHandler handler) {
+        GameProfile profile = ((ServerLoginNetworkHandlerAccessor) handler).getProfile();
+        return profile != null && profile.getName() != null ? profile.getName() : "未知玩家";
+    }
+    
+    /**
+     * 等待令牌响应的登录认证
+     */
+    private static class PendingLogin {
+        private final AuthContext context;
+        private final String playerName;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private volatile HashedTimingWheel.Timeout timeout;
+        
+        PendingLogin(AuthContext context, String playerName) {
+            this.context = context;
+            this.playerName = playerName;
+        }
+    }
+}
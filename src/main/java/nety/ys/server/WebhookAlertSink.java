@@ -0,0 +1,72 @@
+package nety.ys.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 以HTTP POST发送到Webhook的警报输出
+ * 每批事件作为一个JSON数组发送；5xx、408、429和网络错误会重试，其他4xx直接丢弃这一批
+ *
+ * @author nety.ys
+ */
+public class WebhookAlertSink extends BatchingAlertSink {
+    
+    private final URL url;
+    private final int timeoutMillis;
+    
+    public WebhookAlertSink(URL url, int timeoutMillis, int capacity, int batchSize, long flushIntervalMillis,
+                            int maxRetries, long retryBackoffMillis) {
+        super("Webhook", capacity, batchSize, flushIntervalMillis, maxRetries, retryBackoffMillis);
+        this.url = url;
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    @Override
+    protected void deliver(List<String> batch) throws IOException {
+        byte[] body = ("[" + String.join(",", batch) + "]").getBytes(StandardCharsets.UTF_8);
+        
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            connection.setRequestProperty("User-Agent", "TokenAuth-Mod/1.1.5");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            
+            int responseCode = connection.getResponseCode();
+            // 读完响应体，使连接可以被复用
+            try (InputStream in = responseCode < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    in.readAllBytes();
+                }
+            }
+            
+            if (responseCode >= 200 && responseCode < 300) {
+                return;
+            }
+            String message = "Webhook返回HTTP " + responseCode;
+            if (responseCode >= 400 && responseCode < 500 && responseCode != 408 && responseCode != 429) {
+                throw new PermanentFailureException(message);
+            }
+            throw new IOException(message);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+    
+    @Override
+    public String getStatus() {
+        return super.getStatus() + " " + url.getHost();
+    }
+}
@@ -260,7 +260,7 @@ public class TokenCommand {
             Collection<ServerPlayerEntity> players = context.getSource().getServer().getPlayerManager().getPlayerList();
             
             List<String> authenticatedPlayers = players.stream()
-                .filter(player -> AuthSessionManager.isPlayerAuthenticated(player.getUuid().toString()))
+                .filter(player -> AuthSessionManager.isPlayerAuthenticated(player))
                 .map(player -> player.getName().getString())
                 .collect(Collectors.toList());
             
@@ -298,7 +298,7 @@ public class TokenCommand {
                 return 0;
             }
             
-            AuthSessionManager.removePlayerAuthentication(player.getUuid().toString());
+            AuthSessionManager.removePlayerAuthentication(player);
             context.getSource().sendFeedback(
                 Text.literal("§a已移除玩家 §b" + playerName + " §a的认证状态"), true);
             return 1;
@@ -19,9 +19,15 @@ import nety.ys.TokenAuthMod;
 import nety.ys.config.KeyGenerator;
 import nety.ys.config.ModConfig;
 import nety.ys.config.SimpleConfigManager;
+import nety.ys.server.AuthAlertService;
+import nety.ys.server.AuthScheduler;
 import nety.ys.server.AuthSessionManager;
+import nety.ys.server.ConnectionFilter;
+import nety.ys.server.HandshakeRateLimiter;
 import nety.ys.util.EmailAlertTest;
 import nety.ys.util.EmailNotifier;
+import nety.ys.util.FailedAuthLogger;
+import nety.ys.util.IPGeolocationUtil;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -156,8 +162,9 @@ public class TokenCommandUnified {
         help.append(Text.literal("§e/token debug auth §7- 测试认证系统\n\n"));
         
         help.append(Text.literal("§aIP管理命令:\n"));
-        help.append(Text.literal("§e/token block-ip <IP> [分钟] §7- 阻止IP地址\n"));
-        help.append(Text.literal("§e/token unblock-ip <IP> §7- 解除阻止IP地址\n"));
+        help.append(Text.literal("§e/token block-ip <IP或CIDR> [分钟] §7- 阻止IP地址或网段\n"));
+        help.append(Text.literal("§e/token unblock-ip <IP或CIDR> §7- 解除阻止IP地址或网段\n"));
+        help.append(Text.literal("§7网段和IPv6地址需要加引号，如 \"203.0.113.0/24\"\n"));
         help.append(Text.literal("§e/token list-blocked-ips §7- 列出被阻止的IP\n\n"));
         
         help.append(Text.literal("§a玩家管理命令:\n"));
@@ -394,6 +401,8 @@ public class TokenCommandUnified {
     private static int reloadConfig(CommandContext<ServerCommandSource> context) {
         try {
             TokenAuthMod.getInstance().getConfigManager().reloadServerConfig();
+            IPGeolocationUtil.reloadProviders();
+            HandshakeRateLimiter.initialize(TokenAuthMod.getInstance().getConfigManager().getServerConfig());
             context.getSource().sendFeedback(Text.literal("§a配置已重新加载"), true);
             return 1;
         } catch (Exception e) {
@@ -463,6 +472,12 @@ public class TokenCommandUnified {
             status.append(Text.literal("§a活跃会话数: §b" + AuthSessionManager.getActiveSessionCount() + "\n"));
             status.append(Text.literal("§a已认证玩家数: §b" + AuthSessionManager.getAuthenticatedPlayerCount() + "\n"));
             status.append(Text.literal("§a被阻止IP数: §b" + AuthSessionManager.getBlockedIPCount() + "\n"));
+            status.append(Text.literal("§a已超时会话数: §b" + AuthSessionManager.getExpiredSessionCount() + "\n"));
+            status.append(Text.literal("§a已到期IP阻止数: §b" + AuthSessionManager.getExpiredIPBlockCount() + "\n"));
+            status.append(Text.literal("§a被限流的握手次数: §b" + HandshakeRateLimiter.getRejectedCount() + "\n"));
+            status.append(Text.literal("§a接受时关闭的连接数: §b" + ConnectionFilter.getRejectedCount() + "\n"));
+            status.append(Text.literal("§a待执行定时任务数: §b" + AuthScheduler.getPendingCount() + "\n"));
+            status.append(Text.literal("§a待认证超时玩家数: §b" + AuthScheduler.getPendingPlayerTimeoutCount() + "\n"));
             
             // 安全设置
             status.append(Text.literal("§a最大尝试次数/IP: §b" + config.maxAttemptsPerIP + "\n"));
@@ -473,9 +488,17 @@ public class TokenCommandUnified {
             
             // CSV记录设置
             status.append(Text.literal("§aCSV记录: " + (config.enableCSVLogging ? "§2启用" : "§c禁用") + "\n"));
+            status.append(Text.literal("§aCSV已写入/待写入/已丢弃: §b" + FailedAuthLogger.getWrittenCount() + "/"
+                + FailedAuthLogger.getQueuedCount() + "/" + FailedAuthLogger.getDroppedCount() + "\n"));
+            status.append(Text.literal("§a地理位置缓存命中/未命中: §b" + IPGeolocationUtil.getCacheHitCount() + "/"
+                + IPGeolocationUtil.getCacheMissCount() + " §a(缓存条目: §b" + IPGeolocationUtil.getCacheSize() + "§a)\n"));
             
             // 邮件警报设置
             status.append(Text.literal("§a邮件警报: " + (config.enableEmailAlerts ? "§2启用" : "§c禁用") + "\n"));
+            status.append(Text.literal("§a警报队列/邮件队列待发送: §b" + AuthAlertService.getQueuedCount() + "/"
+                + EmailNotifier.getQueuedCount() + " §a(已丢弃: §b" + AuthAlertService.getDroppedCount() + "/"
+                + EmailNotifier.getDroppedCount() + "§a)\n"));
+            status.append(Text.literal("§a警报输出: §b" + AuthAlertService.getSinkStatus() + "\n"));
             status.append(Text.literal("§aSMTP服务器: §b" + (config.smtpHost.isEmpty() ? "未配置" : config.smtpHost) + "\n"));
             status.append(Text.literal("§a发件人: §b" + (config.emailFromAddress.isEmpty() ? "未配置" : config.emailFromAddress) + "\n"));
             status.append(Text.literal("§a收件人: §b" + (config.emailToAddress.isEmpty() ? "未配置" : config.emailToAddress)));
@@ -503,6 +526,9 @@ public class TokenCommandUnified {
             context.getSource().sendFeedback(
                 Text.literal("§aIP地址 §e" + ipAddress + " §a已被阻止 §b" + minutes + " §a分钟"), true);
             return 1;
+        } catch (IllegalArgumentException e) {
+            context.getSource().sendError(Text.literal("§c阻止IP失败: " + e.getMessage()));
+            return 0;
         } catch (Exception e) {
             TokenAuthMod.LOGGER.error("阻止IP时出错", e);
             context.getSource().sendError(Text.literal("§c阻止IP失败: " + e.getMessage()));
@@ -523,6 +549,9 @@ public class TokenCommandUnified {
             context.getSource().sendFeedback(
                 Text.literal("§aIP地址 §e" + ipAddress + " §a的阻止已解除"), true);
             return 1;
+        } catch (IllegalArgumentException e) {
+            context.getSource().sendError(Text.literal("§c解除阻止IP失败: " + e.getMessage()));
+            return 0;
         } catch (Exception e) {
             TokenAuthMod.LOGGER.error("解除阻止IP时出错", e);
             context.getSource().sendError(Text.literal("§c解除阻止IP失败: " + e.getMessage()));
@@ -570,7 +599,7 @@ public class TokenCommandUnified {
             Collection<ServerPlayerEntity> players = context.getSource().getServer().getPlayerManager().getPlayerList();
             
             List<String> authenticatedPlayers = players.stream()
-                .filter(player -> AuthSessionManager.isPlayerAuthenticated(player.getUuid().toString()))
+                .filter(player -> AuthSessionManager.isPlayerAuthenticated(player))
                 .map(player -> player.getName().getString())
                 .collect(Collectors.toList());
             
@@ -608,7 +637,7 @@ public class TokenCommandUnified {
                 return 0;
             }
             
-            AuthSessionManager.removePlayerAuthentication(player.getUuid().toString());
+            AuthSessionManager.removePlayerAuthentication(player);
             context.getSource().sendFeedback(
                 Text.literal("§a已移除玩家 §b" + playerName + " §a的认证状态"), true);
             return 1;
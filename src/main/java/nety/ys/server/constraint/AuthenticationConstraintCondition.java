@@ -34,16 +34,15 @@ public class AuthenticationConstraintCondition implements nety.ys.constraint.api
      */
     @Override
     public boolean shouldConstrain(ServerPlayerEntity player, nety.ys.constraint.api.ConstraintType constraintType, nety.ys.constraint.api.ConstraintContext context) {
-        // 检查玩家是否已认证
-        boolean isAuthenticated = AuthSessionManager.isPlayerAuthenticated(player.getUuid().toString());
+        // 认证状态保存在玩家实体上，这里每tick都会调用，只做一次字段读取
+        boolean shouldConstrain = !AuthSessionManager.isPlayerAuthenticated(player);
         
-        // 如果玩家未认证，则应该被约束
-        boolean shouldConstrain = !isAuthenticated;
-        
-        if (shouldConstrain) {
-            DebugLogger.debug("玩家 {} 未认证，应用约束类型: {}", player.getName().getString(), constraintType);
-        } else {
-            DebugLogger.debug("玩家 {} 已认证，不应用约束", player.getName().getString());
+        if (DebugLogger.isEnabled(DebugLogger.Category.DEBUG)) {
+            if (shouldConstrain) {
+                DebugLogger.debug("玩家 {} 未认证，应用约束类型: {}", player.getName().getString(), constraintType);
+            } else {
+                DebugLogger.debug("玩家 {} 已认证，不应用约束", player.getName().getString());
+            }
         }
         
         return shouldConstrain;
@@ -6,7 +6,10 @@ import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.network.ServerPlayNetworkHandler;
 import nety.ys.TokenAuthMod;
+import nety.ys.server.AuthContext;
+import nety.ys.server.AuthScheduler;
 import nety.ys.server.AuthSessionManager;
+import nety.ys.server.LoginAuthHandler;
 import nety.ys.server.constraint.ConstraintManager;
 import nety.ys.util.FailedAuthLogger;
 import nety.ys.server.AuthAlertService;
@@ -14,7 +17,6 @@ import nety.ys.config.SimpleConfigManager;
 import nety.ys.util.DebugLogger;
 
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 
 /**
  * 认证事件处理器
@@ -36,8 +38,15 @@ public class AuthEventHandler {
         
         TokenAuthMod.LOGGER.info("玩家 {} (UUID: {}) 尝试加入服务器", player.getName().getString(), player.getUuid().toString());
         
+        // 已在登录阶段通过认证的连接不再发送挑战
+        if (LoginAuthHandler.isVerified(handler.connection)) {
+            AuthSessionManager.markPlayerAsAuthenticated(player);
+            DebugLogger.auth(() -> "玩家 " + player.getName().getString() + " 已在登录阶段通过认证，允许加入");
+            return;
+        }
+        
         // 检查玩家是否已通过认证
-        if (AuthSessionManager.isPlayerAuthenticated(player.getUuid().toString())) {
+        if (AuthSessionManager.isPlayerAuthenticated(player)) {
             TokenAuthMod.LOGGER.info("玩家 {} 已通过认证，允许加入", player.getName().getString());
         } else {
             TokenAuthMod.LOGGER.info("玩家 {} 未通过认证，发送认证挑战", player.getName().getString());
@@ -47,7 +56,7 @@ public class AuthEventHandler {
                 // 检查约束系统是否可用
                 Class.forName("nety.ys.constraint.api.ConstraintAPI");
                 ConstraintManager.applyConstraintsToPlayer(player);
-                DebugLogger.debug("已为未认证玩家 {} 添加约束", player.getName().getString());
+                DebugLogger.debug(() -> "已为未认证玩家 " + player.getName().getString() + " 添加约束");
             } catch (ClassNotFoundException e) {
                 DebugLogger.debug("约束系统不可用，跳过约束添加");
             } catch (Exception e) {
@@ -61,7 +70,7 @@ public class AuthEventHandler {
                 // 断开连接
                 player.networkHandler.disconnect(net.minecraft.text.Text.literal("认证系统错误，请稍后再试"));
             } else {
-                DebugLogger.auth("已向玩家 {} 发送认证挑战，等待响应", player.getName().getString());
+                DebugLogger.auth(() -> "已向玩家 " + player.getName().getString() + " 发送认证挑战，等待响应");
                 // 给予玩家一定时间完成认证，否则断开连接
                 scheduleAuthenticationTimeout(player, server);
             }
@@ -79,21 +88,19 @@ public class AuthEventHandler {
         SimpleConfigManager configManager = (SimpleConfigManager) nety.ys.TokenAuthMod.getInstance().getConfigManager();
         nety.ys.config.ModConfig.ServerConfig config = configManager.getServerConfig();
         
-        DebugLogger.auth("安排玩家 {} 的认证超时检查，超时时间: {} 毫秒",
-            player.getName().getString(), config.responseTimeout);
+        DebugLogger.auth(() -> "安排玩家 " + player.getName().getString() + " 的认证超时检查，超时时间: " + config.responseTimeout + " 毫秒");
         
-        // 使用调度器而不是阻塞服务器主线程
-        java.util.concurrent.ScheduledExecutorService scheduler = java.util.concurrent.Executors.newSingleThreadScheduledExecutor();
-        scheduler.schedule(() -> {
+        // 使用共享的认证调度器，认证成功或断开连接时取消
+        AuthScheduler.schedulePlayerTimeout(player.getUuid().toString(), () -> {
             // 在服务器主线程中执行检查
             server.execute(() -> {
                 try {
                     // 检查玩家是否已通过认证
-                    if (!AuthSessionManager.isPlayerAuthenticated(player.getUuid().toString()) && player.networkHandler != null) {
+                    if (!AuthSessionManager.isPlayerAuthenticated(player) && player.networkHandler != null) {
                         TokenAuthMod.LOGGER.warn("玩家 {} 认证超时，断开连接", player.getName().getString());
                         
                         // 获取玩家IP地址
-                        InetAddress playerAddress = ((InetSocketAddress) player.networkHandler.connection.getAddress()).getAddress();
+                        InetAddress playerAddress = AuthContext.getOrCreate(player.networkHandler.connection).getAddress();
                         
                         // 检查是否需要记录认证超时到CSV文件
                         if (config.logTimeoutAttempts) {
@@ -118,16 +125,13 @@ public class AuthEventHandler {
                         
                         player.networkHandler.disconnect(net.minecraft.text.Text.literal("认证超时，请使用支持令牌认证的客户端"));
                     } else {
-                        DebugLogger.auth("玩家 {} 已通过认证或已断开连接，取消超时检查", player.getName().getString());
+                        DebugLogger.auth(() -> "玩家 " + player.getName().getString() + " 已通过认证或已断开连接，取消超时检查");
                     }
                 } catch (Exception e) {
                     TokenAuthMod.LOGGER.error("检查认证超时时出错", e);
                 }
             });
-            
-            // 关闭调度器
-            scheduler.shutdown();
-        }, config.responseTimeout, java.util.concurrent.TimeUnit.MILLISECONDS);
+        }, config.responseTimeout);
     }
     
     /**
@@ -139,9 +143,18 @@ public class AuthEventHandler {
     public static void onPlayerDisconnect(ServerPlayNetworkHandler handler, MinecraftServer server) {
         ServerPlayerEntity player = handler.player;
         
-        DebugLogger.debug("玩家 {} 已断开连接", player.getName().getString());
+        DebugLogger.debug(() -> "玩家 " + player.getName().getString() + " 已断开连接");
         
-        // 清理玩家的认证状态
-        AuthSessionManager.removePlayerAuthentication(player.getUuid().toString());
+        // 取消尚未执行的认证超时检查
+        if (AuthScheduler.cancelPlayerTimeout(player.getUuid().toString())) {
+            DebugLogger.auth(() -> "玩家 " + player.getName().getString() + " 在认证前断开连接，取消超时检查");
+        }
+        
+        // 清理玩家的认证状态，未响应的挑战会话随连接一起移除
+        AuthSessionManager.removePlayerAuthentication(player);
+        AuthContext context = AuthContext.of(handler.connection);
+        if (context != null) {
+            context.clearSession();
+        }
     }
 }
\ No newline at end of file
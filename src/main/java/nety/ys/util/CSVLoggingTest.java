@@ -46,6 +46,12 @@ public class CSVLoggingTest {
                 // 记录测试数据
                 FailedAuthLogger.logFailedAuth(testPlayerName, testIP, testReason);
                 
+                // 记录由后台线程异步写入，等待其写入磁盘
+                if (!FailedAuthLogger.flush(15000)) {
+                    TokenAuthMod.LOGGER.error("等待CSV记录写入超时");
+                    return false;
+                }
+                
                 // 检查CSV文件是否存在
                 if (!FailedAuthLogger.csvFileExists()) {
                     TokenAuthMod.LOGGER.error("CSV文件未创建");
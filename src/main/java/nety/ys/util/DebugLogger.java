@@ -2,16 +2,95 @@ package nety.ys.util;
 
 import nety.ys.TokenAuthMod;
 import nety.ys.config.ModConfig;
-import nety.ys.config.SimpleConfigManager;
+
+import java.util.Locale;
+import java.util.function.Supplier;
 
 /**
  * 调试日志管理器
- * 根据配置决定是否输出调试信息
+ * 根据配置决定是否输出调试信息。
+ * 启用的类别缓存在一个volatile字段中，加载配置时更新，关闭时每次调用只需读取一次字段；
+ * 参数需要额外计算（Base64编码、字符串拼接等）时应使用Supplier重载，关闭时不会计算
  * 
  * @author nety.ys
  */
 public class DebugLogger {
     
+    /**
+     * 调试日志类别
+     */
+    public enum Category {
+        DEBUG("[DEBUG] "),
+        VERBOSE("[VERBOSE] "),
+        AUTH("[AUTH] "),
+        CSV("[CSV] "),
+        EMAIL("[EMAIL] ");
+        
+        private final String prefix;
+        private final int mask = 1 << ordinal();
+        
+        Category(String prefix) {
+            this.prefix = prefix;
+        }
+    }
+    
+    private static final int ALL_CATEGORIES = (1 << Category.values().length) - 1;
+    
+    // 启用的类别的位掩码，0表示关闭调试模式
+    private static volatile int enabledCategories;
+    
+    /**
+     * 根据服务器配置更新启用的类别，在加载和保存配置时调用
+     * 
+     * @param config 服务器配置
+     */
+    public static void configure(ModConfig.ServerConfig config) {
+        enabledCategories = config != null && config.debugMode ? parseCategories(config.debugCategories) : 0;
+    }
+    
+    /**
+     * 解析以逗号分隔的类别列表，空值、all或*表示所有类别
+     */
+    private static int parseCategories(String value) {
+        if (value == null) {
+            return ALL_CATEGORIES;
+        }
+        String trimmed = value.trim().replace("\"", "");
+        if (trimmed.isEmpty() || trimmed.equals("*") || trimmed.equalsIgnoreCase("all")) {
+            return ALL_CATEGORIES;
+        }
+        
+        int mask = 0;
+        for (String name : trimmed.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            try {
+                mask |= Category.valueOf(name.toUpperCase(Locale.ROOT)).mask;
+            } catch (IllegalArgumentException e) {
+                TokenAuthMod.LOGGER.warn("未知的调试日志类别: {}", name);
+            }
+        }
+        return mask;
+    }
+    
+    /**
+     * 检查指定类别的调试日志是否启用
+     * 
+     * @param category 日志类别
+     * @return 如果启用则返回true
+     */
+    public static boolean isEnabled(Category category) {
+        return (enabledCategories & category.mask) != 0;
+    }
+    
+    private static void log(Category category, Supplier<String> message) {
+        if ((enabledCategories & category.mask) != 0) {
+            TokenAuthMod.LOGGER.info(category.prefix + message.get());
+        }
+    }
+    
     /**
      * 输出调试信息
      * 只有在调试模式下才会输出
@@ -20,8 +99,8 @@ public class DebugLogger {
      * @param args 参数
      */
     public static void debug(String message, Object... args) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[DEBUG] " + message, args);
+        if ((enabledCategories & Category.DEBUG.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.DEBUG.prefix + message, args);
         }
     }
     
@@ -32,11 +111,21 @@ public class DebugLogger {
      * @param message 日志消息
      */
     public static void debug(String message) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[DEBUG] " + message);
+        if ((enabledCategories & Category.DEBUG.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.DEBUG.prefix + message);
         }
     }
     
+    /**
+     * 延迟构建消息的调试信息
+     * 只有在启用时才会调用message构建消息
+     * 
+     * @param message 消息构建函数
+     */
+    public static void debug(Supplier<String> message) {
+        log(Category.DEBUG, message);
+    }
+    
     /**
      * 输出调试信息（带异常）
      * 只有在调试模式下才会输出
@@ -45,8 +134,8 @@ public class DebugLogger {
      * @param throwable 异常对象
      */
     public static void debug(String message, Throwable throwable) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[DEBUG] " + message, throwable);
+        if ((enabledCategories & Category.DEBUG.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.DEBUG.prefix + message, throwable);
         }
     }
     
@@ -58,8 +147,8 @@ public class DebugLogger {
      * @param args 参数
      */
     public static void verbose(String message, Object... args) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[VERBOSE] " + message, args);
+        if ((enabledCategories & Category.VERBOSE.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.VERBOSE.prefix + message, args);
         }
     }
     
@@ -70,11 +159,21 @@ public class DebugLogger {
      * @param message 日志消息
      */
     public static void verbose(String message) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[VERBOSE] " + message);
+        if ((enabledCategories & Category.VERBOSE.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.VERBOSE.prefix + message);
         }
     }
     
+    /**
+     * 延迟构建消息的详细信息
+     * 只有在启用时才会调用message构建消息
+     * 
+     * @param message 消息构建函数
+     */
+    public static void verbose(Supplier<String> message) {
+        log(Category.VERBOSE, message);
+    }
+    
     /**
      * 输出详细信息（带异常）
      * 用于记录详细的认证过程信息，在调试模式下输出
@@ -83,8 +182,8 @@ public class DebugLogger {
      * @param throwable 异常对象
      */
     public static void verbose(String message, Throwable throwable) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[VERBOSE] " + message, throwable);
+        if ((enabledCategories & Category.VERBOSE.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.VERBOSE.prefix + message, throwable);
         }
     }
     
@@ -96,8 +195,8 @@ public class DebugLogger {
      * @param args 参数
      */
     public static void auth(String message, Object... args) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[AUTH] " + message, args);
+        if ((enabledCategories & Category.AUTH.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.AUTH.prefix + message, args);
         }
     }
     
@@ -108,40 +207,32 @@ public class DebugLogger {
      * @param message 日志消息
      */
     public static void auth(String message) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[AUTH] " + message);
+        if ((enabledCategories & Category.AUTH.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.AUTH.prefix + message);
         }
     }
     
     /**
-     * 输出认证过程信息（带异常）
-     * 在调试模式下输出详细信息，否则只输出简要信息
+     * 延迟构建消息的认证过程信息
+     * 只有在启用时才会调用message构建消息
      * 
-     * @param message 日志消息
-     * @param throwable 异常对象
+     * @param message 消息构建函数
      */
-    public static void auth(String message, Throwable throwable) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[AUTH] " + message, throwable);
-        }
+    public static void auth(Supplier<String> message) {
+        log(Category.AUTH, message);
     }
     
     /**
-     * 检查是否启用了调试模式
+     * 输出认证过程信息（带异常）
+     * 在调试模式下输出详细信息，否则只输出简要信息
      * 
-     * @return 如果启用了调试模式则返回true
+     * @param message 日志消息
+     * @param throwable 异常对象
      */
-    private static boolean isDebugMode() {
-        try {
-            SimpleConfigManager configManager = (SimpleConfigManager) TokenAuthMod.getInstance().getConfigManager();
-            if (configManager != null) {
-                ModConfig.ServerConfig config = configManager.getServerConfig();
-                return config != null && config.debugMode;
-            }
-        } catch (Exception e) {
-            // 如果获取配置失败，默认不输出调试信息
+    public static void auth(String message, Throwable throwable) {
+        if ((enabledCategories & Category.AUTH.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.AUTH.prefix + message, throwable);
         }
-        return false;
     }
     
     /**
@@ -152,8 +243,8 @@ public class DebugLogger {
      * @param args 参数
      */
     public static void csv(String message, Object... args) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[CSV] " + message, args);
+        if ((enabledCategories & Category.CSV.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.CSV.prefix + message, args);
         }
     }
     
@@ -164,11 +255,21 @@ public class DebugLogger {
      * @param message 日志消息
      */
     public static void csv(String message) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[CSV] " + message);
+        if ((enabledCategories & Category.CSV.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.CSV.prefix + message);
         }
     }
     
+    /**
+     * 延迟构建消息的CSV调试信息
+     * 只有在启用时才会调用message构建消息
+     * 
+     * @param message 消息构建函数
+     */
+    public static void csv(Supplier<String> message) {
+        log(Category.CSV, message);
+    }
+    
     /**
      * 输出邮件警报相关的调试信息
      * 只有在调试模式下才会输出
@@ -177,8 +278,8 @@ public class DebugLogger {
      * @param args 参数
      */
     public static void email(String message, Object... args) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[EMAIL] " + message, args);
+        if ((enabledCategories & Category.EMAIL.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.EMAIL.prefix + message, args);
         }
     }
     
@@ -189,8 +290,18 @@ public class DebugLogger {
      * @param message 日志消息
      */
     public static void email(String message) {
-        if (isDebugMode()) {
-            TokenAuthMod.LOGGER.info("[EMAIL] " + message);
+        if ((enabledCategories & Category.EMAIL.mask) != 0) {
+            TokenAuthMod.LOGGER.info(Category.EMAIL.prefix + message);
         }
     }
+    
+    /**
+     * 延迟构建消息的邮件调试信息
+     * 只有在启用时才会调用message构建消息
+     * 
+     * @param message 消息构建函数
+     */
+    public static void email(Supplier<String> message) {
+        log(Category.EMAIL, message);
+    }
 }
\ No newline at end of file
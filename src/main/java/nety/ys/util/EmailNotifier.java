@@ -1,28 +1,45 @@
 package nety.ys.util;
 
 import nety.ys.TokenAuthMod;
+import nety.ys.config.ModConfig;
 
 import javax.mail.*;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * 邮件通知工具类
  * 负责发送认证失败和超时的警报邮件
- * 使用标准JavaMail API，更加可靠和兼容
+ * 使用标准JavaMail API，更加可靠和兼容；
+ * 所有邮件在同一个线程中按优先级发送，排队的邮件数有上限；
+ * 每个SMTP配置保持一个长连接，空闲一段时间后关闭
  * 
  * @author nety.ys
  */
 public class EmailNotifier {
     
-    private static final ExecutorService emailExecutor = Executors.newSingleThreadExecutor();
+    /**
+     * SMTP连接空闲多久后关闭（毫秒），多数服务器会在几分钟内断开空闲连接
+     */
+    private static final long IDLE_TIMEOUT_MS = 60000;
+    
+    /**
+     * 邮件线程空闲IDLE_TIMEOUT_MS后退出，退出前关闭该线程的所有SMTP连接
+     */
+    private static final PriorityTaskExecutor emailExecutor =
+        new PriorityTaskExecutor("TokenAuth-Email", 1, IDLE_TIMEOUT_MS, EmailNotifier::closeTransports);
+    
+    /**
+     * 按SMTP配置保存的长连接，每个邮件线程各自持有
+     */
+    private static final ThreadLocal<Map<String, PooledTransport>> transports = ThreadLocal.withInitial(HashMap::new);
     private static final Pattern EMAIL_PATTERN = Pattern.compile("^[A-Za-z0-9+_.-]+@([A-Za-z0-9.-]+\\.[A-Za-z]{2,})$");
     
     /**
@@ -45,8 +62,34 @@ public class EmailNotifier {
             String location,
             String reason,
             EmailConfig config) {
+        return sendIntrusionAlert(serverName, playerName, timestamp, ipAddress, location, reason, config,
+                                  PriorityTaskExecutor.Priority.HIGH);
+    }
+    
+    /**
+     * 以指定优先级发送非法闯入报告邮件
+     * 
+     * @param serverName 服务器名称
+     * @param playerName 玩家名称
+     * @param timestamp 时间戳
+     * @param ipAddress IP地址
+     * @param location 地理位置
+     * @param reason 原因（认证失败或认证超时）
+     * @param config 邮件配置
+     * @param priority 在邮件队列中的优先级，重复的警报应使用LOW
+     * @return CompletableFuture<Boolean> 表示发送是否成功，邮件因队列已满被丢弃时为false
+     */
+    public static CompletableFuture<Boolean> sendIntrusionAlert(
+            String serverName,
+            String playerName,
+            String timestamp,
+            String ipAddress,
+            String location,
+            String reason,
+            EmailConfig config,
+            PriorityTaskExecutor.Priority priority) {
         
-        return CompletableFuture.supplyAsync(() -> {
+        return submit(priority, () -> {
             try {
                 DebugLogger.email("正在发送非法闯入报告邮件...");
                 DebugLogger.email("邮件配置检查 - SMTP服务器: {}, 端口: {}, 用户名: {}, 发件人: {}, 收件人: {}",
@@ -77,11 +120,64 @@ public class EmailNotifier {
                 TokenAuthMod.LOGGER.error("发送非法闯入报告邮件时出错", e);
                 return false;
             }
-        }, emailExecutor);
+        });
+    }
+    
+    /**
+     * 发送任意主题和内容的通知邮件
+     * 
+     * @param subject 邮件主题
+     * @param content 邮件内容
+     * @param config 邮件配置
+     * @return CompletableFuture<Boolean> 表示发送是否成功
+     */
+    public static CompletableFuture<Boolean> sendNotification(String subject, String content, EmailConfig config) {
+        return submit(PriorityTaskExecutor.Priority.HIGH, () -> {
+            try {
+                if (!config.isValid()) {
+                    TokenAuthMod.LOGGER.error("邮件配置无效，无法发送邮件");
+                    return false;
+                }
+                
+                DebugLogger.email("邮件内容: {}", content);
+                return sendEmailWithJavaMail(config, subject, content);
+            } catch (Exception e) {
+                TokenAuthMod.LOGGER.error("发送通知邮件时出错", e);
+                return false;
+            }
+        });
+    }
+    
+    /**
+     * 将邮件任务加入发送队列
+     * 
+     * @return 发送结果，邮件被丢弃时为false
+     */
+    private static CompletableFuture<Boolean> submit(PriorityTaskExecutor.Priority priority, Supplier<Boolean> task) {
+        applyQueueConfig();
+        return emailExecutor.submit(priority, task).exceptionally(e -> {
+            TokenAuthMod.LOGGER.warn("邮件未发送: {}", e.getMessage());
+            return false;
+        });
+    }
+    
+    /**
+     * 按当前服务器配置更新邮件队列的容量和拒绝策略
+     */
+    private static void applyQueueConfig() {
+        try {
+            ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+            emailExecutor.configure(config.alertQueueCapacity,
+                                    PriorityTaskExecutor.RejectionPolicy.parse(config.alertQueueRejectionPolicy));
+        } catch (Exception e) {
+            // 配置不可用时保持当前设置
+        }
     }
     
     /**
      * 使用JavaMail API发送邮件
+     * 同一SMTP配置复用已认证的连接，连续发送的多封邮件只需一次握手；
+     * 复用的连接发送失败时重新连接并重试一次，新建连接失败（包括认证失败）时不重试
      * 
      * @param config 邮件配置
      * @param subject 邮件主题
@@ -92,88 +188,34 @@ public class EmailNotifier {
         try {
             DebugLogger.email("使用JavaMail API发送邮件到: {}, SSL启用: {}", config.getToAddress(), config.isEnableSSL());
             DebugLogger.email("邮件主题: {}", subject);
-            DebugLogger.email("邮件内容预览: {}", content.length() > 100 ? content.substring(0, 100) + "..." : content);
-            
-            // 创建邮件会话属性
-            Properties props = new Properties();
-            props.put("mail.smtp.host", config.getSmtpHost());
-            props.put("mail.smtp.port", config.getSmtpPort());
-            props.put("mail.smtp.auth", "true");
-            props.put("mail.smtp.connectiontimeout", "10000");
-            props.put("mail.smtp.timeout", "15000");
-            
-            // 添加更多SSL/TLS配置以提高兼容性
-            props.put("mail.smtp.ssl.protocols", "TLSv1.2 TLSv1.3");
-            
-            // 根据SSL配置设置不同的加密方式
-            if (config.isEnableSSL()) {
-                // 启用直接SSL连接
-                props.put("mail.smtp.ssl.enable", "true");
-                props.put("mail.smtp.starttls.enable", "false");
-                props.put("mail.smtp.starttls.required", "false");
-                props.put("mail.smtp.ssl.trust", "*");
-                props.put("mail.smtp.ssl.socketFactory", "javax.net.ssl.SSLSocketFactory");
-                props.put("mail.smtp.socketFactory.port", config.getSmtpPort());
-                props.put("mail.smtp.socketFactory.fallback", "false");
-                DebugLogger.email("配置为SSL模式，端口: {}", config.getSmtpPort());
-            } else {
-                // 使用STARTTLS
-                props.put("mail.smtp.ssl.enable", "false");
-                props.put("mail.smtp.starttls.enable", "true");
-                props.put("mail.smtp.starttls.required", "true");
-                props.put("mail.smtp.ssl.trust", "*");
-                DebugLogger.email("配置为STARTTLS模式，端口: {}", config.getSmtpPort());
-            }
-            
-            // Gmail特定配置（如果启用了SSL，则不需要额外配置）
-            if (!config.isEnableSSL() && config.getSmtpHost().contains("gmail.com")) {
-                props.put("mail.smtp.ssl.socketFactory", "javax.net.ssl.SSLSocketFactory");
-                props.put("mail.smtp.socketFactory.port", config.getSmtpPort());
-                props.put("mail.smtp.socketFactory.fallback", "false");
-                props.put("mail.smtp.ssl.socketFactory.port", config.getSmtpPort());
-                DebugLogger.email("检测到Gmail SMTP，应用特定配置");
-            }
+            DebugLogger.email(() -> "邮件内容预览: " + (content.length() > 100 ? content.substring(0, 100) + "..." : content));
             
-            // 添加调试信息
-            props.put("mail.debug", "true");
-            
-            DebugLogger.email("正在创建邮件会话，SMTP服务器: {}:{}", config.getSmtpHost(), config.getSmtpPort());
-            DebugLogger.email("认证用户名: {}", config.getUsername());
-            
-            // 创建邮件会话
-            Session session = Session.getInstance(props, new Authenticator() {
-                @Override
-                protected PasswordAuthentication getPasswordAuthentication() {
-                    DebugLogger.email("正在使用SMTP认证: {}", config.getUsername());
-                    return new PasswordAuthentication(config.getUsername(), config.getPassword());
-                }
-            });
-            
-            // 启用调试模式
-            session.setDebug(true);
-            DebugLogger.email("邮件会话调试模式已启用");
+            evictIdleTransports();
+            PooledTransport pooled = transports.get().computeIfAbsent(config.getConnectionKey(), key -> new PooledTransport(config));
             
             // 创建邮件消息
             DebugLogger.email("正在创建邮件消息...");
-            Message message = new MimeMessage(session);
+            Message message = new MimeMessage(pooled.session);
             message.setFrom(new InternetAddress(config.getFromAddress()));
             message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(config.getToAddress()));
             message.setSubject(subject);
             message.setText(content);
             message.setSentDate(new java.util.Date());
+            message.saveChanges();
             
             DebugLogger.email("邮件消息创建完成，发件人: {}, 收件人: {}",
                 config.getFromAddress(), config.getToAddress());
             
             // 发送邮件
             DebugLogger.email("开始发送邮件...");
-            Transport.send(message);
+            pooled.send(message);
             
             DebugLogger.email("邮件发送成功");
             return true;
             
         } catch (MessagingException e) {
-            if (e.getMessage() != null && e.getMessage().contains("Authentication failed")) {
+            if (e instanceof AuthenticationFailedException
+                    || (e.getMessage() != null && e.getMessage().contains("Authentication failed"))) {
                 TokenAuthMod.LOGGER.error("SMTP认证失败，请检查用户名和密码: {}", e.getMessage());
                 DebugLogger.email("SMTP认证失败详情: {}", e.toString());
             } else if (e instanceof SendFailedException ||
@@ -192,6 +234,143 @@ public class EmailNotifier {
         }
     }
     
+    /**
+     * 关闭当前线程中空闲时间超过IDLE_TIMEOUT_MS的SMTP连接
+     * 邮件线程空闲时整个线程会退出，这里处理的是线程仍在使用、但某个SMTP配置已不再使用的情况
+     */
+    private static void evictIdleTransports() {
+        long now = System.currentTimeMillis();
+        transports.get().values().removeIf(pooled -> {
+            if (now - pooled.lastUsed < IDLE_TIMEOUT_MS) {
+                return false;
+            }
+            DebugLogger.email("关闭空闲的SMTP连接: {}:{}", pooled.config.getSmtpHost(), pooled.config.getSmtpPort());
+            pooled.close();
+            return true;
+        });
+    }
+    
+    /**
+     * 关闭当前线程的所有SMTP连接，在邮件线程退出时调用
+     */
+    private static void closeTransports() {
+        Map<String, PooledTransport> pool = transports.get();
+        if (!pool.isEmpty()) {
+            DebugLogger.email("邮件线程空闲，关闭 {} 个SMTP连接", pool.size());
+        }
+        pool.values().forEach(PooledTransport::close);
+        transports.remove();
+    }
+    
+    /**
+     * 创建SMTP会话属性
+     */
+    private static Properties createSessionProperties(EmailConfig config) {
+        // 创建邮件会话属性
+        Properties props = new Properties();
+        props.put("mail.smtp.host", config.getSmtpHost());
+        props.put("mail.smtp.port", config.getSmtpPort());
+        props.put("mail.smtp.auth", "true");
+        props.put("mail.smtp.connectiontimeout", "10000");
+        props.put("mail.smtp.timeout", "15000");
+        
+        // 添加更多SSL/TLS配置以提高兼容性
+        props.put("mail.smtp.ssl.protocols", "TLSv1.2 TLSv1.3");
+        
+        // 根据SSL配置设置不同的加密方式
+        if (config.isEnableSSL()) {
+            // 启用直接SSL连接
+            props.put("mail.smtp.ssl.enable", "true");
+            props.put("mail.smtp.starttls.enable", "false");
+            props.put("mail.smtp.starttls.required", "false");
+            props.put("mail.smtp.ssl.trust", "*");
+            props.put("mail.smtp.ssl.socketFactory", "javax.net.ssl.SSLSocketFactory");
+            props.put("mail.smtp.socketFactory.port", config.getSmtpPort());
+            props.put("mail.smtp.socketFactory.fallback", "false");
+            DebugLogger.email("配置为SSL模式，端口: {}", config.getSmtpPort());
+        } else {
+            // 使用STARTTLS
+            props.put("mail.smtp.ssl.enable", "false");
+            props.put("mail.smtp.starttls.enable", "true");
+            props.put("mail.smtp.starttls.required", "true");
+            props.put("mail.smtp.ssl.trust", "*");
+            DebugLogger.email("配置为STARTTLS模式，端口: {}", config.getSmtpPort());
+        }
+        
+        // Gmail特定配置（如果启用了SSL，则不需要额外配置）
+        if (!config.isEnableSSL() && config.getSmtpHost().contains("gmail.com")) {
+            props.put("mail.smtp.ssl.socketFactory", "javax.net.ssl.SSLSocketFactory");
+            props.put("mail.smtp.socketFactory.port", config.getSmtpPort());
+            props.put("mail.smtp.socketFactory.fallback", "false");
+            props.put("mail.smtp.ssl.socketFactory.port", config.getSmtpPort());
+            DebugLogger.email("检测到Gmail SMTP，应用特定配置");
+        }
+        
+        // 仅在调试模式下输出JavaMail协议日志
+        props.put("mail.debug", String.valueOf(DebugLogger.isEnabled(DebugLogger.Category.EMAIL)));
+        
+        return props;
+    }
+    
+    /**
+     * 一个SMTP配置对应的会话和长连接
+     * 只在创建它的邮件线程中访问
+     */
+    private static final class PooledTransport {
+        final EmailConfig config;
+        final Session session;
+        Transport transport;
+        long lastUsed = System.currentTimeMillis();
+        
+        PooledTransport(EmailConfig config) {
+            this.config = config;
+            DebugLogger.email("正在创建邮件会话，SMTP服务器: {}:{}", config.getSmtpHost(), config.getSmtpPort());
+            this.session = Session.getInstance(createSessionProperties(config));
+            this.session.setDebug(DebugLogger.isEnabled(DebugLogger.Category.EMAIL));
+        }
+        
+        void send(Message message) throws MessagingException {
+            boolean reused = transport != null && transport.isConnected();
+            if (!reused) {
+                connect();
+            }
+            try {
+                transport.sendMessage(message, message.getAllRecipients());
+            } catch (SendFailedException e) {
+                // 收件人被拒绝，与连接无关
+                throw e;
+            } catch (MessagingException e) {
+                if (!reused) {
+                    throw e;
+                }
+                // 服务器可能已关闭空闲连接，重新连接后重试一次；重新连接时的认证失败直接抛出
+                DebugLogger.email("SMTP连接发送失败，重新连接后重试: {}", e.getMessage());
+                close();
+                connect();
+                transport.sendMessage(message, message.getAllRecipients());
+            }
+            lastUsed = System.currentTimeMillis();
+        }
+        
+        private void connect() throws MessagingException {
+            DebugLogger.email("正在连接SMTP服务器并认证: {}", config.getUsername());
+            transport = session.getTransport();
+            transport.connect(config.getSmtpHost(), Integer.parseInt(config.getSmtpPort().trim()),
+                              config.getUsername(), config.getPassword());
+        }
+        
+        void close() {
+            if (transport != null) {
+                try {
+                    transport.close();
+                } catch (MessagingException e) {
+                    DebugLogger.email("关闭SMTP连接时出错: {}", e.getMessage());
+                }
+                transport = null;
+            }
+        }
+    }
+    
     /**
      * 构建邮件内容
      * 
@@ -237,30 +416,47 @@ public class EmailNotifier {
         return EMAIL_PATTERN.matcher(email).matches();
     }
     
+    /**
+     * 获取正在排队的邮件数
+     * 
+     * @return 排队邮件数
+     */
+    public static int getQueuedCount() {
+        return emailExecutor.getQueuedCount();
+    }
+    
+    /**
+     * 获取因队列已满或服务关闭而丢弃的邮件数
+     * 
+     * @return 丢弃的邮件数
+     */
+    public static long getDroppedCount() {
+        return emailExecutor.getDroppedCount();
+    }
+    
     /**
      * 关闭邮件执行器
+     * 已排队的邮件按优先级继续发送，10秒内未发送完的邮件被丢弃；
+     * 邮件线程退出时关闭所有SMTP连接
      */
     public static void shutdown() {
         TokenAuthMod.LOGGER.info("正在关闭邮件通知服务...");
         
         if (emailExecutor != null && !emailExecutor.isShutdown()) {
-            emailExecutor.shutdown();
+            // 等待排队的邮件发送完，最多等待10秒
+            if (emailExecutor.shutdown(10000)) {
+                TokenAuthMod.LOGGER.info("邮件通知服务已正常关闭");
+                return;
+            }
+            
+            TokenAuthMod.LOGGER.warn("邮件执行器未能在10秒内正常关闭，强制关闭");
             try {
-                // 等待当前任务完成，最多等待10秒
-                if (!emailExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
-                    TokenAuthMod.LOGGER.warn("邮件执行器未能在10秒内正常关闭，强制关闭");
-                    emailExecutor.shutdownNow();
-                    
-                    // 再给5秒时间让任务响应中断
-                    if (!emailExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
-                        TokenAuthMod.LOGGER.error("邮件执行器强制关闭失败");
-                    }
-                } else {
-                    TokenAuthMod.LOGGER.info("邮件通知服务已正常关闭");
+                // 再给5秒时间让任务响应中断
+                if (!emailExecutor.awaitTermination(5000)) {
+                    TokenAuthMod.LOGGER.error("邮件执行器强制关闭失败");
                 }
             } catch (InterruptedException e) {
-                TokenAuthMod.LOGGER.warn("等待邮件执行器关闭时被中断，强制关闭");
-                emailExecutor.shutdownNow();
+                TokenAuthMod.LOGGER.warn("等待邮件执行器关闭时被中断");
                 Thread.currentThread().interrupt();
             }
         }
@@ -325,6 +521,15 @@ public class EmailNotifier {
             return enableSSL;
         }
         
+        /**
+         * 获取连接复用的键，所有影响连接和认证的配置相同时可以共用一个SMTP连接
+         * 
+         * @return 连接键
+         */
+        String getConnectionKey() {
+            return smtpHost + '\u0000' + smtpPort + '\u0000' + enableSSL + '\u0000' + username + '\u0000' + password;
+        }
+        
         /**
          * 检查邮件配置是否有效
          * 
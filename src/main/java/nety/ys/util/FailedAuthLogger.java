@@ -5,38 +5,89 @@ import nety.ys.config.ModConfig;
 import nety.ys.config.SimpleConfigManager;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 认证失败CSV记录器
- * 用于将未通过认证的玩家数据记录到CSV文件中
+ * 用于将未通过认证的玩家数据记录到CSV文件中。
+ * 调用方只把记录放入有界的无锁队列，由单个后台写入线程保持文件打开、批量写入，
+ * 并在达到行数或时间阈值时刷新到磁盘；队列已满时丢弃记录并计数。
+ * 需要地理位置的记录先在查询线程池中补全位置信息再进入写入队列，写入线程从不等待网络I/O
  * 
  * @author nety.ys
  */
 public class FailedAuthLogger {
     
-    private static final ReentrantLock fileLock = new ReentrantLock();
     private static final String CSV_HEADER = "玩家名称,登录时间,IP地址,地理位置";
     
+    /**
+     * 地理位置查询的最长等待时间（毫秒），超时后以占位文本写入记录
+     */
+    private static final long GEO_LOOKUP_TIMEOUT_MS = 10000;
+    
+    /**
+     * 正在查询地理位置、尚未进入写入队列的记录，键为入队阶段，值为对应的查询
+     */
+    private static final Map<CompletableFuture<Void>, CompletableFuture<IPGeolocationUtil.GeoLocationInfo>> pendingLookups =
+        new ConcurrentHashMap<>();
+    
+    /**
+     * 待写入的记录
+     */
+    private static final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+    
+    /**
+     * 已接收但尚未写入的记录数（包括正在查询地理位置的记录），用于限制队列长度
+     */
+    private static final AtomicInteger queuedCount = new AtomicInteger();
+    
+    /**
+     * 已进入写入队列、尚未被写入线程取出的记录数
+     */
+    private static final AtomicInteger writerQueuedCount = new AtomicInteger();
+    
+    /**
+     * 已写入的记录数
+     */
+    private static final AtomicLong writtenCount = new AtomicLong();
+    
+    /**
+     * 因队列已满被丢弃的记录数
+     */
+    private static final AtomicLong droppedCount = new AtomicLong();
+    
+    /**
+     * 后台写入线程
+     */
+    private static volatile Writer writer;
+    
     /**
      * 记录认证失败信息到CSV文件
+     * 只做入队操作，实际写入由后台线程完成
      * 
      * @param playerName 玩家名称
      * @param ipAddress IP地址
      * @param reason 失败原因
      */
     public static void logFailedAuth(String playerName, InetAddress ipAddress, String reason) {
-        DebugLogger.csv("收到认证失败记录请求: 玩家={}, IP={}, 原因={}", playerName, ipAddress.getHostAddress(), reason);
-        
         SimpleConfigManager configManager = (SimpleConfigManager) TokenAuthMod.getInstance().getConfigManager();
         ModConfig.ServerConfig config = configManager.getServerConfig();
         
@@ -46,72 +97,147 @@ public class FailedAuthLogger {
             return;
         }
         
-        DebugLogger.csv("CSV记录功能已启用，开始记录认证失败信息");
+        Writer current = ensureWriter(config);
+        if (queuedCount.incrementAndGet() > current.capacity) {
+            queuedCount.decrementAndGet();
+            long dropped = droppedCount.incrementAndGet();
+            if (dropped == 1 || dropped % 1000 == 0) {
+                TokenAuthMod.LOGGER.warn("CSV记录队列已满，已丢弃 {} 条认证失败记录", dropped);
+            }
+            return;
+        }
+        
+        Row row = new Row(playerName, ipAddress, reason, IPGeolocationUtil.getCurrentChinaTime());
+        DebugLogger.csv(() -> "认证失败记录已入队: 玩家=" + playerName + ", IP=" + ipAddress.getHostAddress() + ", 原因=" + reason);
+        
+        if (!config.includeGeoLocation) {
+            enqueue(row);
+            return;
+        }
+        
+        // 地理位置在查询线程池中获取，完成或超时后再交给写入线程
+        CompletableFuture<IPGeolocationUtil.GeoLocationInfo> geoLookup =
+            IPGeolocationUtil.getGeoLocationAsync(ipAddress, GEO_LOOKUP_TIMEOUT_MS);
+        CompletableFuture<Void> stage = geoLookup.thenAccept(geoInfo -> {
+            row.geoLocation = geoInfo != null ? geoInfo.getFullLocation() : "未知位置 (查询超时)";
+            enqueue(row);
+        });
+        pendingLookups.put(stage, geoLookup);
+        stage.whenComplete((ignored, e) -> pendingLookups.remove(stage));
+    }
+    
+    /**
+     * 将记录交给写入线程
+     */
+    private static void enqueue(Row row) {
+        queue.offer(row);
+        int queued = writerQueuedCount.incrementAndGet();
+        
+        Writer current = writer;
+        if (current != null && queued >= current.batchSize) {
+            LockSupport.unpark(current.thread);
+        }
+    }
+    
+    /**
+     * 等待正在查询地理位置的记录进入写入队列
+     * 
+     * @return 如果在截止时间前全部完成则返回true
+     */
+    private static boolean awaitPendingLookups(long deadlineNanos) {
+        CompletableFuture<?>[] lookups = pendingLookups.keySet().toArray(new CompletableFuture<?>[0]);
+        if (lookups.length == 0) {
+            return true;
+        }
         
         try {
-            fileLock.lock();
-            
-            // 获取CSV文件路径
-            Path csvPath = getCSVFilePath(config.csvFileName);
-            DebugLogger.csv("CSV文件路径: {}", csvPath.toAbsolutePath());
-            
-            // 检查文件是否存在，如果不存在则创建并写入标题行
-            boolean fileExists = Files.exists(csvPath);
-            DebugLogger.csv("CSV文件是否存在: {}", fileExists);
-            
-            if (!fileExists) {
-                DebugLogger.csv("CSV文件不存在，创建新文件");
-                // 确保目录存在
-                Files.createDirectories(csvPath.getParent());
-                DebugLogger.csv("确保目录存在: {}", csvPath.getParent().toAbsolutePath());
-                
-                // 创建文件并写入标题行
-                try (BufferedWriter writer = Files.newBufferedWriter(csvPath)) {
-                    writer.write(CSV_HEADER);
-                    writer.newLine();
-                    DebugLogger.csv("已写入CSV文件标题行");
-                }
-            }
-            
-            // 获取当前时间
-            String loginTime = IPGeolocationUtil.getCurrentChinaTime();
-            DebugLogger.csv("当前登录时间: {}", loginTime);
-            
-            // 获取地理位置信息
-            String geoLocation = "未知位置";
-            if (config.includeGeoLocation) {
-                DebugLogger.csv("正在获取IP {} 的地理位置信息...", ipAddress.getHostAddress());
-                IPGeolocationUtil.GeoLocationInfo geoInfo = IPGeolocationUtil.getGeoLocation(ipAddress);
-                geoLocation = geoInfo.getFullLocation();
-                DebugLogger.csv("获取地理位置信息成功: {}", geoLocation);
-            } else {
-                DebugLogger.csv("已禁用地理位置信息获取");
-            }
-            
-            // 构建CSV行
-            String csvLine = String.format("%s,%s,%s,%s",
-                escapeCSVField(playerName),
-                escapeCSVField(loginTime),
-                escapeCSVField(ipAddress.getHostAddress()),
-                escapeCSVField(geoLocation)
-            );
-            
-            DebugLogger.csv("准备写入CSV行: {}", csvLine);
-            
-            // 写入CSV文件
-            try (BufferedWriter writer = Files.newBufferedWriter(csvPath,
-                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-                writer.write(csvLine);
-                writer.newLine();
-                DebugLogger.csv("CSV行写入成功");
+            CompletableFuture.allOf(lookups).get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (Exception e) {
+            // 查询阶段的异常已在各自的Future中处理
+            return true;
+        }
+    }
+    
+    /**
+     * 等待已记录的数据（包括正在查询地理位置的记录）全部写入并刷新到磁盘
+     * 
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return 如果在超时前完成则返回true
+     */
+    public static boolean flush(long timeoutMillis) {
+        Writer current = writer;
+        if (current == null) {
+            return true;
+        }
+        
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        if (!awaitPendingLookups(deadlineNanos)) {
+            return false;
+        }
+        
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.offer(latch);
+        LockSupport.unpark(current.thread);
+        try {
+            return latch.await(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    /**
+     * 获取等待写入的记录数
+     * 
+     * @return 等待写入的记录数
+     */
+    public static int getQueuedCount() {
+        return queuedCount.get();
+    }
+    
+    /**
+     * 获取已写入的记录数
+     * 
+     * @return 已写入的记录数
+     */
+    public static long getWrittenCount() {
+        return writtenCount.get();
+    }
+    
+    /**
+     * 获取因队列已满被丢弃的记录数
+     * 
+     * @return 被丢弃的记录数
+     */
+    public static long getDroppedCount() {
+        return droppedCount.get();
+    }
+    
+    /**
+     * 启动后台写入线程（如果尚未启动）
+     */
+    private static Writer ensureWriter(ModConfig.ServerConfig config) {
+        Writer current = writer;
+        if (current != null) {
+            return current;
+        }
+        
+        synchronized (FailedAuthLogger.class) {
+            if (writer == null) {
+                writer = new Writer(
+                    Math.max(1, config.csvQueueCapacity),
+                    Math.max(1, config.csvBatchSize),
+                    Math.max(10L, config.csvFlushIntervalMillis)
+                );
+                writer.thread.start();
             }
-            
-            DebugLogger.csv("已将玩家 {} 的认证失败信息记录到CSV文件", playerName);
-            
-        } catch (IOException e) {
-            TokenAuthMod.LOGGER.error("写入认证失败CSV记录时出错", e);
-        } finally {
-            fileLock.unlock();
+            return writer;
         }
     }
     
@@ -187,22 +313,203 @@ public class FailedAuthLogger {
     
     /**
      * 清理资源
-     * 释放文件锁和其他资源
+     * 写完队列中剩余的记录后停止后台写入线程并关闭文件
      */
     public static void cleanup() {
         TokenAuthMod.LOGGER.info("正在清理认证失败记录器资源...");
         
-        try {
-            // 确保文件锁被释放
-            if (fileLock.isLocked()) {
-                TokenAuthMod.LOGGER.warn("文件锁仍然持有，尝试释放");
-                // 这里我们不能强制释放锁，但可以记录状态
-                // 文件锁会在finally块中自动释放
+        // 给正在进行的地理位置查询一点时间，仍未完成的记录以占位文本写入
+        if (!awaitPendingLookups(System.nanoTime() + TimeUnit.SECONDS.toNanos(2))) {
+            for (CompletableFuture<IPGeolocationUtil.GeoLocationInfo> geoLookup : pendingLookups.values()) {
+                geoLookup.complete(null);
+            }
+        }
+        
+        Writer current;
+        synchronized (FailedAuthLogger.class) {
+            current = writer;
+            writer = null;
+        }
+        
+        if (current != null) {
+            current.running = false;
+            LockSupport.unpark(current.thread);
+            try {
+                current.thread.join(5000);
+                if (current.thread.isAlive()) {
+                    TokenAuthMod.LOGGER.warn("CSV写入线程未能在5秒内结束，剩余 {} 条记录未写入", queuedCount.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        TokenAuthMod.LOGGER.info("认证失败记录器资源清理完成");
+    }
+    
+    /**
+     * 一条认证失败记录
+     */
+    private static final class Row {
+        final String playerName;
+        final InetAddress ipAddress;
+        final String reason;
+        final String loginTime;
+        String geoLocation = "未知位置";
+        
+        Row(String playerName, InetAddress ipAddress, String reason, String loginTime) {
+            this.playerName = playerName;
+            this.ipAddress = ipAddress;
+            this.reason = reason;
+            this.loginTime = loginTime;
+        }
+    }
+    
+    /**
+     * 后台写入线程，唯一访问CSV文件的线程
+     */
+    private static final class Writer implements Runnable {
+        final int capacity;
+        final int batchSize;
+        final long flushIntervalNanos;
+        final Thread thread;
+        volatile boolean running = true;
+        
+        private BufferedWriter out;
+        private Path openPath;
+        private int unflushedRows;
+        private long lastFlushNanos = System.nanoTime();
+        
+        Writer(int capacity, int batchSize, long flushIntervalMillis) {
+            this.capacity = capacity;
+            this.batchSize = batchSize;
+            this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+            this.thread = new Thread(this, "TokenAuth-CSV-Writer");
+            this.thread.setDaemon(true);
+        }
+        
+        @Override
+        public void run() {
+            List<CountDownLatch> barriers = new ArrayList<>();
+            
+            while (running || !queue.isEmpty()) {
+                int written = drain(barriers);
+                
+                boolean due = System.nanoTime() - lastFlushNanos >= flushIntervalNanos;
+                if (unflushedRows >= batchSize || (unflushedRows > 0 && due) || !barriers.isEmpty()) {
+                    flushOutput();
+                }
+                for (CountDownLatch barrier : barriers) {
+                    barrier.countDown();
+                }
+                barriers.clear();
+                
+                if (written == 0 && running) {
+                    LockSupport.parkNanos(this, flushIntervalNanos);
+                }
             }
             
-            TokenAuthMod.LOGGER.info("认证失败记录器资源清理完成");
-        } catch (Exception e) {
-            TokenAuthMod.LOGGER.error("清理认证失败记录器资源时出错", e);
+            flushOutput();
+            closeOutput();
+        }
+        
+        /**
+         * 写出队列中的记录，最多一批
+         * 
+         * @return 写出的记录数
+         */
+        private int drain(List<CountDownLatch> barriers) {
+            int written = 0;
+            Object item;
+            while (written < batchSize && (item = queue.poll()) != null) {
+                if (item instanceof CountDownLatch) {
+                    barriers.add((CountDownLatch) item);
+                    continue;
+                }
+                writerQueuedCount.decrementAndGet();
+                queuedCount.decrementAndGet();
+                writeRow((Row) item);
+                written++;
+            }
+            return written;
+        }
+        
+        private void writeRow(Row row) {
+            try {
+                BufferedWriter output = openOutput();
+                
+                output.write(escapeCSVField(row.playerName));
+                output.write(',');
+                output.write(escapeCSVField(row.loginTime));
+                output.write(',');
+                output.write(escapeCSVField(row.ipAddress.getHostAddress()));
+                output.write(',');
+                output.write(escapeCSVField(row.geoLocation));
+                output.newLine();
+                
+                unflushedRows++;
+                writtenCount.incrementAndGet();
+                DebugLogger.csv("已将玩家 {} 的认证失败信息写入CSV（原因: {}）", row.playerName, row.reason);
+            } catch (Exception e) {
+                TokenAuthMod.LOGGER.error("写入认证失败CSV记录时出错", e);
+                closeOutput();
+            }
+        }
+        
+        /**
+         * 打开CSV文件，文件名配置变化时切换到新文件
+         */
+        private BufferedWriter openOutput() throws IOException {
+            SimpleConfigManager configManager = (SimpleConfigManager) TokenAuthMod.getInstance().getConfigManager();
+            Path csvPath = getCSVFilePath(configManager.getServerConfig().csvFileName);
+            
+            if (out != null && csvPath.equals(openPath)) {
+                return out;
+            }
+            
+            flushOutput();
+            closeOutput();
+            
+            Files.createDirectories(csvPath.getParent());
+            out = Files.newBufferedWriter(csvPath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            openPath = csvPath;
+            DebugLogger.csv("已打开CSV文件: {}", csvPath.toAbsolutePath());
+            
+            // 新文件写入标题行
+            if (Files.size(csvPath) == 0) {
+                out.write(CSV_HEADER);
+                out.newLine();
+            }
+            return out;
+        }
+        
+        private void flushOutput() {
+            lastFlushNanos = System.nanoTime();
+            if (out == null || unflushedRows == 0) {
+                return;
+            }
+            try {
+                out.flush();
+                unflushedRows = 0;
+            } catch (IOException e) {
+                TokenAuthMod.LOGGER.error("刷新认证失败CSV文件时出错", e);
+                closeOutput();
+            }
+        }
+        
+        private void closeOutput() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                TokenAuthMod.LOGGER.error("关闭认证失败CSV文件时出错", e);
+            }
+            out = null;
+            openPath = null;
+            unflushedRows = 0;
         }
     }
-}
\ No newline at end of file
+}
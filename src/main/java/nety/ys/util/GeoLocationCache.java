@@ -0,0 +1,240 @@
+package nety.ys.util;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 地理位置查询缓存
+ * 以打包后的IP地址为键、按LRU淘汰的有界缓存，成功和失败结果使用不同的有效期。
+ * 同一IP的并发查询共享同一个进行中的Future，只会发出一次请求。
+ * 线程池已满时查询以RejectedExecutionException完成；开始执行时已没有调用方等待的查询会被跳过并以CancellationException完成，
+ * 这两种结果都不进入缓存
+ *
+ * @author nety.ys
+ */
+public class GeoLocationCache {
+    
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Function<InetAddress, IPGeolocationUtil.GeoLocationInfo> loader;
+    private final Executor executor;
+    
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    
+    private volatile int maxEntries;
+    private volatile long successTTLNanos;
+    private volatile long failureTTLNanos;
+    
+    /**
+     * 创建地理位置查询缓存
+     *
+     * @param loader 实际执行查询的函数，不应抛出异常
+     * @param executor 执行查询的线程池
+     */
+    public GeoLocationCache(Function<InetAddress, IPGeolocationUtil.GeoLocationInfo> loader, Executor executor) {
+        this.loader = loader;
+        this.executor = executor;
+        configure(1024, TimeUnit.MINUTES.toMillis(60), TimeUnit.MINUTES.toMillis(5));
+    }
+    
+    /**
+     * 更新缓存容量和有效期，超出新容量的条目在下次写入时淘汰
+     *
+     * @param maxEntries 最大条目数
+     * @param successTTLMillis 成功结果的有效期（毫秒）
+     * @param failureTTLMillis 失败结果的有效期（毫秒）
+     */
+    public void configure(int maxEntries, long successTTLMillis, long failureTTLMillis) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.successTTLNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, successTTLMillis));
+        this.failureTTLNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, failureTTLMillis));
+    }
+    
+    /**
+     * 获取IP地址的地理位置信息，命中缓存或已有进行中的查询时直接复用
+     *
+     * @param address IP地址
+     * @return 完成时携带地理位置信息的Future，调用方可以自行完成它而不影响缓存，
+     *         所有调用方都自行完成后尚未开始的查询不会再执行
+     */
+    public CompletableFuture<IPGeolocationUtil.GeoLocationInfo> get(InetAddress address) {
+        if (maxEntries == 0) {
+            missCount.incrementAndGet();
+            CompletableFuture<IPGeolocationUtil.GeoLocationInfo> result = new CompletableFuture<>();
+            try {
+                executor.execute(() -> {
+                    if (!result.isDone()) {
+                        result.complete(loader.apply(address));
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+        
+        Key key = new Key(IPAddressKey.high(address), IPAddressKey.low(address));
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && !entry.isExpired(System.nanoTime())) {
+                hitCount.incrementAndGet();
+                return entry.newWaiter();
+            }
+            
+            entry = new Entry();
+            entries.put(key, entry);
+            evictOverflow();
+        }
+        
+        missCount.incrementAndGet();
+        Entry loading = entry;
+        // 先登记调用方，避免查询在返回前开始执行时被当作无人等待
+        CompletableFuture<IPGeolocationUtil.GeoLocationInfo> waiter = loading.newWaiter();
+        try {
+            executor.execute(() -> load(key, loading, address));
+        } catch (RejectedExecutionException e) {
+            remove(key, loading);
+            loading.future.completeExceptionally(e);
+        }
+        return waiter;
+    }
+    
+    private void load(Key key, Entry loading, InetAddress address) {
+        if (loading.waiting.get() == 0) {
+            // 所有调用方都已超时
+            remove(key, loading);
+            loading.future.completeExceptionally(new CancellationException("没有等待中的调用方"));
+            return;
+        }
+        
+        IPGeolocationUtil.GeoLocationInfo info;
+        try {
+            info = loader.apply(address);
+        } catch (RuntimeException e) {
+            loading.expiresAt = System.nanoTime() + failureTTLNanos;
+            loading.future.completeExceptionally(e);
+            return;
+        }
+        // 结果到达后才开始计算有效期，失败结果保存较短时间以便尽快重试
+        boolean success = info != null && "success".equals(info.getStatus());
+        loading.expiresAt = System.nanoTime() + (success ? successTTLNanos : failureTTLNanos);
+        loading.future.complete(info);
+    }
+    
+    private void remove(Key key, Entry entry) {
+        synchronized (entries) {
+            entries.remove(key, entry);
+        }
+    }
+    
+    /**
+     * 淘汰最久未使用的条目直到不超过容量，调用方需持有entries的锁
+     */
+    private void evictOverflow() {
+        int limit = maxEntries;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > limit && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+    
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+    
+    /**
+     * 获取缓存条目数（包括进行中的查询）
+     *
+     * @return 缓存条目数
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    /**
+     * 获取缓存命中次数（包括复用进行中的查询）
+     *
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+    
+    /**
+     * 获取缓存未命中次数
+     *
+     * @return 未命中次数
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+    
+    /**
+     * 缓存条目，有效期在查询完成时设置
+     */
+    private static final class Entry {
+        final CompletableFuture<IPGeolocationUtil.GeoLocationInfo> future = new CompletableFuture<>();
+        final AtomicInteger waiting = new AtomicInteger();
+        volatile long expiresAt;
+        
+        /**
+         * 为一个调用方创建结果副本，副本完成（包括被调用方自行完成）时不再计为等待中
+         */
+        CompletableFuture<IPGeolocationUtil.GeoLocationInfo> newWaiter() {
+            CompletableFuture<IPGeolocationUtil.GeoLocationInfo> copy = future.copy();
+            waiting.incrementAndGet();
+            copy.whenComplete((info, e) -> waiting.decrementAndGet());
+            return copy;
+        }
+        
+        boolean isExpired(long now) {
+            // 查询完成前future未完成，此时视为有效以便合并并发请求
+            return future.isDone() && now - expiresAt >= 0;
+        }
+    }
+    
+    /**
+     * 打包后的IP地址键
+     */
+    private static final class Key {
+        final long high;
+        final long low;
+        
+        Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return high == other.high && low == other.low;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high) * 31 + Long.hashCode(low);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package nety.ys.util;
+
+import java.net.InetAddress;
+
+/**
+ * IP地理位置数据源
+ * IPGeolocationUtil按顺序询问各个数据源，直到某个数据源给出成功的结果
+ * 
+ * @author nety.ys
+ */
+public interface GeoLocationProvider {
+    
+    /**
+     * 获取数据源名称，用于日志
+     * 
+     * @return 数据源名称
+     */
+    String getName();
+    
+    /**
+     * 查询IP地址的地理位置信息
+     * 
+     * @param address IP地址
+     * @return 地理位置信息；数据源中没有该地址的记录时返回null
+     */
+    IPGeolocationUtil.GeoLocationInfo lookup(InetAddress address);
+    
+    /**
+     * 释放数据源占用的资源，数据源被替换且没有进行中的查询时调用，之后不会再调用lookup
+     */
+    default void close() {
+    }
+}
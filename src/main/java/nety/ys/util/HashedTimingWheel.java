@@ -0,0 +1,156 @@
+package nety.ys.util;
+
+import io.netty.util.HashedWheelTimer;
+import nety.ys.TokenAuthMod;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 哈希时间轮
+ * 基于Minecraft自带的Netty HashedWheelTimer，使用单个计时线程以摊还O(1)的代价调度和取消大量短任务，
+ * 适合会话超时、IP阻止到期这类数量多、精度要求不高的定时操作。到期任务在计时线程上执行，必须足够轻量
+ * 
+ * @author nety.ys
+ */
+public class HashedTimingWheel {
+    
+    /**
+     * Netty时间轮
+     */
+    private final HashedWheelTimer timer;
+    
+    /**
+     * 已到期执行的任务数
+     */
+    private final AtomicLong expiredCount = new AtomicLong();
+    
+    /**
+     * 构造函数，创建后立即启动计时线程
+     * 
+     * @param threadName 计时线程名称
+     * @param tickDuration 刻度时长
+     * @param unit 刻度时长单位
+     * @param wheelSize 槽位数量，会向上取整为2的幂
+     */
+    public HashedTimingWheel(String threadName, long tickDuration, TimeUnit unit, int wheelSize) {
+        this.timer = new HashedWheelTimer(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        }, tickDuration, unit, wheelSize);
+        this.timer.start();
+    }
+    
+    /**
+     * 调度一个延迟任务
+     * 
+     * @param task 到期时在计时线程上执行的任务
+     * @param delay 延迟
+     * @param unit 延迟单位
+     * @return 可取消的任务句柄
+     * @throws IllegalStateException 如果时间轮已停止
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (task == null) {
+            throw new IllegalArgumentException("任务不能为空");
+        }
+        
+        Timeout timeout = new Timeout(this, task);
+        timeout.delegate = timer.newTimeout(ignored -> timeout.expire(), Math.max(0, delay), unit);
+        return timeout;
+    }
+    
+    /**
+     * 停止时间轮，未到期的任务不会再执行
+     */
+    public void stop() {
+        timer.stop();
+    }
+    
+    /**
+     * 获取尚未到期的任务数
+     * 
+     * @return 尚未到期的任务数
+     */
+    public long getPendingCount() {
+        return timer.pendingTimeouts();
+    }
+    
+    /**
+     * 获取已到期执行的任务数
+     * 
+     * @return 已到期执行的任务数
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+    
+    /**
+     * 可取消的任务句柄
+     */
+    public static final class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+        
+        private final HashedTimingWheel timingWheel;
+        private final Runnable task;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+        private volatile io.netty.util.Timeout delegate;
+        
+        private Timeout(HashedTimingWheel timingWheel, Runnable task) {
+            this.timingWheel = timingWheel;
+            this.task = task;
+        }
+        
+        /**
+         * 取消任务
+         * 
+         * @return 如果任务在到期前被取消则返回true
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            io.netty.util.Timeout current = delegate;
+            if (current != null) {
+                current.cancel();
+            }
+            return true;
+        }
+        
+        /**
+         * 检查任务是否已取消
+         * 
+         * @return 如果任务已取消则返回true
+         */
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+        
+        /**
+         * 检查任务是否已到期执行
+         * 
+         * @return 如果任务已到期则返回true
+         */
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+        
+        private void expire() {
+            // 在newTimeout返回前就被取消的任务可能仍会到期，这里以状态为准
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            timingWheel.expiredCount.incrementAndGet();
+            
+            try {
+                task.run();
+            } catch (Throwable t) {
+                TokenAuthMod.LOGGER.error("时间轮任务执行出错", t);
+            }
+        }
+    }
+}
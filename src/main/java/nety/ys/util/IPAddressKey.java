@@ -0,0 +1,365 @@
+package nety.ys.util;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * IP地址键工具类
+ * 把IP地址打包为两个long（高64位和低64位），IPv4地址按IPv4映射IPv6地址（::ffff:a.b.c.d）存放，
+ * 这样IPv4和IPv6可以共用同一张表，IPv4地址的打包不需要分配任何对象
+ * 
+ * @author nety.ys
+ */
+public final class IPAddressKey {
+    
+    /**
+     * IPv4映射地址的低64位前缀
+     */
+    private static final long IPV4_MAPPED_PREFIX = 0x0000FFFF00000000L;
+    
+    private IPAddressKey() {
+    }
+    
+    /**
+     * 获取IP地址键的高64位
+     * 
+     * @param address IP地址
+     * @return 高64位
+     */
+    public static long high(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            return 0L;
+        }
+        return readLong(address.getAddress(), 0);
+    }
+    
+    /**
+     * 获取IP地址键的低64位
+     * 
+     * @param address IP地址
+     * @return 低64位
+     */
+    public static long low(InetAddress address) {
+        if (address instanceof Inet4Address) {
+            // Inet4Address的hashCode就是地址本身，避免getAddress()复制字节数组
+            return IPV4_MAPPED_PREFIX | (address.hashCode() & 0xFFFFFFFFL);
+        }
+        return readLong(address.getAddress(), 8);
+    }
+    
+    /**
+     * 检查IP地址键是否为IPv4地址
+     * 
+     * @param high 高64位
+     * @param low 低64位
+     * @return 如果是IPv4地址则返回true
+     */
+    public static boolean isIPv4(long high, long low) {
+        return high == 0L && (low & 0xFFFFFFFF00000000L) == IPV4_MAPPED_PREFIX;
+    }
+    
+    /**
+     * 解析IP地址字面量，不进行DNS查询
+     * 兼容InetAddress.toString()的格式（如"/1.2.3.4"或"host/1.2.3.4"）
+     * 
+     * @param text IP地址字符串
+     * @return IP地址
+     * @throws IllegalArgumentException 如果不是有效的IP地址
+     */
+    public static InetAddress parse(String text) {
+        if (text == null) {
+            throw new IllegalArgumentException("IP地址不能为空");
+        }
+        
+        String literal = text.trim();
+        int slash = literal.indexOf('/');
+        if (slash >= 0) {
+            literal = literal.substring(slash + 1);
+        }
+        if (literal.startsWith("[") && literal.endsWith("]")) {
+            literal = literal.substring(1, literal.length() - 1);
+        }
+        
+        if (literal.indexOf(':') < 0) {
+            byte[] bytes = parseIPv4(literal);
+            if (bytes == null) {
+                throw new IllegalArgumentException("不是有效的IP地址: " + text);
+            }
+            try {
+                return InetAddress.getByAddress(bytes);
+            } catch (UnknownHostException e) {
+                // 长度固定为4字节，不会发生
+                throw new IllegalStateException(e);
+            }
+        }
+        
+        // 只含十六进制数字、冒号和点的字符串由InetAddress按IPv6字面量解析，无效时直接抛出异常而不会查询DNS
+        if (!isIPv6Literal(literal)) {
+            throw new IllegalArgumentException("不是有效的IP地址: " + text);
+        }
+        try {
+            return InetAddress.getByName(literal);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("不是有效的IP地址: " + text, e);
+        }
+    }
+    
+    /**
+     * 解析CIDR网段，不进行DNS查询
+     * 不带前缀长度的地址视为单个地址，IPv4前缀长度会换算为IPv4映射地址中的长度（加96）
+     * 
+     * @param text CIDR字符串，如"203.0.113.0/24"或"2001:db8::/32"
+     * @return 网段
+     * @throws IllegalArgumentException 如果不是有效的CIDR网段
+     */
+    public static Prefix parsePrefix(String text) {
+        if (text == null) {
+            throw new IllegalArgumentException("网段不能为空");
+        }
+        
+        String literal = text.trim();
+        if (literal.startsWith("/")) {
+            literal = literal.substring(1);
+        }
+        
+        int slash = literal.indexOf('/');
+        InetAddress address = parse(slash >= 0 ? literal.substring(0, slash) : literal);
+        boolean ipv4 = address instanceof Inet4Address;
+        int maxLength = ipv4 ? 32 : 128;
+        
+        int length = maxLength;
+        if (slash >= 0) {
+            try {
+                length = Integer.parseInt(literal.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("无效的前缀长度: " + text);
+            }
+            if (length < 0 || length > maxLength) {
+                throw new IllegalArgumentException("前缀长度超出范围: " + text);
+            }
+        }
+        
+        return new Prefix(high(address), low(address), ipv4 ? length + 96 : length);
+    }
+    
+    /**
+     * 获取IP地址所在的网段
+     * 
+     * @param address IP地址
+     * @param ipv4Length IPv4地址使用的前缀长度（0到32）
+     * @param ipv6Length IPv6地址使用的前缀长度（0到128）
+     * @return 网段
+     */
+    public static Prefix prefixOf(InetAddress address, int ipv4Length, int ipv6Length) {
+        if (address instanceof Inet4Address) {
+            return new Prefix(0L, low(address), 96 + Math.max(0, Math.min(32, ipv4Length)));
+        }
+        return new Prefix(high(address), low(address), Math.max(0, Math.min(128, ipv6Length)));
+    }
+    
+    /**
+     * 获取前缀长度对应的高64位掩码
+     * 
+     * @param length 前缀长度（0到128）
+     * @return 高64位掩码
+     */
+    public static long highMask(int length) {
+        if (length <= 0) {
+            return 0L;
+        }
+        return length >= 64 ? -1L : -1L << (64 - length);
+    }
+    
+    /**
+     * 获取前缀长度对应的低64位掩码
+     * 
+     * @param length 前缀长度（0到128）
+     * @return 低64位掩码
+     */
+    public static long lowMask(int length) {
+        if (length <= 64) {
+            return 0L;
+        }
+        return length >= 128 ? -1L : -1L << (128 - length);
+    }
+    
+    /**
+     * 将IP地址键还原为IP地址
+     * 
+     * @param high 高64位
+     * @param low 低64位
+     * @return IP地址
+     */
+    public static InetAddress toAddress(long high, long low) {
+        try {
+            if (isIPv4(high, low)) {
+                byte[] bytes = new byte[4];
+                writeInt(bytes, (int) low);
+                return InetAddress.getByAddress(bytes);
+            }
+            
+            byte[] bytes = new byte[16];
+            writeLong(bytes, 0, high);
+            writeLong(bytes, 8, low);
+            return Inet6Address.getByAddress(null, bytes, -1);
+        } catch (UnknownHostException e) {
+            // 长度固定为4或16字节，不会发生
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * 将IP地址键格式化为字符串
+     * 
+     * @param high 高64位
+     * @param low 低64位
+     * @return IP地址字符串
+     */
+    public static String toString(long high, long low) {
+        if (isIPv4(high, low)) {
+            return ((low >>> 24) & 0xFF) + "." + ((low >>> 16) & 0xFF) + "." + ((low >>> 8) & 0xFF) + "." + (low & 0xFF);
+        }
+        return toAddress(high, low).getHostAddress();
+    }
+    
+    /**
+     * 按点分十进制解析IPv4地址，必须正好是四段0到255的十进制数，不接受"1.2.3"或"10"这类简写
+     * 
+     * @return 地址字节，格式无效时返回null
+     */
+    private static byte[] parseIPv4(String literal) {
+        byte[] bytes = new byte[4];
+        int octet = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = 0; i <= literal.length(); i++) {
+            char c = i < literal.length() ? literal.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (++digits > 3 || value > 255) {
+                    return null;
+                }
+            } else if (c == '.') {
+                if (digits == 0 || octet >= 4) {
+                    return null;
+                }
+                bytes[octet++] = (byte) value;
+                value = 0;
+                digits = 0;
+            } else {
+                return null;
+            }
+        }
+        return octet == 4 ? bytes : null;
+    }
+    
+    private static boolean isIPv6Literal(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c != ':' && c != '.' && Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0L;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFFL);
+        }
+        return value;
+    }
+    
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+    
+    private static void writeInt(byte[] bytes, int value) {
+        for (int i = 3; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+    
+    /**
+     * IP网段，地址按IPAddressKey的128位格式存放，前缀长度之后的位清零
+     */
+    public static final class Prefix {
+        private final long high;
+        private final long low;
+        private final int length;
+        
+        public Prefix(long high, long low, int length) {
+            if (length < 0 || length > 128) {
+                throw new IllegalArgumentException("前缀长度超出范围: " + length);
+            }
+            this.high = high & highMask(length);
+            this.low = low & lowMask(length);
+            this.length = length;
+        }
+        
+        public long getHigh() {
+            return high;
+        }
+        
+        public long getLow() {
+            return low;
+        }
+        
+        public int getLength() {
+            return length;
+        }
+        
+        /**
+         * 检查是否为单个地址
+         * 
+         * @return 如果前缀长度为128则返回true
+         */
+        public boolean isSingleAddress() {
+            return length == 128;
+        }
+        
+        /**
+         * 检查网段是否包含IP地址键
+         * 
+         * @param keyHigh 键的高64位
+         * @param keyLow 键的低64位
+         * @return 如果包含则返回true
+         */
+        public boolean contains(long keyHigh, long keyLow) {
+            return (keyHigh & highMask(length)) == high && (keyLow & lowMask(length)) == low;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Prefix)) {
+                return false;
+            }
+            Prefix other = (Prefix) obj;
+            return high == other.high && low == other.low && length == other.length;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high) * 31 * 31 + Long.hashCode(low) * 31 + length;
+        }
+        
+        @Override
+        public String toString() {
+            String address = IPAddressKey.toString(high, low);
+            if (length >= 96 && isIPv4(high, low)) {
+                return length == 128 ? address : address + "/" + (length - 96);
+            }
+            return length == 128 ? address : address + "/" + length;
+        }
+    }
+}
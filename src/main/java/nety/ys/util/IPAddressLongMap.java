@@ -0,0 +1,415 @@
+package nety.ys.util;
+
+import java.net.InetAddress;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * 以IP地址为键、long为值的开放寻址哈希表
+ * 键按IPAddressKey打包为两个long，值不装箱，每个条目只占用三个long和一个状态字节。
+ * 写操作加写锁，读操作先尝试乐观读，冲突时退化为读锁
+ * 
+ * @author nety.ys
+ */
+public class IPAddressLongMap {
+    
+    /**
+     * 默认初始容量
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+    
+    /**
+     * 最大负载因子（百分比）
+     */
+    private static final int MAX_LOAD_PERCENT = 50;
+    
+    /**
+     * 读写锁
+     */
+    private final StampedLock lock = new StampedLock();
+    
+    /**
+     * 当前表，扩容时整体替换，乐观读总能看到一致的数组组合
+     */
+    private volatile Table table;
+    
+    /**
+     * 条目回调
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long high, long low, long value);
+    }
+    
+    /**
+     * 构造函数
+     */
+    public IPAddressLongMap() {
+        this.table = new Table(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * 获取IP地址对应的值
+     * 
+     * @param address IP地址
+     * @param defaultValue 不存在时的默认值
+     * @return 对应的值，不存在时返回默认值
+     */
+    public long get(InetAddress address, long defaultValue) {
+        return get(IPAddressKey.high(address), IPAddressKey.low(address), defaultValue);
+    }
+    
+    /**
+     * 获取IP地址键对应的值
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     * @param defaultValue 不存在时的默认值
+     * @return 对应的值，不存在时返回默认值
+     */
+    public long get(long high, long low, long defaultValue) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            Table current = table;
+            int index = current.find(high, low);
+            long value = index >= 0 ? current.values[index] : defaultValue;
+            if (lock.validate(stamp)) {
+                return value;
+            }
+        }
+        
+        stamp = lock.readLock();
+        try {
+            Table current = table;
+            int index = current.find(high, low);
+            return index >= 0 ? current.values[index] : defaultValue;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * 检查是否包含IP地址键
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     * @return 如果包含则返回true
+     */
+    public boolean containsKey(long high, long low) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            boolean found = table.find(high, low) >= 0;
+            if (lock.validate(stamp)) {
+                return found;
+            }
+        }
+        
+        stamp = lock.readLock();
+        try {
+            return table.find(high, low) >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * 设置IP地址键对应的值
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     * @param value 值
+     */
+    public void put(long high, long low, long value) {
+        long stamp = lock.writeLock();
+        try {
+            int index = slotFor(high, low);
+            table.values[index] = value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * 将IP地址键对应的值加上增量，不存在时视为0
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     * @param delta 增量
+     * @return 新的值
+     */
+    public long addAndGet(long high, long low, long delta) {
+        long stamp = lock.writeLock();
+        try {
+            int index = slotFor(high, low);
+            long value = table.values[index] + delta;
+            table.values[index] = value;
+            return value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * 在写锁内以函数更新IP地址键对应的值，不存在时函数收到0
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     * @param function 根据当前值计算新值的函数，不能访问本表
+     * @return 新的值
+     */
+    public long update(long high, long low, LongUnaryOperator function) {
+        long stamp = lock.writeLock();
+        try {
+            int index = slotFor(high, low);
+            long value = function.applyAsLong(table.values[index]);
+            table.values[index] = value;
+            return value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * 将IP地址键对应的值减1，减到0或以下时移除该键，键不存在时不做任何操作
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     * @return 新的值，键不存在或已移除时返回0
+     */
+    public long decrement(long high, long low) {
+        long stamp = lock.writeLock();
+        try {
+            int index = table.find(high, low);
+            if (index < 0) {
+                return 0L;
+            }
+            long value = table.values[index] - 1;
+            if (value <= 0) {
+                table.delete(index);
+                return 0L;
+            }
+            table.values[index] = value;
+            return value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * 移除IP地址键
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     * @return 如果键存在并已移除则返回true
+     */
+    public boolean remove(long high, long low) {
+        long stamp = lock.writeLock();
+        try {
+            int index = table.find(high, low);
+            if (index < 0) {
+                return false;
+            }
+            table.delete(index);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * 仅当当前值等于期望值时移除IP地址键
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     * @param expectedValue 期望值
+     * @return 如果键已移除则返回true
+     */
+    public boolean remove(long high, long low, long expectedValue) {
+        long stamp = lock.writeLock();
+        try {
+            int index = table.find(high, low);
+            if (index < 0 || table.values[index] != expectedValue) {
+                return false;
+            }
+            table.delete(index);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * 仅当当前值满足条件时移除IP地址键
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     * @param predicate 对当前值的条件，不能访问本表
+     * @return 如果键已移除则返回true
+     */
+    public boolean removeIf(long high, long low, LongPredicate predicate) {
+        long stamp = lock.writeLock();
+        try {
+            int index = table.find(high, low);
+            if (index < 0 || !predicate.test(table.values[index])) {
+                return false;
+            }
+            table.delete(index);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * 获取条目数量
+     * 
+     * @return 条目数量
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return table.size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * 遍历所有条目，遍历期间持有读锁，回调中不能修改本表
+     * 
+     * @param consumer 条目回调
+     */
+    public void forEach(EntryConsumer consumer) {
+        long stamp = lock.readLock();
+        try {
+            Table current = table;
+            for (int i = 0; i < current.used.length; i++) {
+                if (current.used[i]) {
+                    consumer.accept(current.highs[i], current.lows[i], current.values[i]);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * 清空所有条目
+     */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            table = new Table(DEFAULT_CAPACITY);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * 查找或插入键所在的槽位，调用方必须持有写锁
+     */
+    private int slotFor(long high, long low) {
+        Table current = table;
+        int index = current.find(high, low);
+        if (index >= 0) {
+            return index;
+        }
+        
+        if ((current.size + 1) * 100 > current.used.length * MAX_LOAD_PERCENT) {
+            current = current.resize(current.used.length << 1);
+            table = current;
+        }
+        return current.insert(high, low);
+    }
+    
+    private static int hash(long high, long low) {
+        long h = high * 0x9E3779B97F4A7C15L ^ low;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+    
+    /**
+     * 线性探测表，删除时回移后续条目，不使用墓碑
+     */
+    private static final class Table {
+        final long[] highs;
+        final long[] lows;
+        final long[] values;
+        final boolean[] used;
+        final int mask;
+        int size;
+        
+        Table(int capacity) {
+            highs = new long[capacity];
+            lows = new long[capacity];
+            values = new long[capacity];
+            used = new boolean[capacity];
+            mask = capacity - 1;
+        }
+        
+        /**
+         * 查找键所在的槽位，探测次数不超过容量，乐观读遇到不一致数据时也会终止
+         */
+        int find(long high, long low) {
+            int index = hash(high, low) & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                if (!used[index]) {
+                    return -1;
+                }
+                if (highs[index] == high && lows[index] == low) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+        
+        int insert(long high, long low) {
+            int index = hash(high, low) & mask;
+            while (used[index]) {
+                index = (index + 1) & mask;
+            }
+            highs[index] = high;
+            lows[index] = low;
+            values[index] = 0L;
+            used[index] = true;
+            size++;
+            return index;
+        }
+        
+        void delete(int index) {
+            int hole = index;
+            int next = (hole + 1) & mask;
+            while (used[next]) {
+                int home = hash(highs[next], lows[next]) & mask;
+                // 如果next的初始槽位不在(hole, next]区间内，就可以移动到空洞处
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    highs[hole] = highs[next];
+                    lows[hole] = lows[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            used[hole] = false;
+            highs[hole] = 0L;
+            lows[hole] = 0L;
+            values[hole] = 0L;
+            size--;
+        }
+        
+        Table resize(int capacity) {
+            Table resized = new Table(capacity);
+            for (int i = 0; i < used.length; i++) {
+                if (used[i]) {
+                    int index = resized.insert(highs[i], lows[i]);
+                    resized.values[index] = values[i];
+                }
+            }
+            return resized;
+        }
+    }
+}
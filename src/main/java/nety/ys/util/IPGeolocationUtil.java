@@ -1,37 +1,73 @@
 package nety.ys.util;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import nety.ys.TokenAuthMod;
+import nety.ys.config.ModConfig;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.InetAddress;
-import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * IP地址地理位置解析工具类
- * 用于通过ip-api.com获取IP地址的地理位置信息
+ * 按顺序询问本地数据库和ip-api.com等数据源获取IP地址的地理位置信息
  * 
  * @author nety.ys
  */
 public class IPGeolocationUtil {
     
-    private static final String API_URL = "http://208.95.112.1/json/";
-    private static final String LANGUAGE_PARAM = "?lang=zh-CN";
-    private static final Gson gson = new Gson();
+    private static final HttpGeoLocationProvider httpProvider = new HttpGeoLocationProvider();
     
-    // 连接和读取超时时间（毫秒）
-    private static final int CONNECT_TIMEOUT = 3000; // 3秒连接超时
-    private static final int READ_TIMEOUT = 5000;    // 5秒读取超时
-    private static final int MAX_RETRIES = 2;        // 最大重试次数
+    // 异步查询线程数，空闲30秒后回收
+    private static final int LOOKUP_THREADS = 2;
+    
+    // 等待执行的查询数上限，超出的查询直接以未知位置完成
+    private static final int LOOKUP_QUEUE_CAPACITY = 256;
+    
+    /**
+     * 异步地理位置查询线程池，避免网络I/O阻塞调用方
+     */
+    private static final ExecutorService lookupExecutor = createLookupExecutor();
+    
+    private static ExecutorService createLookupExecutor() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            LOOKUP_THREADS, LOOKUP_THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(LOOKUP_QUEUE_CAPACITY),
+            runnable -> {
+                Thread thread = new Thread(runnable, "TokenAuth-GeoLookup-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+    
+    /**
+     * 查询结果缓存，同一IP的并发查询只发出一次请求
+     */
+    private static final GeoLocationCache cache =
+        new GeoLocationCache(IPGeolocationUtil::lookupFromProviders, lookupExecutor);
+    
+    /**
+     * 当前使用的数据源，配置变化或重载后在下一次查询时重新构建
+     */
+    private static volatile ProviderChain providerChain;
     
     /**
      * IP地理位置信息数据类
@@ -95,113 +131,295 @@ public class IPGeolocationUtil {
     }
     
     /**
-     * 获取IP地址的地理位置信息
+     * 获取IP地址的地理位置信息，优先使用缓存
      * 
      * @param ipAddress IP地址
      * @return 地理位置信息
      */
     public static GeoLocationInfo getGeoLocation(InetAddress ipAddress) {
-        return getGeoLocation(ipAddress.getHostAddress());
+        return getGeoLocationAsync(ipAddress).join();
+    }
+    
+    /**
+     * 在后台线程中获取IP地址的地理位置信息，优先使用缓存
+     * 
+     * @param ipAddress IP地址
+     * @return 完成时携带地理位置信息的Future，不会异常完成
+     */
+    public static CompletableFuture<GeoLocationInfo> getGeoLocationAsync(InetAddress ipAddress) {
+        return getGeoLocationAsync(ipAddress, 0);
     }
     
     /**
-     * 获取IP地址的地理位置信息
+     * 在后台线程中获取IP地址的地理位置信息，优先使用缓存
+     * 超时后以未知位置完成；所有调用方都已超时的查询在开始执行前会被跳过
+     * 
+     * @param ipAddress IP地址
+     * @param timeoutMillis 最长等待时间（毫秒），0为不限制
+     * @return 完成时携带地理位置信息的Future，不会异常完成
+     */
+    public static CompletableFuture<GeoLocationInfo> getGeoLocationAsync(InetAddress ipAddress, long timeoutMillis) {
+        ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+        if (config != null) {
+            cache.configure(config.geoCacheMaxEntries,
+                            TimeUnit.MINUTES.toMillis(config.geoCacheTTLMinutes),
+                            TimeUnit.MINUTES.toMillis(config.geoCacheFailureTTLMinutes));
+        }
+        
+        String address = ipAddress.getHostAddress();
+        CompletableFuture<GeoLocationInfo> lookup = cache.get(ipAddress);
+        if (timeoutMillis > 0) {
+            lookup.completeOnTimeout(unknownLocation("查询超时", address), timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return lookup.exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RejectedExecutionException) {
+                return unknownLocation("查询队列已满", address);
+            }
+            if (cause instanceof CancellationException) {
+                return unknownLocation("查询已取消", address);
+            }
+            return unknownLocation("查询失败: " + cause.getMessage(), address);
+        });
+    }
+    
+    private static GeoLocationInfo unknownLocation(String message, String address) {
+        return new GeoLocationInfo("fail", message, "", "", "", "", "", address);
+    }
+    
+    /**
+     * 获取地理位置缓存命中次数
+     * 
+     * @return 命中次数
+     */
+    public static long getCacheHitCount() {
+        return cache.getHitCount();
+    }
+    
+    /**
+     * 获取地理位置缓存未命中次数
+     * 
+     * @return 未命中次数
+     */
+    public static long getCacheMissCount() {
+        return cache.getMissCount();
+    }
+    
+    /**
+     * 获取地理位置缓存条目数
+     * 
+     * @return 缓存条目数
+     */
+    public static int getCacheSize() {
+        return cache.size();
+    }
+    
+    /**
+     * 清空地理位置缓存
+     */
+    public static void clearCache() {
+        cache.clear();
+    }
+    
+    /**
+     * 通过在线API获取IP地址的地理位置信息，不经过缓存
      * 
      * @param ipAddress IP地址字符串
      * @return 地理位置信息
      */
     public static GeoLocationInfo getGeoLocation(String ipAddress) {
-        return getGeoLocationWithRetry(ipAddress, 0);
+        return httpProvider.lookup(ipAddress);
     }
     
     /**
-     * 带重试机制的地理位置获取
-     *
-     * @param ipAddress IP地址字符串
-     * @param retryCount 当前重试次数
-     * @return 地理位置信息
+     * 重新加载数据源（例如本地数据库文件已更新）并清空缓存
+     * 旧的数据源在进行中的查询结束后关闭
+     */
+    public static void reloadProviders() {
+        ProviderChain old;
+        synchronized (IPGeolocationUtil.class) {
+            old = providerChain;
+            providerChain = null;
+        }
+        if (old != null) {
+            old.release();
+        }
+        cache.clear();
+    }
+    
+    /**
+     * 依次询问各个数据源，返回第一个成功的结果
      */
-    private static GeoLocationInfo getGeoLocationWithRetry(String ipAddress, int retryCount) {
+    private static GeoLocationInfo lookupFromProviders(InetAddress address) {
+        GeoLocationInfo result = null;
+        ProviderChain chain = acquireProviders();
         try {
-            DebugLogger.email("正在获取IP {} 的地理位置信息（第{}次尝试）...", ipAddress, retryCount + 1);
-            
-            // 构建请求URL
-            String requestUrl = API_URL + ipAddress + LANGUAGE_PARAM;
-            URL url = new URL(requestUrl);
-            
-            // 发送HTTP请求
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
-            connection.setRequestProperty("User-Agent", "TokenAuth-Mod/1.1.5");
-            
-            int responseCode = connection.getResponseCode();
-            if (responseCode == 200) {
-                // 读取响应
-                BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
+            for (GeoLocationProvider provider : chain.providers) {
+                GeoLocationInfo info = provider.lookup(address);
+                if (info == null) {
+                    continue;
+                }
+                if ("success".equals(info.getStatus())) {
+                    DebugLogger.debug(() -> "IP " + address.getHostAddress() + " 的地理位置来自 " + provider.getName());
+                    return info;
+                }
+                result = info;
+            }
+        } finally {
+            chain.release();
+        }
+        
+        return result != null ? result
+            : new GeoLocationInfo("fail", "无可用的地理位置数据", "", "", "", "", "", address.getHostAddress());
+    }
+    
+    /**
+     * 获取并占用当前配置对应的数据源，配置的数据库文件或在线查询开关变化时重新构建
+     * 调用方用完后必须调用release
+     */
+    private static ProviderChain acquireProviders() {
+        ModConfig.ServerConfig config = TokenAuthMod.getInstance().getConfigManager().getServerConfig();
+        String databaseFile = config != null ? config.geoDatabaseFile : "";
+        boolean online = config == null || config.enableOnlineGeoLookup;
+        
+        while (true) {
+            ProviderChain chain = providerChain;
+            if (chain == null || !chain.matches(databaseFile, online)) {
+                ProviderChain replaced = null;
+                synchronized (IPGeolocationUtil.class) {
+                    chain = providerChain;
+                    if (chain == null || !chain.matches(databaseFile, online)) {
+                        replaced = chain;
+                        chain = new ProviderChain(databaseFile, online, buildProviders(databaseFile, online));
+                        providerChain = chain;
+                    }
+                }
+                if (replaced != null) {
+                    replaced.release();
+                }
+            }
+            // 读取后刚好被替换并关闭的数据源不能再使用，重新获取
+            if (chain.retain()) {
+                return chain;
+            }
+        }
+    }
+    
+    private static List<GeoLocationProvider> buildProviders(String databaseFile, boolean online) {
+        List<GeoLocationProvider> providers = new ArrayList<>();
+        
+        // 移除文件名两端的引号
+        String fileName = databaseFile != null ? databaseFile.trim() : "";
+        if (fileName.length() >= 2 && fileName.startsWith("\"") && fileName.endsWith("\"")) {
+            fileName = fileName.substring(1, fileName.length() - 1).trim();
+        }
+        
+        if (!fileName.isEmpty()) {
+            Path path = ModConfig.getConfigDir().resolve(fileName);
+            if (Files.isRegularFile(path)) {
+                try {
+                    providers.add(openLocalDatabase(path));
+                } catch (Exception e) {
+                    TokenAuthMod.LOGGER.error("加载本地地理位置数据库 {} 失败", path, e);
                 }
-                reader.close();
-                
-                DebugLogger.email("IP地理位置API响应: {}", response.toString());
-                
-                // 解析JSON响应
-                JsonObject jsonObject = gson.fromJson(response.toString(), JsonObject.class);
-                
-                // 提取信息
-                String status = jsonObject.has("status") ? jsonObject.get("status").getAsString() : "fail";
-                String message = jsonObject.has("message") ? jsonObject.get("message").getAsString() : "未知错误";
-                String country = jsonObject.has("country") ? jsonObject.get("country").getAsString() : "";
-                String regionName = jsonObject.has("regionName") ? jsonObject.get("regionName").getAsString() : "";
-                String city = jsonObject.has("city") ? jsonObject.get("city").getAsString() : "";
-                String isp = jsonObject.has("isp") ? jsonObject.get("isp").getAsString() : "";
-                String org = jsonObject.has("org") ? jsonObject.get("org").getAsString() : "";
-                String query = jsonObject.has("query") ? jsonObject.get("query").getAsString() : ipAddress;
-                
-                DebugLogger.email("IP {} 地理位置信息获取成功: {}", ipAddress,
-                    new GeoLocationInfo(status, message, country, regionName, city, isp, org, query).getFullLocation());
-                
-                return new GeoLocationInfo(status, message, country, regionName, city, isp, org, query);
             } else {
-                TokenAuthMod.LOGGER.warn("IP地理位置API请求失败，响应码: {}", responseCode);
-                return handleRetry(ipAddress, retryCount, "API请求失败，响应码: " + responseCode);
+                TokenAuthMod.LOGGER.warn("本地地理位置数据库 {} 不存在", path);
+            }
+        }
+        
+        if (online) {
+            providers.add(httpProvider);
+        }
+        return Collections.unmodifiableList(providers);
+    }
+    
+    /**
+     * 打开本地数据库
+     * CSV文件会被编译为同名的.bin二进制文件（CSV比二进制文件新时重新编译），然后映射二进制文件，
+     * 这样数据不占用堆内存，之后的启动也不需要再解析CSV
+     */
+    private static GeoLocationProvider openLocalDatabase(Path path) throws Exception {
+        String fileName = path.getFileName().toString();
+        if (!fileName.toLowerCase().endsWith(".csv")) {
+            return MappedGeoLocationProvider.open(path);
+        }
+        
+        Path binaryPath = path.resolveSibling(fileName.substring(0, fileName.length() - 4) + ".bin");
+        if (Files.isRegularFile(binaryPath)
+                && Files.getLastModifiedTime(binaryPath).compareTo(Files.getLastModifiedTime(path)) >= 0) {
+            try {
+                return MappedGeoLocationProvider.open(binaryPath);
+            } catch (Exception e) {
+                TokenAuthMod.LOGGER.warn("无法映射 {}，将从CSV重新生成: {}", binaryPath.getFileName(), e.getMessage());
             }
-        } catch (IOException e) {
-            TokenAuthMod.LOGGER.error("获取IP地理位置信息时出错", e);
-            return handleRetry(ipAddress, retryCount, "网络错误: " + e.getMessage());
+        }
+        
+        LocalGeoLocationProvider csvProvider = LocalGeoLocationProvider.load(path);
+        try {
+            csvProvider.writeBinary(binaryPath);
+            TokenAuthMod.LOGGER.info("已将本地地理位置数据库编译为 {}", binaryPath.getFileName());
+            return MappedGeoLocationProvider.open(binaryPath);
         } catch (Exception e) {
-            TokenAuthMod.LOGGER.error("解析IP地理位置信息时出错", e);
-            return new GeoLocationInfo("fail", "解析错误: " + e.getMessage(), "", "", "", "", "", ipAddress);
+            // 例如目录不可写或旧文件仍被映射，退回到堆上的CSV数据
+            TokenAuthMod.LOGGER.warn("无法生成二进制地理位置数据库 {}，使用CSV数据: {}", binaryPath.getFileName(), e.getMessage());
+            return csvProvider;
         }
     }
     
     /**
-     * 处理重试逻辑
-     *
-     * @param ipAddress IP地址
-     * @param retryCount 当前重试次数
-     * @param errorMessage 错误消息
-     * @return 地理位置信息
+     * 数据源列表及构建时使用的配置
+     * 引用计数包括作为当前数据源的一次和每个进行中的查询，降为0时在查询线程池中关闭数据源
      */
-    private static GeoLocationInfo handleRetry(String ipAddress, int retryCount, String errorMessage) {
-        if (retryCount < MAX_RETRIES) {
-            DebugLogger.email("IP {} 地理位置获取失败，{}ms后进行第{}次重试...",
-                ipAddress, 1000 * (retryCount + 1), retryCount + 2);
-            
+    private static final class ProviderChain {
+        final String databaseFile;
+        final boolean online;
+        final List<GeoLocationProvider> providers;
+        private final AtomicInteger references = new AtomicInteger(1);
+        
+        ProviderChain(String databaseFile, boolean online, List<GeoLocationProvider> providers) {
+            this.databaseFile = databaseFile;
+            this.online = online;
+            this.providers = providers;
+        }
+        
+        boolean matches(String databaseFile, boolean online) {
+            return this.online == online && String.valueOf(this.databaseFile).equals(String.valueOf(databaseFile));
+        }
+        
+        /**
+         * @return 如果数据源尚未关闭则返回true
+         */
+        boolean retain() {
+            while (true) {
+                int count = references.get();
+                if (count <= 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+        
+        void release() {
+            if (references.decrementAndGet() != 0) {
+                return;
+            }
             try {
-                Thread.sleep(1000 * (retryCount + 1)); // 递增延迟
-                return getGeoLocationWithRetry(ipAddress, retryCount + 1);
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
-                return new GeoLocationInfo("fail", "重试被中断: " + errorMessage, "", "", "", "", "", ipAddress);
-            }
-        } else {
-            TokenAuthMod.LOGGER.warn("IP {} 地理位置获取失败，已达到最大重试次数: {}", ipAddress, MAX_RETRIES + 1);
-            return new GeoLocationInfo("fail", errorMessage + " (已重试" + MAX_RETRIES + "次)", "", "", "", "", "", ipAddress);
+                lookupExecutor.execute(this::closeProviders);
+            } catch (RejectedExecutionException e) {
+                closeProviders();
+            }
+        }
+        
+        private void closeProviders() {
+            for (GeoLocationProvider provider : providers) {
+                try {
+                    provider.close();
+                } catch (RuntimeException e) {
+                    TokenAuthMod.LOGGER.warn("关闭地理位置数据源 {} 时出错: {}", provider.getName(), e.getMessage());
+                }
+            }
         }
     }
     
@@ -0,0 +1,315 @@
+package nety.ys.util;
+
+/**
+ * IP网段前缀树
+ * 路径压缩的二进制前缀树，键为IPAddressKey的128位地址，查找只沿地址的比特走一条路径，
+ * 代价与前缀长度成正比，与网段数量无关。
+ * 树是不可变的，写操作复制修改路径后替换根节点，查找无需加锁
+ * 
+ * @author nety.ys
+ */
+public class IPPrefixTrie {
+    
+    /**
+     * 根节点，为null表示空树
+     */
+    private volatile Node root;
+    
+    /**
+     * 网段回调
+     */
+    @FunctionalInterface
+    public interface PrefixConsumer {
+        void accept(IPAddressKey.Prefix prefix, long value);
+    }
+    
+    /**
+     * 添加或替换网段
+     * 
+     * @param prefix 网段
+     * @param value 值
+     */
+    public synchronized void put(IPAddressKey.Prefix prefix, long value) {
+        root = insert(root, prefix.getHigh(), prefix.getLow(), prefix.getLength(), value);
+    }
+    
+    /**
+     * 移除网段
+     * 
+     * @param prefix 网段
+     * @return 如果网段存在并已移除则返回true
+     */
+    public synchronized boolean remove(IPAddressKey.Prefix prefix) {
+        Node current = root;
+        if (find(current, prefix) == null) {
+            return false;
+        }
+        root = delete(current, prefix.getHigh(), prefix.getLow(), prefix.getLength());
+        return true;
+    }
+    
+    /**
+     * 仅当网段当前值等于期望值时移除网段
+     * 
+     * @param prefix 网段
+     * @param expectedValue 期望值
+     * @return 如果网段已移除则返回true
+     */
+    public synchronized boolean remove(IPAddressKey.Prefix prefix, long expectedValue) {
+        Node current = root;
+        Node node = find(current, prefix);
+        if (node == null || node.value != expectedValue) {
+            return false;
+        }
+        root = delete(current, prefix.getHigh(), prefix.getLow(), prefix.getLength());
+        return true;
+    }
+    
+    /**
+     * 获取网段的值
+     * 
+     * @param prefix 网段
+     * @param defaultValue 网段不存在时的默认值
+     * @return 网段的值，不存在时返回默认值
+     */
+    public long get(IPAddressKey.Prefix prefix, long defaultValue) {
+        Node node = find(root, prefix);
+        return node != null ? node.value : defaultValue;
+    }
+    
+    /**
+     * 最长前缀匹配
+     * 
+     * @param high 地址键的高64位
+     * @param low 地址键的低64位
+     * @param defaultValue 没有匹配网段时的默认值
+     * @return 包含该地址的最长网段的值，没有匹配时返回默认值
+     */
+    public long longestMatch(long high, long low, long defaultValue) {
+        long result = defaultValue;
+        Node node = root;
+        while (node != null && node.matches(high, low)) {
+            if (node.hasValue) {
+                result = node.value;
+            }
+            if (node.length == 128) {
+                break;
+            }
+            node = node.child(bitAt(high, low, node.length));
+        }
+        return result;
+    }
+    
+    /**
+     * 获取所有包含该地址的网段中的最大值
+     * 适合以到期时间为值的阻止列表：任意一个仍未到期的网段都应生效
+     * 
+     * @param high 地址键的高64位
+     * @param low 地址键的低64位
+     * @param defaultValue 没有匹配网段时的默认值
+     * @return 匹配网段值中的最大值，没有匹配时返回默认值
+     */
+    public long maxMatch(long high, long low, long defaultValue) {
+        boolean found = false;
+        long result = defaultValue;
+        Node node = root;
+        while (node != null && node.matches(high, low)) {
+            if (node.hasValue && (!found || node.value > result)) {
+                result = node.value;
+                found = true;
+            }
+            if (node.length == 128) {
+                break;
+            }
+            node = node.child(bitAt(high, low, node.length));
+        }
+        return result;
+    }
+    
+    /**
+     * 检查是否有网段包含该地址
+     * 
+     * @param high 地址键的高64位
+     * @param low 地址键的低64位
+     * @return 如果有网段包含该地址则返回true
+     */
+    public boolean containsAddress(long high, long low) {
+        Node node = root;
+        while (node != null && node.matches(high, low)) {
+            if (node.hasValue) {
+                return true;
+            }
+            if (node.length == 128) {
+                break;
+            }
+            node = node.child(bitAt(high, low, node.length));
+        }
+        return false;
+    }
+    
+    /**
+     * 检查前缀树是否为空
+     * 
+     * @return 如果没有任何网段则返回true
+     */
+    public boolean isEmpty() {
+        return root == null;
+    }
+    
+    /**
+     * 获取网段数量，需要遍历整棵树
+     * 
+     * @return 网段数量
+     */
+    public int size() {
+        int[] count = new int[1];
+        forEach((prefix, value) -> count[0]++);
+        return count[0];
+    }
+    
+    /**
+     * 遍历所有网段
+     * 
+     * @param consumer 网段回调
+     */
+    public void forEach(PrefixConsumer consumer) {
+        visit(root, consumer);
+    }
+    
+    /**
+     * 清空所有网段
+     */
+    public synchronized void clear() {
+        root = null;
+    }
+    
+    private static void visit(Node node, PrefixConsumer consumer) {
+        if (node == null) {
+            return;
+        }
+        if (node.hasValue) {
+            consumer.accept(new IPAddressKey.Prefix(node.high, node.low, node.length), node.value);
+        }
+        visit(node.zero, consumer);
+        visit(node.one, consumer);
+    }
+    
+    private static Node find(Node node, IPAddressKey.Prefix prefix) {
+        long high = prefix.getHigh();
+        long low = prefix.getLow();
+        int length = prefix.getLength();
+        
+        while (node != null && node.length <= length && node.matches(high, low)) {
+            if (node.length == length) {
+                return node.hasValue ? node : null;
+            }
+            node = node.child(bitAt(high, low, node.length));
+        }
+        return null;
+    }
+    
+    private static Node insert(Node node, long high, long low, int length, long value) {
+        if (node == null) {
+            return new Node(high, low, length, true, value, null, null);
+        }
+        
+        int common = Math.min(commonPrefixLength(node.high, node.low, high, low), Math.min(node.length, length));
+        
+        if (common == node.length) {
+            if (length == node.length) {
+                return new Node(node.high, node.low, node.length, true, value, node.zero, node.one);
+            }
+            int bit = bitAt(high, low, node.length);
+            Node child = insert(node.child(bit), high, low, length, value);
+            return bit == 0
+                ? new Node(node.high, node.low, node.length, node.hasValue, node.value, child, node.one)
+                : new Node(node.high, node.low, node.length, node.hasValue, node.value, node.zero, child);
+        }
+        
+        if (common == length) {
+            // 新网段包含当前节点
+            return bitAt(node.high, node.low, length) == 0
+                ? new Node(high, low, length, true, value, node, null)
+                : new Node(high, low, length, true, value, null, node);
+        }
+        
+        // 在分叉处插入无值的分支节点
+        Node leaf = new Node(high, low, length, true, value, null, null);
+        return bitAt(high, low, common) == 0
+            ? new Node(high, low, common, false, 0L, leaf, node)
+            : new Node(high, low, common, false, 0L, node, leaf);
+    }
+    
+    private static Node delete(Node node, long high, long low, int length) {
+        if (node.length == length) {
+            return compact(node.high, node.low, node.length, false, 0L, node.zero, node.one);
+        }
+        
+        int bit = bitAt(high, low, node.length);
+        Node child = delete(node.child(bit), high, low, length);
+        return bit == 0
+            ? compact(node.high, node.low, node.length, node.hasValue, node.value, child, node.one)
+            : compact(node.high, node.low, node.length, node.hasValue, node.value, node.zero, child);
+    }
+    
+    /**
+     * 创建节点，无值且子节点不足两个的节点会被压缩掉
+     */
+    private static Node compact(long high, long low, int length, boolean hasValue, long value, Node zero, Node one) {
+        if (!hasValue) {
+            if (zero == null) {
+                return one;
+            }
+            if (one == null) {
+                return zero;
+            }
+        }
+        return new Node(high, low, length, hasValue, value, zero, one);
+    }
+    
+    private static int commonPrefixLength(long high1, long low1, long high2, long low2) {
+        long diff = high1 ^ high2;
+        if (diff != 0L) {
+            return Long.numberOfLeadingZeros(diff);
+        }
+        return 64 + Long.numberOfLeadingZeros(low1 ^ low2);
+    }
+    
+    private static int bitAt(long high, long low, int index) {
+        return index < 64
+            ? (int) ((high >>> (63 - index)) & 1L)
+            : (int) ((low >>> (127 - index)) & 1L);
+    }
+    
+    /**
+     * 不可变的前缀树节点
+     */
+    private static final class Node {
+        final long high;
+        final long low;
+        final int length;
+        final boolean hasValue;
+        final long value;
+        final Node zero;
+        final Node one;
+        
+        Node(long high, long low, int length, boolean hasValue, long value, Node zero, Node one) {
+            this.high = high & IPAddressKey.highMask(length);
+            this.low = low & IPAddressKey.lowMask(length);
+            this.length = length;
+            this.hasValue = hasValue;
+            this.value = value;
+            this.zero = zero;
+            this.one = one;
+        }
+        
+        boolean matches(long keyHigh, long keyLow) {
+            return (keyHigh & IPAddressKey.highMask(length)) == high
+                && (keyLow & IPAddressKey.lowMask(length)) == low;
+        }
+        
+        Node child(int bit) {
+            return bit == 0 ? zero : one;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package nety.ys.util;
+
+import nety.ys.TokenAuthMod;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 本地IP地理位置数据库
+ * 从配置目录中的CSV文件加载IP段，按起始地址排序后存放在基本类型数组中，查询时二分查找，不需要网络。
+ * <p>
+ * 每行格式为 {@code 起始IP,结束IP,国家,地区,城市[,ISP]} 或 {@code CIDR,国家,地区,城市[,ISP]}，
+ * 以#开头的行和无法解析的标题行会被忽略。IP段不应重叠，重叠的IP段只保留起始地址较小的一个
+ *
+ * @author nety.ys
+ */
+public class LocalGeoLocationProvider implements GeoLocationProvider {
+    
+    private final String name;
+    
+    // 第i个IP段为[start, end]，地址按IPAddressKey的128位格式存放
+    private final long[] startHigh;
+    private final long[] startLow;
+    private final long[] endHigh;
+    private final long[] endLow;
+    
+    // 第i个IP段对应的位置在locations中的下标，相同的位置只保存一份
+    private final int[] locationIndex;
+    private final String[][] locations;
+    
+    private LocalGeoLocationProvider(String name, long[] startHigh, long[] startLow, long[] endHigh, long[] endLow,
+                                     int[] locationIndex, String[][] locations) {
+        this.name = name;
+        this.startHigh = startHigh;
+        this.startLow = startLow;
+        this.endHigh = endHigh;
+        this.endLow = endLow;
+        this.locationIndex = locationIndex;
+        this.locations = locations;
+    }
+    
+    /**
+     * 从CSV文件加载本地数据库
+     *
+     * @param file CSV文件路径
+     * @return 本地数据源
+     * @throws IOException 读取文件失败时抛出
+     */
+    public static LocalGeoLocationProvider load(Path file) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        List<String[]> rangeLocations = new ArrayList<>();
+        int invalidLines = 0;
+        int lineNumber = 0;
+        boolean firstDataLine = true;
+        
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                
+                boolean headerCandidate = firstDataLine;
+                firstDataLine = false;
+                try {
+                    String[] fields = line.split(",", -1);
+                    long[] range = new long[4];
+                    int locationStart;
+                    
+                    if (fields[0].indexOf('/') >= 0) {
+                        IPAddressKey.Prefix prefix = IPAddressKey.parsePrefix(fields[0].trim());
+                        range[0] = prefix.getHigh();
+                        range[1] = prefix.getLow();
+                        range[2] = prefix.getHigh() | ~IPAddressKey.highMask(prefix.getLength());
+                        range[3] = prefix.getLow() | ~IPAddressKey.lowMask(prefix.getLength());
+                        locationStart = 1;
+                    } else {
+                        InetAddress start = IPAddressKey.parse(fields[0].trim());
+                        InetAddress end = IPAddressKey.parse(fields[1].trim());
+                        range[0] = IPAddressKey.high(start);
+                        range[1] = IPAddressKey.low(start);
+                        range[2] = IPAddressKey.high(end);
+                        range[3] = IPAddressKey.low(end);
+                        locationStart = 2;
+                    }
+                    
+                    if (compare(range[0], range[1], range[2], range[3]) > 0) {
+                        throw new IllegalArgumentException("起始地址大于结束地址");
+                    }
+                    
+                    // 国家、地区、城市、ISP
+                    String[] location = new String[4];
+                    for (int i = 0; i < location.length; i++) {
+                        int field = locationStart + i;
+                        location[i] = field < fields.length ? fields[field].trim() : "";
+                    }
+                    
+                    ranges.add(range);
+                    rangeLocations.add(location);
+                } catch (RuntimeException e) {
+                    // 第一行通常是标题行，不计入错误
+                    if (headerCandidate) {
+                        continue;
+                    }
+                    invalidLines++;
+                    DebugLogger.debug("本地地理位置数据库第{}行无效: {}", lineNumber, e.getMessage());
+                }
+            }
+        }
+        
+        // 按起始地址排序
+        Integer[] order = new Integer[ranges.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing((Integer i) -> ranges.get(i),
+            (a, b) -> compare(a[0], a[1], b[0], b[1])));
+        
+        long[] startHigh = new long[order.length];
+        long[] startLow = new long[order.length];
+        long[] endHigh = new long[order.length];
+        long[] endLow = new long[order.length];
+        int[] locationIndex = new int[order.length];
+        List<String[]> locations = new ArrayList<>();
+        Map<List<String>, Integer> locationIds = new HashMap<>();
+        
+        int count = 0;
+        int overlapping = 0;
+        for (Integer i : order) {
+            long[] range = ranges.get(i);
+            if (count > 0 && compare(range[0], range[1], endHigh[count - 1], endLow[count - 1]) <= 0) {
+                overlapping++;
+                continue;
+            }
+            
+            String[] location = rangeLocations.get(i);
+            Integer id = locationIds.get(Arrays.asList(location));
+            if (id == null) {
+                id = locations.size();
+                locations.add(location);
+                locationIds.put(Arrays.asList(location), id);
+            }
+            
+            startHigh[count] = range[0];
+            startLow[count] = range[1];
+            endHigh[count] = range[2];
+            endLow[count] = range[3];
+            locationIndex[count] = id;
+            count++;
+        }
+        
+        if (invalidLines > 0 || overlapping > 0) {
+            TokenAuthMod.LOGGER.warn("本地地理位置数据库 {} 中有 {} 行无效、{} 个IP段重叠，已忽略",
+                                     file.getFileName(), invalidLines, overlapping);
+        }
+        TokenAuthMod.LOGGER.info("已加载本地地理位置数据库 {}: {} 个IP段，{} 个位置",
+                                 file.getFileName(), count, locations.size());
+        
+        return new LocalGeoLocationProvider(
+            file.getFileName().toString(),
+            Arrays.copyOf(startHigh, count),
+            Arrays.copyOf(startLow, count),
+            Arrays.copyOf(endHigh, count),
+            Arrays.copyOf(endLow, count),
+            Arrays.copyOf(locationIndex, count),
+            locations.toArray(new String[0][])
+        );
+    }
+    
+    @Override
+    public String getName() {
+        return "本地数据库(" + name + ")";
+    }
+    
+    @Override
+    public IPGeolocationUtil.GeoLocationInfo lookup(InetAddress address) {
+        int index = find(IPAddressKey.high(address), IPAddressKey.low(address));
+        if (index < 0) {
+            return null;
+        }
+        
+        String[] location = locations[locationIndex[index]];
+        return new IPGeolocationUtil.GeoLocationInfo("success", "", location[0], location[1], location[2],
+                                                     location[3], "", address.getHostAddress());
+    }
+    
+    /**
+     * 查找包含指定地址的IP段
+     *
+     * @return IP段下标，不存在时返回-1
+     */
+    private int find(long high, long low) {
+        // 查找最后一个起始地址不大于目标地址的IP段
+        int lo = 0;
+        int hi = startHigh.length - 1;
+        int candidate = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(startHigh[mid], startLow[mid], high, low) <= 0) {
+                candidate = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        
+        if (candidate >= 0 && compare(high, low, endHigh[candidate], endLow[candidate]) <= 0) {
+            return candidate;
+        }
+        return -1;
+    }
+    
+    /**
+     * 将数据库写为MappedGeoLocationProvider使用的二进制格式
+     * 
+     * @param file 目标文件
+     * @throws IOException 写入失败时抛出
+     */
+    public void writeBinary(Path file) throws IOException {
+        MappedGeoLocationProvider.write(file, startHigh, startLow, endHigh, endLow, locationIndex, locations);
+    }
+    
+    /**
+     * 获取IP段数量
+     *
+     * @return IP段数量
+     */
+    public int size() {
+        return startHigh.length;
+    }
+    
+    /**
+     * 按无符号128位整数比较两个地址
+     */
+    private static int compare(long high1, long low1, long high2, long low2) {
+        int result = Long.compareUnsigned(high1, high2);
+        return result != 0 ? result : Long.compareUnsigned(low1, low2);
+    }
+}
@@ -0,0 +1,261 @@
+package nety.ys.util;
+
+import nety.ys.TokenAuthMod;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 内存映射的本地IP地理位置数据库
+ * 直接在映射的二进制文件上二分查找，数据不复制到堆上，打开文件的耗时与数据库大小无关。
+ * <p>
+ * 文件格式（大端序）：
+ * <pre>
+ * 文件头    magic(4) version(4) rangeCount(4) locationCount(4)
+ * IP段表    rangeCount × [startHigh(8) startLow(8) endHigh(8) endLow(8) locationId(4)]，按起始地址排序
+ * 位置表    locationCount × [country(4) region(4) city(4) isp(4)]，字符串在字符串表中的偏移
+ * 字符串表  [length(2) UTF-8字节]...，相同的字符串只保存一份
+ * </pre>
+ *
+ * @author nety.ys
+ */
+public class MappedGeoLocationProvider implements GeoLocationProvider {
+    
+    private static final int MAGIC = 0x54414745; // "TAGE"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RANGE_SIZE = 36;
+    private static final int LOCATION_SIZE = 16;
+    
+    private final String name;
+    private final ByteBuffer buffer;
+    private volatile boolean closed;
+    private final int rangeCount;
+    private final int locationCount;
+    private final int locationTableOffset;
+    private final int stringTableOffset;
+    
+    private MappedGeoLocationProvider(String name, ByteBuffer buffer, int rangeCount, int locationCount) {
+        this.name = name;
+        this.buffer = buffer;
+        this.rangeCount = rangeCount;
+        this.locationCount = locationCount;
+        this.locationTableOffset = HEADER_SIZE + rangeCount * RANGE_SIZE;
+        this.stringTableOffset = locationTableOffset + locationCount * LOCATION_SIZE;
+    }
+    
+    /**
+     * 映射二进制数据库文件
+     *
+     * @param file 二进制数据库文件
+     * @return 本地数据源
+     * @throws IOException 读取文件失败或文件格式无效时抛出
+     */
+    public static MappedGeoLocationProvider open(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("地理位置数据库文件大小无效: " + size);
+            }
+            // 映射在通道关闭后仍然有效
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("不是有效的地理位置数据库文件: " + file.getFileName());
+        }
+        
+        int rangeCount = buffer.getInt(8);
+        int locationCount = buffer.getInt(12);
+        long tablesEnd = HEADER_SIZE + (long) rangeCount * RANGE_SIZE + (long) locationCount * LOCATION_SIZE;
+        if (rangeCount < 0 || locationCount < 0 || tablesEnd > buffer.capacity()) {
+            throw new IOException("地理位置数据库文件已损坏: " + file.getFileName());
+        }
+        
+        TokenAuthMod.LOGGER.info("已映射本地地理位置数据库 {}: {} 个IP段，{} 个位置",
+                                 file.getFileName(), rangeCount, locationCount);
+        return new MappedGeoLocationProvider(file.getFileName().toString(), buffer, rangeCount, locationCount);
+    }
+    
+    /**
+     * 将已排序、互不重叠的IP段写入二进制数据库文件
+     * 先写入临时文件再替换目标文件，避免其他进程读到不完整的文件
+     *
+     * @param file 目标文件
+     * @param startHigh 起始地址高64位
+     * @param startLow 起始地址低64位
+     * @param endHigh 结束地址高64位
+     * @param endLow 结束地址低64位
+     * @param locationIndex 每个IP段对应的位置下标
+     * @param locations 位置表，每项为国家、地区、城市、ISP
+     * @throws IOException 写入失败时抛出
+     */
+    static void write(Path file, long[] startHigh, long[] startLow, long[] endHigh, long[] endLow,
+                      int[] locationIndex, String[][] locations) throws IOException {
+        // 构建字符串表
+        Map<String, Integer> stringOffsets = new HashMap<>();
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        int[][] locationOffsets = new int[locations.length][];
+        for (int i = 0; i < locations.length; i++) {
+            locationOffsets[i] = new int[4];
+            for (int j = 0; j < 4; j++) {
+                String value = j < locations[i].length && locations[i][j] != null ? locations[i][j] : "";
+                Integer offset = stringOffsets.get(value);
+                if (offset == null) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    if (bytes.length > 0xFFFF) {
+                        throw new IOException("字符串过长: " + value.substring(0, 32) + "...");
+                    }
+                    offset = strings.size();
+                    strings.write(bytes.length >>> 8);
+                    strings.write(bytes.length);
+                    strings.write(bytes, 0, bytes.length);
+                    stringOffsets.put(value, offset);
+                }
+                locationOffsets[i][j] = offset;
+            }
+        }
+        
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(startHigh.length);
+                out.writeInt(locations.length);
+                for (int i = 0; i < startHigh.length; i++) {
+                    out.writeLong(startHigh[i]);
+                    out.writeLong(startLow[i]);
+                    out.writeLong(endHigh[i]);
+                    out.writeLong(endLow[i]);
+                    out.writeInt(locationIndex[i]);
+                }
+                for (int[] offsets : locationOffsets) {
+                    for (int offset : offsets) {
+                        out.writeInt(offset);
+                    }
+                }
+                strings.writeTo(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    @Override
+    public String getName() {
+        return "本地数据库(" + name + ")";
+    }
+    
+    @Override
+    public IPGeolocationUtil.GeoLocationInfo lookup(InetAddress address) {
+        if (closed) {
+            return null;
+        }
+        long high = IPAddressKey.high(address);
+        long low = IPAddressKey.low(address);
+        
+        // 查找最后一个起始地址不大于目标地址的IP段
+        int lo = 0;
+        int hi = rangeCount - 1;
+        int candidate = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int offset = HEADER_SIZE + mid * RANGE_SIZE;
+            if (compare(buffer.getLong(offset), buffer.getLong(offset + 8), high, low) <= 0) {
+                candidate = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        
+        if (candidate < 0) {
+            return null;
+        }
+        int offset = HEADER_SIZE + candidate * RANGE_SIZE;
+        if (compare(high, low, buffer.getLong(offset + 16), buffer.getLong(offset + 24)) > 0) {
+            return null;
+        }
+        
+        int locationId = buffer.getInt(offset + 32);
+        if (locationId < 0 || locationId >= locationCount) {
+            return null;
+        }
+        int location = locationTableOffset + locationId * LOCATION_SIZE;
+        return new IPGeolocationUtil.GeoLocationInfo("success", "",
+            readString(buffer.getInt(location)),
+            readString(buffer.getInt(location + 4)),
+            readString(buffer.getInt(location + 8)),
+            readString(buffer.getInt(location + 12)),
+            "", address.getHostAddress());
+    }
+    
+    /**
+     * 解除文件映射，不必等到缓冲区被垃圾回收，Windows上映射解除后才能替换文件。
+     * 调用方需保证之后不再有查询，访问已解除映射的缓冲区会导致JVM崩溃
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+            DebugLogger.debug("已解除地理位置数据库 {} 的映射", name);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            DebugLogger.debug("无法立即解除地理位置数据库 {} 的映射，将在垃圾回收时释放: {}", name, e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取IP段数量
+     *
+     * @return IP段数量
+     */
+    public int size() {
+        return rangeCount;
+    }
+    
+    private String readString(int offset) {
+        int position = stringTableOffset + offset;
+        int length = ((buffer.get(position) & 0xFF) << 8) | (buffer.get(position + 1) & 0xFF);
+        if (length == 0) {
+            return "";
+        }
+        byte[] bytes = new byte[length];
+        // 绝对位置读取，不修改共享缓冲区的position，可以被多个线程同时使用
+        buffer.get(position + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * 按无符号128位整数比较两个地址
+     */
+    private static int compare(long high1, long low1, long high2, long low2) {
+        int result = Long.compareUnsigned(high1, high2);
+        return result != 0 ? result : Long.compareUnsigned(low1, low2);
+    }
+}
@@ -4,6 +4,10 @@ import net.minecraft.client.network.ClientPlayNetworkHandler;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
 /**
  * 网络工具类
  * 提供各种网络相关的实用方法
@@ -52,6 +56,20 @@ public class NetworkUtil {
         return null;
     }
     
+    /**
+     * 获取连接的客户端IP地址
+     * 本地连接（单人游戏和局域网内置服务器）没有IP地址，使用回环地址代替
+     * 
+     * @param address 连接的远程地址
+     * @return 客户端IP地址
+     */
+    public static InetAddress getClientAddress(SocketAddress address) {
+        if (address instanceof InetSocketAddress) {
+            return ((InetSocketAddress) address).getAddress();
+        }
+        return InetAddress.getLoopbackAddress();
+    }
+    
     /**
      * 向玩家发送消息
      * 
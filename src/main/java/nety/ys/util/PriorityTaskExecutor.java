@@ -0,0 +1,301 @@
+package nety.ys.util;
+
+import nety.ys.TokenAuthMod;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 有界优先级任务执行器
+ * 用于警报和邮件等可以丢弃的后台任务：排队的任务数有上限，高优先级任务先执行，
+ * 队列已满时按拒绝策略丢弃任务，被丢弃任务的Future以RejectedExecutionException结束。
+ * 队列满时不会阻塞提交任务的线程，因为提交者通常是服务器主线程
+ *
+ * @author nety.ys
+ */
+public class PriorityTaskExecutor {
+    
+    /**
+     * 任务优先级
+     */
+    public enum Priority {
+        /** 首次出现的警报、汇总邮件和手动发送的邮件 */
+        HIGH,
+        /** 重复的警报 */
+        LOW
+    }
+    
+    /**
+     * 队列已满时的拒绝策略
+     */
+    public enum RejectionPolicy {
+        /** 丢弃新提交的任务 */
+        DROP_NEW,
+        /** 丢弃排队时间最长的任务 */
+        DROP_OLDEST,
+        /** 丢弃优先级最低的任务中排队时间最长的一个，新任务的优先级更低时丢弃新任务 */
+        DROP_LOWEST;
+        
+        /**
+         * 解析配置中的拒绝策略，无法识别时使用DROP_LOWEST
+         *
+         * @param value 配置值
+         * @return 拒绝策略
+         */
+        public static RejectionPolicy parse(String value) {
+            if (value != null) {
+                try {
+                    return valueOf(value.trim().replace("\"", "").toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    TokenAuthMod.LOGGER.warn("无法识别的警报队列拒绝策略: {}，使用DROP_LOWEST", value);
+                }
+            }
+            return DROP_LOWEST;
+        }
+    }
+    
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private final Object submitLock = new Object();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    
+    private volatile int capacity = 256;
+    private volatile RejectionPolicy policy = RejectionPolicy.DROP_LOWEST;
+    
+    /**
+     * 创建执行器
+     *
+     * @param name 执行器名称，用作线程名前缀和日志
+     * @param threads 工作线程数
+     * @param keepAliveMillis 工作线程空闲多久后退出（毫秒）
+     * @param threadExitHook 工作线程退出前在该线程中执行的清理操作，可以为null
+     */
+    public PriorityTaskExecutor(String name, int threads, long keepAliveMillis, Runnable threadExitHook) {
+        this.name = name;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, keepAliveMillis, TimeUnit.MILLISECONDS, queue, runnable -> {
+            Runnable body = threadExitHook == null ? runnable : () -> {
+                try {
+                    runnable.run();
+                } finally {
+                    threadExitHook.run();
+                }
+            };
+            return new Thread(body, name + "-" + threadIndex.incrementAndGet());
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+    
+    /**
+     * 更新队列容量和拒绝策略，只影响之后提交的任务
+     *
+     * @param capacity 最多排队的任务数
+     * @param policy 拒绝策略
+     */
+    public void configure(int capacity, RejectionPolicy policy) {
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+    }
+    
+    /**
+     * 提交有返回值的任务
+     *
+     * @param priority 任务优先级
+     * @param supplier 任务
+     * @return 任务结果，任务被丢弃时以RejectedExecutionException结束
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, Supplier<T> supplier) {
+        Task<T> task = new Task<>(priority, sequence.getAndIncrement(), supplier);
+        synchronized (submitLock) {
+            if (executor.isShutdown()) {
+                drop(task, "执行器已关闭");
+                return task.future;
+            }
+            
+            while (queue.size() >= capacity) {
+                Task<?> victim = selectVictim(task);
+                if (victim == task) {
+                    drop(task, "队列已满");
+                    return task.future;
+                }
+                // 工作线程可能刚好取走了这个任务，此时队列已经有空位
+                if (queue.remove(victim)) {
+                    drop(victim, "队列已满，被新任务替换");
+                }
+            }
+            
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                drop(task, "执行器已关闭");
+            }
+        }
+        return task.future;
+    }
+    
+    /**
+     * 提交没有返回值的任务
+     *
+     * @param priority 任务优先级
+     * @param runnable 任务
+     * @return 任务完成时结束的Future，任务被丢弃时以RejectedExecutionException结束
+     */
+    public CompletableFuture<Void> execute(Priority priority, Runnable runnable) {
+        return submit(priority, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+    
+    /**
+     * 按拒绝策略选择要丢弃的任务，只在持有submitLock时调用
+     *
+     * @return 要丢弃的任务，可能是新任务本身
+     */
+    private Task<?> selectVictim(Task<?> incoming) {
+        if (policy == RejectionPolicy.DROP_NEW) {
+            return incoming;
+        }
+        
+        // 队列的迭代顺序不是优先级顺序，需要完整扫描；队列容量较小，开销可以接受
+        Task<?> victim = null;
+        for (Iterator<Runnable> it = queue.iterator(); it.hasNext(); ) {
+            Task<?> candidate = (Task<?>) it.next();
+            if (victim == null) {
+                victim = candidate;
+            } else if (policy == RejectionPolicy.DROP_OLDEST) {
+                if (candidate.sequence < victim.sequence) {
+                    victim = candidate;
+                }
+            } else if (candidate.priority.ordinal() > victim.priority.ordinal()
+                       || (candidate.priority == victim.priority && candidate.sequence < victim.sequence)) {
+                victim = candidate;
+            }
+        }
+        
+        if (victim == null
+            || (policy == RejectionPolicy.DROP_LOWEST && incoming.priority.ordinal() > victim.priority.ordinal())) {
+            return incoming;
+        }
+        return victim;
+    }
+    
+    private void drop(Task<?> task, String reason) {
+        long dropped = droppedCount.incrementAndGet();
+        task.future.completeExceptionally(new RejectedExecutionException(name + ": " + reason));
+        DebugLogger.email("{} 丢弃了一个{}优先级任务: {}", name, task.priority, reason);
+        if (dropped == 1 || dropped % 100 == 0) {
+            TokenAuthMod.LOGGER.warn("{} 已累计丢弃 {} 个任务（{}）", name, dropped, reason);
+        }
+    }
+    
+    /**
+     * 获取正在排队的任务数
+     *
+     * @return 排队任务数
+     */
+    public int getQueuedCount() {
+        return queue.size();
+    }
+    
+    /**
+     * 获取因队列已满或执行器关闭而丢弃的任务数
+     *
+     * @return 丢弃的任务数
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+    
+    /**
+     * 关闭执行器
+     * 不再接受新任务，已排队的任务按优先级继续执行；超时后丢弃剩余任务并中断工作线程
+     *
+     * @param timeoutMillis 等待排队任务执行完的时间（毫秒）
+     * @return 如果所有任务在超时前执行完则返回true
+     */
+    public boolean shutdown(long timeoutMillis) {
+        synchronized (submitLock) {
+            executor.shutdown();
+        }
+        
+        try {
+            if (executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        List<Runnable> remaining = executor.shutdownNow();
+        for (Runnable runnable : remaining) {
+            drop((Task<?>) runnable, "关闭超时");
+        }
+        if (!remaining.isEmpty()) {
+            TokenAuthMod.LOGGER.warn("{} 关闭超时，丢弃了 {} 个排队任务", name, remaining.size());
+        }
+        return false;
+    }
+    
+    /**
+     * 判断执行器是否已关闭
+     *
+     * @return 如果已调用shutdown则返回true
+     */
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+    
+    /**
+     * 等待工作线程退出
+     *
+     * @param timeoutMillis 等待时间（毫秒）
+     * @return 如果工作线程在超时前退出则返回true
+     * @throws InterruptedException 等待时被中断
+     */
+    public boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        return executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * 排队的任务，按优先级和提交顺序排序
+     */
+    private static final class Task<T> implements Runnable, Comparable<Task<?>> {
+        final Priority priority;
+        final long sequence;
+        final Supplier<T> supplier;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        
+        Task(Priority priority, long sequence, Supplier<T> supplier) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.supplier = supplier;
+        }
+        
+        @Override
+        public void run() {
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+        
+        @Override
+        public int compareTo(Task<?> other) {
+            int result = Integer.compare(priority.ordinal(), other.priority.ordinal());
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package nety.ys.util;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 无锁令牌桶限流器
+ * 按GCRA（通用信元速率算法）实现令牌桶：每个槽位只保存一个"理论到达时间"，
+ * 通过一次CAS完成补充和扣减，拒绝请求时不写入任何数据。
+ * 键按IPAddressKey哈希到固定大小的槽位表，哈希冲突的键共享同一个令牌桶（只会更严格，不会放过请求）。
+ * 哈希使用每个实例随机生成的密钥，外部无法预先算出与某个IP落在同一槽位的地址
+ * 
+ * @author nety.ys
+ */
+public class TokenBucketRateLimiter {
+    
+    /**
+     * 槽位表，保存理论到达时间（相对启动时间的微秒数）
+     */
+    private final AtomicLongArray slots;
+    
+    /**
+     * 槽位掩码
+     */
+    private final int mask;
+    
+    /**
+     * 两次请求之间的平均间隔（微秒）
+     */
+    private final long intervalMicros;
+    
+    /**
+     * 允许的突发容量对应的时间容差（微秒）
+     */
+    private final long toleranceMicros;
+    
+    /**
+     * 启动时间（纳秒）
+     */
+    private final long startNanos = System.nanoTime();
+    
+    /**
+     * 每分钟补充的令牌数
+     */
+    private final int permitsPerMinute;
+    
+    /**
+     * 令牌桶容量
+     */
+    private final int burst;
+    
+    /**
+     * 槽位哈希密钥
+     */
+    private final long seedHigh;
+    private final long seedLow;
+    
+    /**
+     * 构造函数
+     * 
+     * @param permitsPerMinute 每分钟补充的令牌数，必须大于0
+     * @param burst 令牌桶容量，至少为1
+     * @param slotCount 槽位数量，会向上取整为2的幂
+     */
+    public TokenBucketRateLimiter(int permitsPerMinute, int burst, int slotCount) {
+        if (permitsPerMinute <= 0) {
+            throw new IllegalArgumentException("每分钟令牌数必须大于0");
+        }
+        
+        int size = Integer.highestOneBit(Math.max(1, slotCount) - 1) << 1;
+        if (size <= 0) {
+            size = 1;
+        }
+        
+        SecureRandom random = new SecureRandom();
+        this.seedHigh = random.nextLong();
+        this.seedLow = random.nextLong();
+        this.permitsPerMinute = permitsPerMinute;
+        this.burst = Math.max(1, burst);
+        this.slots = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.intervalMicros = Math.max(1L, TimeUnit.MINUTES.toMicros(1) / permitsPerMinute);
+        this.toleranceMicros = intervalMicros * (Math.max(1, burst) - 1);
+    }
+    
+    /**
+     * 尝试为IP地址键获取一个令牌
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     * @return 如果获取成功则返回true，令牌桶已空时返回false
+     */
+    public boolean tryAcquire(long high, long low) {
+        int index = hash(high, low) & mask;
+        long now = now();
+        
+        while (true) {
+            long arrival = slots.get(index);
+            long base = Math.max(arrival, now);
+            if (base - now > toleranceMicros) {
+                return false;
+            }
+            if (slots.compareAndSet(index, arrival, base + intervalMicros)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * 检查IP地址键当前是否还有令牌，不扣减令牌
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     * @return 如果还有令牌则返回true
+     */
+    public boolean hasPermit(long high, long low) {
+        long now = now();
+        return Math.max(slots.get(hash(high, low) & mask), now) - now <= toleranceMicros;
+    }
+    
+    /**
+     * 退还一个通过tryAcquire获取的令牌
+     * 
+     * @param high 键的高64位
+     * @param low 键的低64位
+     */
+    public void release(long high, long low) {
+        int index = hash(high, low) & mask;
+        while (true) {
+            long arrival = slots.get(index);
+            if (slots.compareAndSet(index, arrival, arrival - intervalMicros)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 检查限流参数是否与给定的相同
+     * 
+     * @param permitsPerMinute 每分钟补充的令牌数
+     * @param burst 令牌桶容量
+     * @return 如果相同则返回true
+     */
+    public boolean hasLimits(int permitsPerMinute, int burst) {
+        return this.permitsPerMinute == permitsPerMinute && this.burst == Math.max(1, burst);
+    }
+    
+    private long now() {
+        return (System.nanoTime() - startNanos) / 1000L;
+    }
+    
+    private int hash(long high, long low) {
+        long h = mix(high ^ seedHigh);
+        h = mix(h ^ low ^ seedLow);
+        return (int) (h ^ (h >>> 32));
+    }
+    
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}